@@ -33,32 +33,18 @@
  */
 package fr.paris.lutece.plugins.identitystore.modules.test;
 
-import fr.paris.lutece.plugins.identitystore.modules.test.util.IdentitystoreTestUtils;
-import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.AuthorType;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.FlightRecording;
 import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.RequestAuthor;
-import fr.paris.lutece.portal.service.init.AppInit;
-import fr.paris.lutece.portal.service.util.AppPathService;
 import fr.paris.lutece.test.LuteceTestCase;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
 
 public abstract class AbstractIdentityStoreTestCase extends LuteceTestCase
 {
-
-    protected String basePath = Paths.get( "src", "test", "resources" ).toFile( ).getAbsolutePath( );;
-    protected String esUrl = "http://localhost:9200";
-    protected String dbUrl = "http://localhost:5432/idstore";
-    private final static String DB_PROPERTIES_PATH = "WEB-INF/conf/db.properties";
-    protected String dbTemplatePath = "data/db.template";
-    protected String propertiesTemplatePath = "data/identitystore.properties";
-    private final static String PROPERTIES_PATH = "WEB-INF/conf/plugins/identitystore.properties";
-    private final static String CONTEXT_XML_PATH = "WEB-INF/conf/plugins/identitystore_context.xml";
-    protected String contextTemplatePath = "data/context.template";
-    protected RequestAuthor author;
+    /**
+     * Containers and Lutece services of the test, shared with the benchmarks
+     */
+    protected final IdentityStoreEnvironment environment = new IdentityStoreEnvironment( );
 
     @Override
     protected void setUp( ) throws Exception
@@ -68,12 +54,40 @@ public abstract class AbstractIdentityStoreTestCase extends LuteceTestCase
         this.preInitApplication( );
         this.initApplication( );
         this.postInitApplication( );
-        author = new RequestAuthor( );
-        author.setType( AuthorType.application );
-        author.setName( "Test unitaires" );
         System.out.println( this.getName( ) );
     }
 
+    /**
+     * Runs the test method inside a Flight Recorder session when <code>-Djfr=true</code> is set.
+     */
+    @Override
+    protected void runTest( ) throws Throwable
+    {
+        if ( !FlightRecording.isEnabled( ) )
+        {
+            super.runTest( );
+            return;
+        }
+        final FlightRecording recording = FlightRecording.start( this.getRecordingName( ) );
+        try
+        {
+            super.runTest( );
+        }
+        finally
+        {
+            recording.stop( );
+        }
+    }
+
+    /**
+     * @return the name of the Flight Recorder file of the suite, distinct for each parallel worker
+     */
+    protected String getRecordingName( )
+    {
+        final String workerId = System.getProperty( ParallelDefinitionRunner.PROPERTY_WORKER_ID );
+        return this.getClass( ).getSimpleName( ) + ( workerId != null ? "-worker-" + workerId : "" );
+    }
+
     @Override
     protected void tearDown( ) throws Exception
     {
@@ -94,41 +108,18 @@ public abstract class AbstractIdentityStoreTestCase extends LuteceTestCase
 
     protected void initApplication( ) throws Exception
     {
-        /* Properties file */
-        IdentitystoreTestUtils.generateFileFromTemplate( basePath, propertiesTemplatePath, new HashMap<>( ), PROPERTIES_PATH );
-
-        /* Inject db url to db.properties template and save it to App destination */
-        final Map<String, String> dbParams = new HashMap<>( );
-        dbParams.put( "db_url", dbUrl );
-        IdentitystoreTestUtils.generateFileFromTemplate( basePath, dbTemplatePath, dbParams, DB_PROPERTIES_PATH );
-
-        /* Inject ES url to identitystore_context.xml template and save it to App destination */
-        final Map<String, String> contextParams = new HashMap<>( );
-
-        contextParams.put( "elasticsearch.url", esUrl.contains( "http" ) ? esUrl : "http://" + esUrl );
-        IdentitystoreTestUtils.generateFileFromTemplate( basePath, contextTemplatePath, contextParams, CONTEXT_XML_PATH );
-
-        System.out.println( "-------------resourcesDir------------ " + basePath );
-        AppPathService.init( basePath );
-        AppInit.initServices( "/WEB-INF/conf/" );
-
+        environment.initApplication( );
         _bInit = true;
-        System.out.println( "Lutece services initialized" );
-        System.out.println( );
-    };
+    }
 
     protected void cleanApplication( ) throws IOException
     {
-        /* Clean context files */
-        Files.delete( Paths.get( basePath, DB_PROPERTIES_PATH ) );
-        Files.delete( Paths.get( basePath, CONTEXT_XML_PATH ) );
-        Files.delete( Paths.get( basePath, PROPERTIES_PATH ) );
-
+        environment.cleanApplication( );
         _bInit = false;
     }
 
     protected RequestAuthor getAuthor( )
     {
-        return author;
+        return environment.getAuthor( );
     }
 }
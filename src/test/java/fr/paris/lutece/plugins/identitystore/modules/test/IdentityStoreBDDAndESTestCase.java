@@ -33,9 +33,6 @@
  */
 package fr.paris.lutece.plugins.identitystore.modules.test;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-import fr.paris.lutece.plugins.identitystore.service.indexer.elastic.index.service.IdentityIndexer;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.elasticsearch.ElasticsearchContainer;
 
@@ -43,47 +40,33 @@ import javax.sql.DataSource;
 
 public abstract class IdentityStoreBDDAndESTestCase extends AbstractIdentityStoreTestCase
 {
-    protected final String CURRENT_INDEX_ALIAS = "identities-alias";
-    protected final String CURRENT_INDEX = "identities-index";
+    protected final String CURRENT_INDEX_ALIAS = IdentityStoreEnvironment.CURRENT_INDEX_ALIAS;
+    protected final String CURRENT_INDEX = IdentityStoreEnvironment.CURRENT_INDEX;
 
     protected ElasticsearchContainer elasticsearchContainer;
 
     public PostgreSQLContainer postgreSQLContainer;
 
-    protected HikariDataSource dataSource;
-
     /**
      * {@inheritDoc}
      */
     @Override
     protected void startContainers( )
     {
-        elasticsearchContainer = new ElasticsearchContainer(
-                "docker.elastic.co/elasticsearch/elasticsearch:".concat( IdentityStoreTestContext.ELASTICSEARCH_VERSION ) )
-                        .withEnv( "xpack.security.enabled", "false" ).withNetworkAliases( "localhost" ).withReuse( false );
-        elasticsearchContainer.start( );
-        this.esUrl = elasticsearchContainer.getHttpHostAddress( );
-
-        postgreSQLContainer = (PostgreSQLContainer) new PostgreSQLContainer( "postgres:".concat( IdentityStoreTestContext.POSTGRES_VERSION ) )
-                .withDatabaseName( "idstore" ).withUsername( "idstore" ).withPassword( "idstore" ).withInitScript( "db/init.sql" ).withReuse( false );
-        postgreSQLContainer.start( );
-        this.dbUrl = postgreSQLContainer.getJdbcUrl( );
+        environment.startContainers( );
+        elasticsearchContainer = environment.getElasticsearchContainer( );
+        postgreSQLContainer = environment.getPostgreSQLContainer( );
     }
 
+    /**
+     * The containers are shared by the whole JVM and stopped by the {@link IdentityStoreContainerRegistry} : only the database of the test is released.
+     */
     @Override
     protected void shutDownContainers( )
     {
-        if ( elasticsearchContainer != null && elasticsearchContainer.isRunning( ) )
-        {
-            elasticsearchContainer.stop( );
-            elasticsearchContainer = null;
-        }
-
-        if ( postgreSQLContainer != null && postgreSQLContainer.isRunning( ) )
-        {
-            postgreSQLContainer.stop( );
-            postgreSQLContainer = null;
-        }
+        environment.shutDownContainers( );
+        elasticsearchContainer = null;
+        postgreSQLContainer = null;
     }
 
     @Override
@@ -95,25 +78,11 @@ public abstract class IdentityStoreBDDAndESTestCase extends AbstractIdentityStor
     @Override
     protected void postInitApplication( ) throws Exception
     {
-        // Init elastic index
-        final IdentityIndexer identityIndexer = new IdentityIndexer( "http://" + this.esUrl );
-        identityIndexer.initIndex( CURRENT_INDEX );
-        identityIndexer.addAliasOnIndex( CURRENT_INDEX, CURRENT_INDEX_ALIAS );
+        environment.initIndex( );
     }
 
     protected DataSource getDataSource()
     {
-        if(dataSource == null)
-        {
-            final HikariConfig hikariConfig = new HikariConfig( );
-            hikariConfig.setJdbcUrl( postgreSQLContainer.getJdbcUrl( ) );
-            hikariConfig.setUsername( postgreSQLContainer.getUsername( ) );
-            hikariConfig.setPassword( postgreSQLContainer.getPassword( ) );
-            hikariConfig.setDriverClassName( postgreSQLContainer.getDriverClassName( ) );
-            hikariConfig.setMaximumPoolSize(1000);
-            hikariConfig.setMinimumIdle(10);
-            dataSource = new HikariDataSource(hikariConfig);
-        }
-        return dataSource;
+        return environment.getDataSource( );
     }
 }
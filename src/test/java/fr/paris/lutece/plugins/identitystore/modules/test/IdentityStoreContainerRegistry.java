@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test;
+
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JVM wide registry of the Elasticsearch and Postgres containers.<br/>
+ * Each container is started once per JVM and stopped by a shutdown hook. With <code>-Dcontainers.reuse=true</code> (and
+ * <code>testcontainers.reuse.enable=true</code> in <code>~/.testcontainers.properties</code>) the containers are kept and reused by the next runs.<br/>
+ * Tests get a clean logical state without restarting Docker : each test works on its own database cloned from the initialized <code>idstore</code>
+ * database, which is only used as a template.<br/>
+ * The Postgres container preloads <code>pg_stat_statements</code>, read by the {@link fr.paris.lutece.plugins.identitystore.modules.test.util.StatementStatsCapture}.
+ */
+public final class IdentityStoreContainerRegistry
+{
+    public static final String TEMPLATE_DATABASE = "idstore";
+    private static final String ADMIN_DATABASE = "postgres";
+    private static final String WORKER_LABEL = "fr.paris.lutece.identitystore.test.worker";
+    private static final boolean REUSE = Boolean.getBoolean( "containers.reuse" );
+    private static final AtomicInteger DATABASE_COUNTER = new AtomicInteger( );
+
+    private static ElasticsearchContainer _elasticsearchContainer;
+    private static PostgreSQLContainer<?> _postgreSQLContainer;
+    private static long _lFirstUseNanos;
+    private static long _lStartupNanos;
+    private static long _lResetNanos;
+
+    private IdentityStoreContainerRegistry( )
+    {
+    }
+
+    /**
+     * @return the shared Elasticsearch container, started on first call
+     */
+    public static synchronized ElasticsearchContainer getElasticsearchContainer( )
+    {
+        if ( _elasticsearchContainer == null )
+        {
+            final long start = markStart( );
+            final ElasticsearchContainer container = new ElasticsearchContainer(
+                    "docker.elastic.co/elasticsearch/elasticsearch:".concat( IdentityStoreTestContext.ELASTICSEARCH_VERSION ) )
+                            .withEnv( "xpack.security.enabled", "false" ).withEnv( "path.repo", SnapshotDataReset.SNAPSHOT_LOCATION )
+                            .withNetworkAliases( "localhost" ).withReuse( REUSE );
+            labelWorker( container );
+            container.start( );
+            _elasticsearchContainer = container;
+            _lStartupNanos += System.nanoTime( ) - start;
+        }
+        return _elasticsearchContainer;
+    }
+
+    /**
+     * @return the shared Postgres container, started on first call
+     */
+    public static synchronized PostgreSQLContainer<?> getPostgreSQLContainer( )
+    {
+        if ( _postgreSQLContainer == null )
+        {
+            final long start = markStart( );
+            final PostgreSQLContainer<?> container = new PostgreSQLContainer<>( "postgres:".concat( IdentityStoreTestContext.POSTGRES_VERSION ) )
+                    .withDatabaseName( TEMPLATE_DATABASE ).withUsername( "idstore" ).withPassword( "idstore" ).withInitScript( "db/init.sql" )
+                    .withCommand( "postgres", "-c", "fsync=off", "-c", "shared_preload_libraries=pg_stat_statements", "-c",
+                            "pg_stat_statements.track=all" )
+                    .withReuse( REUSE );
+            labelWorker( container );
+            container.start( );
+            _postgreSQLContainer = container;
+            _lStartupNanos += System.nanoTime( ) - start;
+        }
+        return _postgreSQLContainer;
+    }
+
+    /**
+     * Creates a fresh database cloned from the template database.
+     *
+     * @return the name of the new database
+     */
+    public static String createDatabase( ) throws SQLException
+    {
+        final String database = TEMPLATE_DATABASE + "_" + DATABASE_COUNTER.incrementAndGet( );
+        final long start = System.nanoTime( );
+        try ( final Connection connection = getAdminConnection( ); final Statement statement = connection.createStatement( ) )
+        {
+            statement.execute( "DROP DATABASE IF EXISTS " + database );
+            statement.execute( "CREATE DATABASE " + database + " TEMPLATE " + TEMPLATE_DATABASE );
+        }
+        recordReset( System.nanoTime( ) - start );
+        return database;
+    }
+
+    /**
+     * Drops a database created by {@link #createDatabase()}, closing the connections still opened on it.
+     */
+    public static void dropDatabase( final String database ) throws SQLException
+    {
+        try ( final Connection connection = getAdminConnection( ) )
+        {
+            terminateConnections( connection, database );
+            try ( final Statement statement = connection.createStatement( ) )
+            {
+                statement.execute( "DROP DATABASE IF EXISTS " + database );
+            }
+        }
+    }
+
+    /**
+     * Closes every session opened on the given database, so that it can be dropped or used as a template.
+     */
+    public static void terminateConnections( final Connection adminConnection, final String database ) throws SQLException
+    {
+        try ( final PreparedStatement statement = adminConnection
+                .prepareStatement( "SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE datname = ? AND pid <> pg_backend_pid()" ) )
+        {
+            statement.setString( 1, database );
+            statement.execute( );
+        }
+    }
+
+    /**
+     * @return a connection on the maintenance database of the Postgres container
+     */
+    public static Connection getAdminConnection( ) throws SQLException
+    {
+        final PostgreSQLContainer<?> container = getPostgreSQLContainer( );
+        return DriverManager.getConnection( getJdbcUrl( ADMIN_DATABASE ), container.getUsername( ), container.getPassword( ) );
+    }
+
+    public static String getJdbcUrl( final String database )
+    {
+        final PostgreSQLContainer<?> container = getPostgreSQLContainer( );
+        return "jdbc:postgresql://" + container.getHost( ) + ":" + container.getMappedPort( PostgreSQLContainer.POSTGRESQL_PORT ) + "/" + database;
+    }
+
+    /**
+     * Records time spent restoring a clean logical state (database clone, index recreation...).
+     */
+    public static synchronized void recordReset( final long lNanos )
+    {
+        _lResetNanos += lNanos;
+    }
+
+    private static long markStart( )
+    {
+        final long now = System.nanoTime( );
+        if ( _lFirstUseNanos == 0 )
+        {
+            _lFirstUseNanos = now;
+            Runtime.getRuntime( ).addShutdownHook( new Thread( IdentityStoreContainerRegistry::shutdown ) );
+        }
+        return now;
+    }
+
+    private static void labelWorker( final GenericContainer<?> container )
+    {
+        // Reused containers are matched on their configuration : the label keeps parallel workers on distinct containers
+        final String workerId = System.getProperty( ParallelDefinitionRunner.PROPERTY_WORKER_ID );
+        if ( REUSE && workerId != null )
+        {
+            container.withLabel( WORKER_LABEL, workerId );
+        }
+    }
+
+    private static synchronized void shutdown( )
+    {
+        final long total = System.nanoTime( ) - _lFirstUseNanos;
+        System.out.println( "----- Containers -----" );
+        System.out.println( "Container startup: " + TimeUnit.NANOSECONDS.toMillis( _lStartupNanos ) + " ms" );
+        System.out.println( "Logical state reset: " + TimeUnit.NANOSECONDS.toMillis( _lResetNanos ) + " ms" );
+        System.out.println( "Test work: " + TimeUnit.NANOSECONDS.toMillis( total - _lStartupNanos - _lResetNanos ) + " ms" );
+        if ( !REUSE )
+        {
+            if ( _elasticsearchContainer != null && _elasticsearchContainer.isRunning( ) )
+            {
+                _elasticsearchContainer.stop( );
+            }
+            if ( _postgreSQLContainer != null && _postgreSQLContainer.isRunning( ) )
+            {
+                _postgreSQLContainer.stop( );
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.ElasticsearchTestClient;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.IdentitystoreTestUtils;
+import fr.paris.lutece.plugins.identitystore.service.indexer.elastic.index.service.IdentityIndexer;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.AuthorType;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.RequestAuthor;
+import fr.paris.lutece.portal.service.init.AppInit;
+import fr.paris.lutece.portal.service.util.AppPathService;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Containers and Lutece services used by a test or a benchmark : a database cloned from the template database of the shared Postgres container,
+ * the index and alias of the shared Elasticsearch container, and the Lutece configuration generated from the templates of the test resources.<br/>
+ * The test cases and the benchmark stack compose it, in this order : {@link #startContainers()}, configuration (templates, property overrides,
+ * Elasticsearch url seen by the services), {@link #initApplication()}, {@link #initIndex()}, then {@link #shutDownContainers()} and
+ * {@link #cleanApplication()}.
+ */
+public class IdentityStoreEnvironment
+{
+    /**
+     * Prefix of the system properties overriding a property of the generated <code>identitystore.properties</code>, e.g.
+     * <code>-Doverride.identitystore.listener.pool.size=20</code>
+     */
+    public static final String PROPERTY_OVERRIDE_PREFIX = "override.";
+    public static final String CURRENT_INDEX_ALIAS = "identities-alias";
+    public static final String CURRENT_INDEX = "identities-index";
+    private static final String PROTOCOL = "http://";
+    private static final String DB_PROPERTIES_PATH = "WEB-INF/conf/db.properties";
+    private static final String PROPERTIES_PATH = "WEB-INF/conf/plugins/identitystore.properties";
+    private static final String CONTEXT_XML_PATH = "WEB-INF/conf/plugins/identitystore_context.xml";
+    private static final String SQL_TRUNCATE = "TRUNCATE TABLE identitystore_identity, identitystore_identity_history, identitystore_identity_attribute,"
+            + " identitystore_identity_attribute_certificate, identitystore_identity_attribute_history, identitystore_index_action";
+
+    private String _strBasePath = System.getProperty( ParallelDefinitionRunner.PROPERTY_WORKER_BASE_PATH,
+            Paths.get( "src", "test", "resources" ).toFile( ).getAbsolutePath( ) );
+    private String _strDbTemplatePath = "data/db.template";
+    private String _strPropertiesTemplatePath = "data/identitystore.properties";
+    private String _strContextTemplatePath = "data/context.template";
+    private final Map<String, String> _propertyOverrides = new HashMap<>( );
+    private final RequestAuthor _author = new RequestAuthor( );
+    private ElasticsearchContainer _elasticsearchContainer;
+    private PostgreSQLContainer<?> _postgreSQLContainer;
+    private String _strServicesElasticsearchUrl;
+    private String _strDatabase;
+    private HikariDataSource _dataSource;
+
+    public IdentityStoreEnvironment( )
+    {
+        _author.setType( AuthorType.application );
+        _author.setName( "Test unitaires" );
+    }
+
+    /**
+     * Gets the shared containers and clones a database for this environment.
+     */
+    public void startContainers( )
+    {
+        _elasticsearchContainer = IdentityStoreContainerRegistry.getElasticsearchContainer( );
+        _strServicesElasticsearchUrl = _elasticsearchContainer.getHttpHostAddress( );
+        _postgreSQLContainer = IdentityStoreContainerRegistry.getPostgreSQLContainer( );
+        try
+        {
+            _strDatabase = IdentityStoreContainerRegistry.createDatabase( );
+        }
+        catch( SQLException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Generates the Lutece configuration from the templates and starts the Lutece services.
+     */
+    public void initApplication( ) throws Exception
+    {
+        /* Properties file */
+        IdentitystoreTestUtils.generateFileFromTemplate( _strBasePath, _strPropertiesTemplatePath, new HashMap<>( ), PROPERTIES_PATH );
+        final Map<String, String> overrides = this.getEffectivePropertyOverrides( );
+        if ( !overrides.isEmpty( ) )
+        {
+            IdentitystoreTestUtils.overrideProperties( _strBasePath, PROPERTIES_PATH, overrides );
+            System.out.println( "Overridden properties: " + overrides );
+        }
+
+        /* Inject db url to db.properties template and save it to App destination */
+        final Map<String, String> dbParams = new HashMap<>( );
+        dbParams.put( "db_url", this.getJdbcUrl( ) );
+        IdentitystoreTestUtils.generateFileFromTemplate( _strBasePath, _strDbTemplatePath, dbParams, DB_PROPERTIES_PATH );
+
+        /* Inject ES url to identitystore_context.xml template and save it to App destination */
+        final Map<String, String> contextParams = new HashMap<>( );
+        contextParams.put( "elasticsearch.url", _strServicesElasticsearchUrl.contains( "http" ) ? _strServicesElasticsearchUrl
+                : PROTOCOL + _strServicesElasticsearchUrl );
+        IdentitystoreTestUtils.generateFileFromTemplate( _strBasePath, _strContextTemplatePath, contextParams, CONTEXT_XML_PATH );
+
+        System.out.println( "-------------resourcesDir------------ " + _strBasePath );
+        AppPathService.init( _strBasePath );
+        AppInit.initServices( "/WEB-INF/conf/" );
+        System.out.println( "Lutece services initialized" );
+        System.out.println( );
+    }
+
+    /**
+     * Removes the indices left by a previous test on the shared container, then creates the index and its alias.
+     */
+    public void initIndex( ) throws Exception
+    {
+        final long start = System.nanoTime( );
+        final ElasticsearchTestClient client = this.getElasticsearchClient( );
+        for ( final String index : client.getIndicesBehindAlias( CURRENT_INDEX_ALIAS ) )
+        {
+            client.deleteIndexIfExists( index );
+        }
+        client.deleteIndexIfExists( CURRENT_INDEX );
+        final IdentityIndexer identityIndexer = new IdentityIndexer( this.getElasticsearchUrl( ) );
+        identityIndexer.initIndex( CURRENT_INDEX );
+        identityIndexer.addAliasOnIndex( CURRENT_INDEX, CURRENT_INDEX_ALIAS );
+        IdentityStoreContainerRegistry.recordReset( System.nanoTime( ) - start );
+    }
+
+    /**
+     * Removes the identities from the database and recreates an empty index behind the alias.
+     */
+    public void resetData( ) throws Exception
+    {
+        /* Clean BDD tables */
+        System.out.println( "----- Truncate BDD tables -----" );
+        try ( final Connection connection = this.getDataSource( ).getConnection( ); final Statement statement = connection.createStatement( ) )
+        {
+            System.out.println( "[Request]\n" + SQL_TRUNCATE + "\n" );
+            statement.executeUpdate( SQL_TRUNCATE );
+        }
+
+        /* Clean ES index */
+        System.out.println( "----- Delete ES Index -----" );
+        final IdentityIndexer identityIndexer = new IdentityIndexer( this.getElasticsearchUrl( ) );
+        final String indexBehindAlias = identityIndexer.getIndexBehindAlias( CURRENT_INDEX_ALIAS );
+        identityIndexer.deleteIndex( indexBehindAlias );
+        identityIndexer.initIndex( CURRENT_INDEX );
+        identityIndexer.addAliasOnIndex( CURRENT_INDEX, CURRENT_INDEX_ALIAS );
+    }
+
+    /**
+     * Releases the database of the environment. The containers are shared by the whole JVM and stopped by the {@link IdentityStoreContainerRegistry}.
+     */
+    public void shutDownContainers( )
+    {
+        if ( _dataSource != null )
+        {
+            _dataSource.close( );
+            _dataSource = null;
+        }
+        if ( _strDatabase != null )
+        {
+            try
+            {
+                IdentityStoreContainerRegistry.dropDatabase( _strDatabase );
+            }
+            catch( SQLException e )
+            {
+                System.out.println( "Could not drop database " + _strDatabase + " : " + e.getMessage( ) );
+            }
+            _strDatabase = null;
+        }
+        _elasticsearchContainer = null;
+        _postgreSQLContainer = null;
+    }
+
+    /**
+     * Deletes the configuration generated by {@link #initApplication()}.
+     */
+    public void cleanApplication( ) throws IOException
+    {
+        /* Clean context files */
+        Files.deleteIfExists( Paths.get( _strBasePath, DB_PROPERTIES_PATH ) );
+        Files.deleteIfExists( Paths.get( _strBasePath, CONTEXT_XML_PATH ) );
+        Files.deleteIfExists( Paths.get( _strBasePath, PROPERTIES_PATH ) );
+    }
+
+    /**
+     * @return the pool of connections to the database of the environment, opened on first call
+     */
+    public synchronized HikariDataSource getDataSource( )
+    {
+        if ( _dataSource == null )
+        {
+            final HikariConfig hikariConfig = new HikariConfig( );
+            hikariConfig.setJdbcUrl( this.getJdbcUrl( ) );
+            hikariConfig.setUsername( _postgreSQLContainer.getUsername( ) );
+            hikariConfig.setPassword( _postgreSQLContainer.getPassword( ) );
+            hikariConfig.setDriverClassName( _postgreSQLContainer.getDriverClassName( ) );
+            hikariConfig.setMaximumPoolSize( 1000 );
+            hikariConfig.setMinimumIdle( 10 );
+            _dataSource = new HikariDataSource( hikariConfig );
+        }
+        return _dataSource;
+    }
+
+    /**
+     * @return the properties to override in the generated <code>identitystore.properties</code> : the <code>override.*</code> system properties,
+     *         then the {@link #getPropertyOverrides() overrides} of the environment
+     */
+    public Map<String, String> getEffectivePropertyOverrides( )
+    {
+        final Map<String, String> overrides = new TreeMap<>( );
+        System.getProperties( ).stringPropertyNames( ).stream( ).filter( name -> name.startsWith( PROPERTY_OVERRIDE_PREFIX ) )
+                .forEach( name -> overrides.put( name.substring( PROPERTY_OVERRIDE_PREFIX.length( ) ), System.getProperty( name ) ) );
+        overrides.putAll( _propertyOverrides );
+        return overrides;
+    }
+
+    /**
+     * @return the mutable properties to override, set before {@link #initApplication()}
+     */
+    public Map<String, String> getPropertyOverrides( )
+    {
+        return _propertyOverrides;
+    }
+
+    /**
+     * @return a client of the Elasticsearch container
+     */
+    public ElasticsearchTestClient getElasticsearchClient( )
+    {
+        return new ElasticsearchTestClient( _elasticsearchContainer.getHttpHostAddress( ) );
+    }
+
+    /**
+     * @return the URL of the Elasticsearch container, as expected by <code>IdentityIndexer</code>
+     */
+    public String getElasticsearchUrl( )
+    {
+        return PROTOCOL + _elasticsearchContainer.getHttpHostAddress( );
+    }
+
+    /**
+     * Points the Lutece services to another address than the container, e.g. a recording proxy. To be set before {@link #initApplication()}.
+     *
+     * @param strUrl
+     *            the address, with or without protocol
+     */
+    public void setServicesElasticsearchUrl( final String strUrl )
+    {
+        _strServicesElasticsearchUrl = strUrl;
+    }
+
+    public String getJdbcUrl( )
+    {
+        return IdentityStoreContainerRegistry.getJdbcUrl( _strDatabase );
+    }
+
+    /**
+     * @return the name of the database cloned for this environment
+     */
+    public String getDatabase( )
+    {
+        return _strDatabase;
+    }
+
+    public ElasticsearchContainer getElasticsearchContainer( )
+    {
+        return _elasticsearchContainer;
+    }
+
+    public PostgreSQLContainer<?> getPostgreSQLContainer( )
+    {
+        return _postgreSQLContainer;
+    }
+
+    public RequestAuthor getAuthor( )
+    {
+        return _author;
+    }
+
+    /**
+     * @return the directory of the test resources, copied for each parallel worker
+     */
+    public String getBasePath( )
+    {
+        return _strBasePath;
+    }
+
+    public void setBasePath( final String strBasePath )
+    {
+        _strBasePath = strBasePath;
+    }
+
+    public String getPropertiesTemplatePath( )
+    {
+        return _strPropertiesTemplatePath;
+    }
+
+    public void setPropertiesTemplatePath( final String strPropertiesTemplatePath )
+    {
+        _strPropertiesTemplatePath = strPropertiesTemplatePath;
+    }
+
+    public String getContextTemplatePath( )
+    {
+        return _strContextTemplatePath;
+    }
+
+    public void setContextTemplatePath( final String strContextTemplatePath )
+    {
+        _strContextTemplatePath = strContextTemplatePath;
+    }
+
+    public String getDbTemplatePath( )
+    {
+        return _strDbTemplatePath;
+    }
+
+    public void setDbTemplatePath( final String strDbTemplatePath )
+    {
+        _strDbTemplatePath = strDbTemplatePath;
+    }
+}
@@ -37,34 +37,40 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import fr.paris.lutece.plugins.identitystore.business.rules.duplicate.DuplicateRule;
-import fr.paris.lutece.plugins.identitystore.business.rules.duplicate.DuplicateRuleAttributeTreatment;
 import fr.paris.lutece.plugins.identitystore.modules.test.data.IdentityStoreTest;
-import fr.paris.lutece.plugins.identitystore.modules.test.data.TestAttribute;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.StreamingDefinitionReader;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDtoConverter;
 import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDefinition;
 import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDuplicateRule;
 import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.modules.test.report.DefinitionReport;
+import fr.paris.lutece.plugins.identitystore.modules.test.report.PhaseMetrics;
+import fr.paris.lutece.plugins.identitystore.modules.test.report.RunReportWriter;
+import fr.paris.lutece.plugins.identitystore.modules.test.seed.BulkIdentitySeeder;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.CompiledDefinitions;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.DefinitionCache;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.DefinitionEvent;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.ElasticsearchQueryCapture;
 import fr.paris.lutece.plugins.identitystore.modules.test.util.FileNameAlphanumericComparator;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.IndexVisibilityBarrier;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.RegressionGate;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.StatementStatsCapture;
 import fr.paris.lutece.plugins.identitystore.modules.test.util.StringAlphanumericComparator;
-import fr.paris.lutece.plugins.identitystore.service.attribute.IdentityAttributeService;
-import fr.paris.lutece.plugins.identitystore.service.identity.IdentityAttributeNotFoundException;
 import fr.paris.lutece.plugins.identitystore.service.identity.IdentityService;
-import fr.paris.lutece.plugins.identitystore.service.indexer.elastic.index.service.IdentityIndexer;
-import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.AttributeDto;
-import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.AttributeTreatmentType;
 import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.IdentityDto;
 import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.crud.IdentityChangeRequest;
 import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.crud.IdentityChangeResponse;
 import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.IdentitySearchRequest;
-import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.SearchAttribute;
-import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.SearchDto;
 import fr.paris.lutece.plugins.identitystore.web.exception.IdentityStoreException;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
-import javax.sql.DataSource;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -73,10 +79,8 @@ import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -84,23 +88,93 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class IdentityStoreJsonDataTestCase extends IdentityStoreBDDAndESTestCase
 {
     private static final String PROTOCOL = "http://";
+    private static final String WORKER_REPORT_INFIX = "-worker-";
+    private static final String WORKER_METRICS_SUFFIX = "-metrics.json";
+    private static final int DEFAULT_INPUTS_CHUNK_SIZE = 1000;
     protected final Map<String, Pair<Boolean, String>> results = new HashMap<>( );
     protected final Set<File> testDefinitions = new HashSet<>( );
     protected final ObjectMapper mapper = new ObjectMapper( )
             .enable( SerializationFeature.INDENT_OUTPUT )
             .disable( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES );
     protected final List<String> inputsFilter = Arrays.stream(System.getProperty("inputs", "").split(",")).filter(StringUtils::isNotEmpty).collect(Collectors.toList());
+    protected final Map<String, Long> indexWaits = new HashMap<>( );
+    protected final boolean snapshotReset = "snapshot".equals( System.getProperty( "reset" ) );
+    protected SnapshotDataReset dataReset;
+    protected final boolean bulkSeeding = "bulk".equals( System.getProperty( "seeding" ) );
+    private BulkIdentitySeeder bulkSeeder;
+    protected final boolean consoleOutput = !"false".equals( System.getProperty( "report.console" ) );
+    protected final boolean incremental = Boolean.getBoolean( "incremental" );
+    private DefinitionCache definitionCache;
+    private CompiledDefinitions compiledDefinitions;
+    private RegressionGate regressionGate;
+    private final PhaseMetrics phaseMetrics = new PhaseMetrics( );
+    private StreamingDefinitionReader streamingReader;
+    private ElasticsearchQueryCapture queryCapture;
+    private StatementStatsCapture statementStats;
+    protected final int workers = Integer.getInteger( ParallelDefinitionRunner.PROPERTY_WORKERS, 1 );
+    protected final String workerResultsPath = System.getProperty( ParallelDefinitionRunner.PROPERTY_WORKER_RESULTS );
+
+    /**
+     * In parallel mode, this JVM only coordinates the forked workers : it neither starts containers nor initializes the Lutece services.
+     */
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        if ( this.isParallelCoordinator( ) )
+        {
+            System.out.println( "----- Set UP (" + workers + " parallel workers) -----" );
+            this.preInitApplication( );
+            System.out.println( this.getName( ) );
+        }
+        else
+        {
+            super.setUp( );
+        }
+    }
+
+    @Override
+    protected void tearDown( ) throws Exception
+    {
+        if ( dataReset != null )
+        {
+            dataReset.release( );
+            dataReset = null;
+        }
+        if ( !this.isParallelCoordinator( ) )
+        {
+            super.tearDown( );
+        }
+        if ( queryCapture != null )
+        {
+            queryCapture.stop( );
+            queryCapture = null;
+        }
+    }
+
+    protected boolean isParallelCoordinator( )
+    {
+        return workers > 1 && workerResultsPath == null;
+    }
 
     @Override
     protected void preInitApplication( ) throws Exception
     {
-        final Path inputsPath = Paths.get( basePath, this.getTestDataPath( ), "definition" );
+        final Path inputsPath = Paths.get( environment.getBasePath( ), this.getTestDataPath( ), "definition" );
         final Path configPath = Paths.get( this.getTestDataPath( ), "config/identitystore.properties" );
-        this.propertiesTemplatePath = configPath.toString( );
+        environment.setPropertiesTemplatePath( configPath.toString( ) );
+        if ( ElasticsearchQueryCapture.isEnabled( ) && !this.isParallelCoordinator( ) )
+        {
+            // The Lutece services go through the recording proxy, the harness and the replays go straight to the container
+            queryCapture = new ElasticsearchQueryCapture( environment.getElasticsearchContainer( ).getHttpHostAddress( ) );
+            final String proxyUrl = queryCapture.start( );
+            environment.setServicesElasticsearchUrl( proxyUrl );
+            environment.getPropertyOverrides( ).put( "elasticsearch.url", PROTOCOL + proxyUrl );
+        }
 
         final PathMatcher jsonMatcher = FileSystems.getDefault( ).getPathMatcher( "glob:**/*.json" );
         Files.walkFileTree( inputsPath, new SimpleFileVisitor<Path>( )
@@ -120,61 +194,368 @@ public abstract class IdentityStoreJsonDataTestCase extends IdentityStoreBDDAndE
     protected abstract String getTestDataPath( );
 
     public void test( ) throws Exception {
-        this.beforeTest();
-        if ( !testDefinitions.isEmpty() )
+        final RunReportWriter reportWriter = new RunReportWriter( this.getReportName( ) );
+        final PrintStream console = System.out;
+        if ( !consoleOutput )
+        {
+            System.setOut( new PrintStream( NullOutputStream.NULL_OUTPUT_STREAM ) );
+        }
+        try
         {
-            testDefinitions.stream( ).sorted( FileNameAlphanumericComparator.createStringComparator( ) ).forEach(file -> {
-                try
+            final List<File> sortedDefinitions = this.selectDefinitions( testDefinitions.stream( )
+                    .sorted( FileNameAlphanumericComparator.createStringComparator( ) ).collect( Collectors.toList( ) ) );
+            if ( this.isParallelCoordinator( ) )
+            {
+                if ( !sortedDefinitions.isEmpty( ) )
                 {
-                    final IdentityStoreTest identityStoreTest = mapper.readValue( file, IdentityStoreTest.class );
-                    if ( identityStoreTest != null && identityStoreTest.getTestDefinition() != null )
+                    this.deleteWorkerReports( );
+                    results.putAll( new ParallelDefinitionRunner( this.getClass( ), environment.getBasePath( ) ).run( sortedDefinitions, workers ) );
+                    final Map<String, File> definitionsByFileName = sortedDefinitions.stream( )
+                            .collect( Collectors.toMap( File::getName, file -> file ) );
+                    for ( final Path workerReport : this.getWorkerReports( ".jsonl" ) )
                     {
-                        System.out.println( "----------------------------------------------------------------------" );
-                        System.out.println( "----- Running test definition: " + identityStoreTest.getTestDefinition().getName( ) + " -----" );
-                        System.out.println( "----------------------------------------------------------------------" );
-                        System.out.println();
-                        System.out.println( "Description: " + identityStoreTest.getTestDefinition().getDescription( )  );
-                        System.out.println();
-                        System.out.println( "----- Init test data -----" );
-                        identityStoreTest.getTestDefinition().getInputs( ).stream( )
-                            .map( testIdentity -> new ImmutablePair<>( testIdentity.getName( ), this.toIdentityChangeRequest( testIdentity ) ) ).forEach(pair -> {
-                                try
-                                {
-                                    System.out.println( "[Create identity " + pair.getLeft() + "]" );
-                                    System.out.println(pair.getRight().getIdentity().getAttributes().stream().map(a -> a.getKey() + "=" + a.getValue( ) ).collect( Collectors.joining( ", " ) ));
-                                    final IdentityChangeResponse response = new IdentityChangeResponse( );
-                                    IdentityService.instance( ).create( pair.getRight( ), this.getAuthor( ), IdentityStoreTestContext.SAMPLE_APPCODE, response );
-                                    System.out.println("Status: " + response.getStatus().getHttpCode() + " - " + response.getStatus().getType());
-                                    System.out.println("CUID: " + response.getCustomerId());
-                                    System.out.println("Message: " + response.getStatus().getMessage());
-                                    System.out.println();
-                                }
-                                catch( IdentityStoreException e )
-                                {
-                                    throw new RuntimeException( e );
-                                }
-                            } );
-                        final List<TestIdentity> result = this.runDefinition(identityStoreTest.getTestDefinition());
-                        results.put( identityStoreTest.getTestDefinition().getName( ), this.getTestResult( result, identityStoreTest.getTestDefinition() ) );
-                        System.out.println();
-                        System.out.println( "----- Clear test data -----" );
-                        this.clearData( );
-                        System.out.println();
+                        for ( final DefinitionReport report : RunReportWriter.read( workerReport ) )
+                        {
+                            reportWriter.write( report );
+                            this.recordInCache( definitionsByFileName.get( report.getFile( ) ), report );
+                        }
                     }
-                    else
+                    // The suite level metrics are those of all the workers
+                    for ( final Path workerMetrics : this.getWorkerReports( WORKER_METRICS_SUFFIX ) )
                     {
-                        throw new RuntimeException( "ERROR " + file.getName( ) + " : JSON is empty or malformed" );
+                        phaseMetrics.merge( workerMetrics );
                     }
                 }
-                catch( Exception e )
+            }
+            else
+            {
+                if ( Boolean.getBoolean( "inputs.streaming" ) )
+                {
+                    streamingReader = new StreamingDefinitionReader( mapper, Integer.getInteger( "inputs.chunk.size", DEFAULT_INPUTS_CHUNK_SIZE ) );
+                }
+                else if ( Boolean.getBoolean( "definitions.compiled" ) )
                 {
-                    throw new RuntimeException( e );
+                    // Shared by the parallel workers : the definitions are keyed by their path in the test resources
+                    compiledDefinitions = new CompiledDefinitions( this.getClass( ).getSimpleName( ), Paths.get( environment.getBasePath( ) ), mapper );
+                    compiledDefinitions.compile( sortedDefinitions );
                 }
-            } );
-            System.out.println( "----- Global test Results -----" );
-            results.keySet( ).stream( ).sorted(StringAlphanumericComparator.createStringComparator()).forEach( this::displayResult );
-            assertTrue( results.values( ).stream( ).allMatch( Pair::getLeft ) );
+                this.beforeTest( );
+                if ( snapshotReset )
+                {
+                    // Everything created by beforeTest() is part of the baseline restored after each definition
+                    dataReset = new SnapshotDataReset( environment.getDatabase( ), CURRENT_INDEX_ALIAS, environment.getElasticsearchClient( ),
+                            environment.getDataSource( ) );
+                    dataReset.capture( );
+                }
+                if ( StatementStatsCapture.isEnabled( ) )
+                {
+                    statementStats = new StatementStatsCapture( this.getDataSource( ) );
+                }
+                final long loopStart = System.nanoTime( );
+                final long allocatedBefore = RegressionGate.getAllocatedBytes( );
+                for ( final File file : sortedDefinitions )
+                {
+                    this.runTestDefinition( file, reportWriter );
+                }
+                phaseMetrics.recordTime( PhaseMetrics.TIMER_DEFINITIONS_LOOP, System.nanoTime( ) - loopStart );
+                phaseMetrics.increment( PhaseMetrics.COUNTER_ALLOCATED_BYTES, RegressionGate.getAllocatedBytes( ) - allocatedBefore );
+                if ( workerResultsPath != null )
+                {
+                    ParallelDefinitionRunner.writeResults( results, workerResultsPath );
+                }
+            }
+            // The coordinator gates the metrics merged from its workers
+            if ( RegressionGate.isEnabled( ) && workerResultsPath == null && phaseMetrics.getCount( PhaseMetrics.TIMER_CALL ) > 0 )
+            {
+                regressionGate = this.newRegressionGate( );
+            }
+        }
+        finally
+        {
+            System.setOut( console );
+            reportWriter.close( );
+            if ( !phaseMetrics.isEmpty( ) )
+            {
+                phaseMetrics.export( RunReportWriter.getReportDirectory( ), this.getReportName( ) );
+                if ( workerResultsPath != null )
+                {
+                    phaseMetrics.save( RunReportWriter.getReportDirectory( ).resolve( this.getReportName( ) + WORKER_METRICS_SUFFIX ) );
+                }
+            }
+            if ( definitionCache != null )
+            {
+                definitionCache.save( );
+            }
+        }
+        if ( !testDefinitions.isEmpty( ) )
+        {
+            this.assertResults( );
+        }
+        if ( regressionGate != null )
+        {
+            regressionGate.check( );
+        }
+    }
+
+    /**
+     * Records the numbers of the suite compared with its baseline : definitions per second, p95 of the call phase in milliseconds (from the
+     * microsecond timer of the phase metrics, the report durations being truncated to the millisecond) and bytes allocated by the test thread per
+     * definition.<br/>
+     * In parallel mode the metrics are those merged from the workers : the throughput is the one of the concurrent definition loops, so the case
+     * is keyed by the number of workers.
+     */
+    private RegressionGate newRegressionGate( )
+    {
+        final RegressionGate gate = new RegressionGate( this.getClass( ).getSimpleName( ) );
+        final String key = this.getTestDataPath( ) + ( this.isParallelCoordinator( ) ? " workers=" + workers : "" );
+        final long lCalls = phaseMetrics.getCount( PhaseMetrics.TIMER_CALL );
+        gate.record( key, RegressionGate.METRIC_THROUGHPUT, lCalls * 1000d / phaseMetrics.getMeanMillis( PhaseMetrics.TIMER_DEFINITIONS_LOOP ) );
+        gate.record( key, RegressionGate.METRIC_P95, phaseMetrics.getPercentileMillis( PhaseMetrics.TIMER_CALL, 95 ) );
+        gate.record( key, RegressionGate.METRIC_ALLOCATION, (double) phaseMetrics.getCounter( PhaseMetrics.COUNTER_ALLOCATED_BYTES ) / lCalls );
+        return gate;
+    }
+
+    private void runTestDefinition( final File file, final RunReportWriter reportWriter ) throws Exception
+    {
+        final TestDefinition testDefinition = this.readTestDefinition( file );
+        final DefinitionReport report = new DefinitionReport( );
+        report.setName( testDefinition.getName( ) );
+        report.setFile( file.getName( ) );
+
+        System.out.println( "----------------------------------------------------------------------" );
+        System.out.println( "----- Running test definition: " + testDefinition.getName( ) + " -----" );
+        System.out.println( "----------------------------------------------------------------------" );
+        System.out.println();
+        System.out.println( "Description: " + testDefinition.getDescription( )  );
+        System.out.println();
+        System.out.println( "----- Init test data -----" );
+        final DefinitionEvent definitionEvent = new DefinitionEvent( testDefinition.getName( ) );
+        definitionEvent.begin( );
+        if ( statementStats != null )
+        {
+            statementStats.snapshot( );
+        }
+        long start = System.nanoTime( );
+        final List<String> seededCustomerIds = new ArrayList<>( );
+        if ( streamingReader != null )
+        {
+            streamingReader.forEachChunk( file, chunk -> seededCustomerIds.addAll( this.seedInputs( chunk ) ) );
+        }
+        else
+        {
+            seededCustomerIds.addAll( this.seedInputs( testDefinition ) );
+        }
+        final long lSeedingNanos = System.nanoTime( ) - start;
+        report.recordPhase( DefinitionReport.PHASE_SEEDING, lSeedingNanos );
+        if ( !seededCustomerIds.isEmpty( ) )
+        {
+            phaseMetrics.recordTime( PhaseMetrics.TIMER_SEED_PER_IDENTITY, lSeedingNanos / seededCustomerIds.size( ), seededCustomerIds.size( ) );
+        }
+        phaseMetrics.increment( PhaseMetrics.COUNTER_SEEDED_IDENTITIES, seededCustomerIds.size( ) );
+        phaseMetrics.recordValue( PhaseMetrics.HISTOGRAM_INPUTS, seededCustomerIds.size( ) );
+
+        start = System.nanoTime( );
+        indexWaits.put( testDefinition.getName( ), this.awaitIndexing( seededCustomerIds ) );
+        final long lIndexWaitNanos = System.nanoTime( ) - start;
+        report.recordPhase( DefinitionReport.PHASE_INDEX_WAIT, lIndexWaitNanos );
+        phaseMetrics.recordTime( PhaseMetrics.TIMER_INDEX_WAIT, lIndexWaitNanos );
+
+        if ( queryCapture != null )
+        {
+            queryCapture.beginCapture( );
+        }
+        start = System.nanoTime( );
+        final List<TestIdentity> result = this.runDefinition( testDefinition );
+        final long lCallNanos = System.nanoTime( ) - start;
+        report.recordPhase( DefinitionReport.PHASE_CALL, lCallNanos );
+        phaseMetrics.recordTime( PhaseMetrics.TIMER_CALL, lCallNanos );
+        phaseMetrics.recordValue( PhaseMetrics.HISTOGRAM_RESULTS, result.size( ) );
+        // The profiled replays and the statistics reads are not part of the call
+        if ( queryCapture != null )
+        {
+            report.setQueries( queryCapture.endCapture( ) );
+        }
+        if ( statementStats != null )
+        {
+            report.setStatements( statementStats.getTopStatements( ) );
+        }
+
+        start = System.nanoTime( );
+        if ( streamingReader != null )
+        {
+            // Only the inputs looked up by the comparison are loaded back
+            testDefinition.setInputs( streamingReader.resolveInputs( file, new HashSet<>( testDefinition.getExpected( ) ),
+                    result.stream( ).map( TestIdentity::fingerprint ).collect( Collectors.toSet( ) ) ) );
+        }
+        results.put( testDefinition.getName( ), this.getTestResult( result, testDefinition, report ) );
+        final long lComparisonNanos = System.nanoTime( ) - start;
+        report.recordPhase( DefinitionReport.PHASE_COMPARISON, lComparisonNanos );
+        phaseMetrics.recordTime( PhaseMetrics.TIMER_COMPARISON, lComparisonNanos );
+        phaseMetrics.increment( PhaseMetrics.COUNTER_DEFINITIONS, 1 );
+        if ( !report.isSuccess( ) )
+        {
+            phaseMetrics.increment( PhaseMetrics.COUNTER_FAILED_DEFINITIONS, 1 );
+        }
+
+        System.out.println();
+        System.out.println( "----- Clear test data -----" );
+        start = System.nanoTime( );
+        this.clearData( );
+        final long lCleanupNanos = System.nanoTime( ) - start;
+        definitionEvent.commit( );
+        report.recordPhase( DefinitionReport.PHASE_CLEANUP, lCleanupNanos );
+        phaseMetrics.recordTime( PhaseMetrics.TIMER_CLEAR_DATA, lCleanupNanos );
+        System.out.println();
+        reportWriter.write( report );
+        this.recordInCache( file, report );
+    }
+
+    private TestDefinition readTestDefinition( final File file ) throws Exception
+    {
+        if ( streamingReader != null )
+        {
+            final TestDefinition testDefinition = streamingReader.readDefinition( file );
+            if ( testDefinition == null )
+            {
+                throw new RuntimeException( "ERROR " + file.getName( ) + " : JSON is empty or malformed" );
+            }
+            return testDefinition;
+        }
+        final IdentityStoreTest identityStoreTest = compiledDefinitions != null ? compiledDefinitions.get( file )
+                : mapper.readValue( file, IdentityStoreTest.class );
+        if ( identityStoreTest == null || identityStoreTest.getTestDefinition( ) == null )
+        {
+            throw new RuntimeException( "ERROR " + file.getName( ) + " : JSON is empty or malformed" );
+        }
+        return identityStoreTest.getTestDefinition( );
+    }
+
+    /**
+     * In incremental mode, replaces the definitions whose content and environment did not change since their last run by their cached result.
+     *
+     * @return the definitions to run
+     */
+    private List<File> selectDefinitions( final List<File> sortedDefinitions ) throws IOException
+    {
+        if ( !incremental )
+        {
+            return sortedDefinitions;
+        }
+        definitionCache = new DefinitionCache( this.getClass( ).getSimpleName( ),
+                Arrays.asList( Paths.get( environment.getBasePath( ), environment.getPropertiesTemplatePath( ) ),
+                        Paths.get( environment.getBasePath( ), environment.getContextTemplatePath( ) ) ),
+                environment.getEffectivePropertyOverrides( ) );
+        if ( Boolean.getBoolean( "force" ) )
+        {
+            return sortedDefinitions;
+        }
+        final List<File> selected = new ArrayList<>( );
+        for ( final File file : sortedDefinitions )
+        {
+            final Pair<String, Pair<Boolean, String>> cached = definitionCache.getUpToDateResult( file );
+            if ( cached == null )
+            {
+                selected.add( file );
+            }
+            else
+            {
+                results.put( cached.getLeft( ),
+                        new ImmutablePair<>( cached.getRight( ).getLeft( ), "[Définition inchangée, dernier résultat]\n" + cached.getRight( ).getRight( ) ) );
+            }
+        }
+        System.out.println( "----- Incremental mode: " + ( sortedDefinitions.size( ) - selected.size( ) ) + " unchanged definition(s) skipped -----" );
+        return selected;
+    }
+
+    private void recordInCache( final File file, final DefinitionReport report ) throws IOException
+    {
+        if ( definitionCache != null && file != null )
+        {
+            definitionCache.record( file, report );
+        }
+    }
+
+    /**
+     * Creates the inputs of the definition, in bulk for the corpus when enabled, and through the identity service otherwise.
+     *
+     * @return the customer ids of the created identities
+     */
+    protected List<String> seedInputs( final TestDefinition testDefinition ) throws Exception
+    {
+        return this.seedInputs( testDefinition.getInputs( ) );
+    }
+
+    protected List<String> seedInputs( final List<TestIdentity> inputs ) throws Exception
+    {
+        final List<String> seededCustomerIds = new ArrayList<>( );
+        if ( bulkSeeding )
+        {
+            final List<TestIdentity> corpus = inputs.stream( ).filter( testIdentity -> !testIdentity.isUnderTest( ) )
+                    .collect( Collectors.toList( ) );
+            seededCustomerIds.addAll( this.getBulkSeeder( ).seed( corpus ) );
         }
+        for ( final TestIdentity testIdentity : inputs )
+        {
+            if ( bulkSeeding && !testIdentity.isUnderTest( ) )
+            {
+                continue;
+            }
+            final IdentityChangeRequest identityChangeRequest = this.toIdentityChangeRequest( testIdentity );
+            System.out.println( "[Create identity " + testIdentity.getName( ) + "]" );
+            System.out.println( identityChangeRequest.getIdentity( ).getAttributes( ).stream( ).map( a -> a.getKey( ) + "=" + a.getValue( ) )
+                    .collect( Collectors.joining( ", " ) ) );
+            final IdentityChangeResponse response = new IdentityChangeResponse( );
+            IdentityService.instance( ).create( identityChangeRequest, this.getAuthor( ), IdentityStoreTestContext.SAMPLE_APPCODE, response );
+            System.out.println( "Status: " + response.getStatus( ).getHttpCode( ) + " - " + response.getStatus( ).getType( ) );
+            System.out.println( "CUID: " + response.getCustomerId( ) );
+            if ( response.getCustomerId( ) != null )
+            {
+                seededCustomerIds.add( response.getCustomerId( ) );
+            }
+            System.out.println( "Message: " + response.getStatus( ).getMessage( ) );
+            System.out.println( );
+        }
+        return seededCustomerIds;
+    }
+
+    protected String getReportName( )
+    {
+        final String workerId = System.getProperty( ParallelDefinitionRunner.PROPERTY_WORKER_ID );
+        return this.getClass( ).getSimpleName( ) + ( workerId != null ? WORKER_REPORT_INFIX + workerId : "" );
+    }
+
+    private List<Path> getWorkerReports( final String strSuffix ) throws IOException
+    {
+        final String prefix = this.getClass( ).getSimpleName( ) + WORKER_REPORT_INFIX;
+        try ( final Stream<Path> files = Files.list( RunReportWriter.getReportDirectory( ) ) )
+        {
+            return files.filter( path -> path.getFileName( ).toString( ).startsWith( prefix ) && path.toString( ).endsWith( strSuffix ) )
+                    .collect( Collectors.toList( ) );
+        }
+    }
+
+    private void deleteWorkerReports( ) throws IOException
+    {
+        for ( final Path workerReport : this.getWorkerReports( ".jsonl" ) )
+        {
+            Files.delete( workerReport );
+        }
+        for ( final Path workerMetrics : this.getWorkerReports( WORKER_METRICS_SUFFIX ) )
+        {
+            Files.delete( workerMetrics );
+        }
+    }
+
+    private void assertResults( )
+    {
+        System.out.println( "----- Global test Results -----" );
+        results.keySet( ).stream( ).sorted(StringAlphanumericComparator.createStringComparator()).forEach( this::displayResult );
+        if ( !indexWaits.isEmpty( ) )
+        {
+            System.out.println( "Index barrier waits: " + indexWaits.values( ).stream( ).mapToLong( Long::longValue ).sum( ) + " ms over "
+                    + indexWaits.size( ) + " definition(s), max " + indexWaits.values( ).stream( ).mapToLong( Long::longValue ).max( ).orElse( 0 ) + " ms" );
+        }
+        assertTrue( results.values( ).stream( ).allMatch( Pair::getLeft ) );
     }
 
     protected abstract void beforeTest() throws Exception;
@@ -184,190 +565,156 @@ public abstract class IdentityStoreJsonDataTestCase extends IdentityStoreBDDAndE
         System.out.println(trace);
     }
 
-    protected Pair<Boolean, String> getTestResult( final List<TestIdentity> results, final TestDefinition testDefinition )
+    protected Pair<Boolean, String> getTestResult( final List<TestIdentity> results, final TestDefinition testDefinition, final DefinitionReport report )
     {
+        // Index inputs by name and by fingerprint, the first input wins as with a sequential lookup
+        final Map<String, TestIdentity> inputsByName = new HashMap<>( );
+        final Map<String, String> inputNamesByFingerprint = new HashMap<>( );
+        testDefinition.getInputs( ).forEach( input -> {
+            inputsByName.putIfAbsent( input.getName( ), input );
+            inputNamesByFingerprint.putIfAbsent( input.fingerprint( ), input.getName( ) );
+        } );
+
         // Transform expected identities names to TestIdentity objects
-        final List<TestIdentity> expectedTestIdentities = testDefinition.getExpected().stream()
-                .map(expected -> testDefinition.getInputs().stream().filter(input -> input.getName().equals(expected)).findFirst().orElse(null))
-                .filter(Objects::nonNull)
-                .peek( testIdentity -> testIdentity.getAttributes( ).sort( Comparator.comparing( TestAttribute::getKey ) ) )
-                .collect(Collectors.toList());
-
-        // Get result names from inputs and sort attributes by key name
-        testDefinition.getInputs( ).forEach( testIdentity -> testIdentity.getAttributes( ).sort( Comparator.comparing( TestAttribute::getKey ) ) );
+        final List<TestIdentity> expectedTestIdentities = testDefinition.getExpected( ).stream( ).map( inputsByName::get ).filter( Objects::nonNull )
+                .collect( Collectors.toList( ) );
+        final Set<String> expectedFingerprints = expectedTestIdentities.stream( ).map( TestIdentity::fingerprint ).collect( Collectors.toSet( ) );
+
+        // Get result names from inputs
+        final List<String> resultFingerprints = new ArrayList<>( results.size( ) );
         results.forEach( testIdentity -> {
-            testIdentity.getAttributes( ).sort( Comparator.comparing( TestAttribute::getKey ) );
-            testDefinition.getInputs( ).stream( ).filter( input -> input.equals( testIdentity ) ).forEach( input -> testIdentity.setName( input.getName( ) ) );
+            final String fingerprint = testIdentity.fingerprint( );
+            resultFingerprints.add( fingerprint );
+            final String name = inputNamesByFingerprint.get( fingerprint );
+            if ( name != null )
+            {
+                testIdentity.setName( name );
+            }
         } );
+        final Set<String> resultFingerprintSet = new HashSet<>( resultFingerprints );
+        final List<String> missingNames = expectedTestIdentities.stream( ).filter( expected -> !resultFingerprintSet.contains( expected.fingerprint( ) ) )
+                .map( TestIdentity::getName ).sorted( ).collect( Collectors.toList( ) );
+        final long nbUnexpected = resultFingerprints.stream( ).filter( fingerprint -> !expectedFingerprints.contains( fingerprint ) ).count( );
+        report.setExpected( new ArrayList<>( testDefinition.getExpected( ) ) );
+        report.setReturned( this.toSortedNames( resultFingerprints, inputNamesByFingerprint ) );
+        report.setMissing( missingNames );
+        report.setExtra( this.toSortedNames( resultFingerprints.stream( ).filter( fingerprint -> !expectedFingerprints.contains( fingerprint ) )
+                .collect( Collectors.toList( ) ), inputNamesByFingerprint ) );
+        final Pair<Boolean, String> result = this.buildTestResult( results, testDefinition, resultFingerprints, inputNamesByFingerprint, missingNames,
+                nbUnexpected );
+        report.setSuccess( result.getLeft( ) );
+        report.setMessage( result.getRight( ) );
+        return result;
+    }
+
+    private Pair<Boolean, String> buildTestResult( final List<TestIdentity> results, final TestDefinition testDefinition,
+            final List<String> resultFingerprints, final Map<String, String> inputNamesByFingerprint, final List<String> missingNames,
+            final long nbUnexpected )
+    {
 
         // Build result message to compare inputs and expected results
         final StringBuilder message = new StringBuilder("Liste des identités testées : " + testDefinition.getInputs( ).stream( ).map( TestIdentity::getName ).collect(Collectors.joining(", ")));
         message.append("\nListe des identités attendues pour la réussite du test : ")
                 .append(String.join(", ", testDefinition.getExpected()))
                 .append("\nListe des identités retournées par le test : ")
-                .append(results.stream().map(result -> this.getNameFromInputs(result, testDefinition.getInputs())).sorted().collect(Collectors.joining(", ")));
+                .append(String.join(", ", this.toSortedNames(resultFingerprints, inputNamesByFingerprint)));
 
         // If there is more results than expected by the test definition, calculate how much more there is
         if ( results.size( ) > testDefinition.getExpected( ).size( ) )
         {
-            results.removeAll( expectedTestIdentities );
-            message.append("\nLe résultat du test contient ").append(results.size()).append(" identité(s) de plus que la liste des identités attendues pour la réussite du test.");
+            message.append("\nLe résultat du test contient ").append(nbUnexpected).append(" identité(s) de plus que la liste des identités attendues pour la réussite du test.");
             return new MutablePair<>( false, message.toString() );
         }
         else
             // If there is less, calculate how much
             if ( results.size( ) < testDefinition.getExpected( ).size( ) )
             {
-                expectedTestIdentities.removeAll( results );
-                message.append("\nLa liste des identités attendues pour la réussite du test contient ").append(expectedTestIdentities.size()).append(" identité(s) qui n'ont pas été retournée(s) par le test: ").append( expectedTestIdentities.stream( ).map( TestIdentity::getName ).sorted( ).collect( Collectors.joining( ", " ) ) );
+                message.append("\nLa liste des identités attendues pour la réussite du test contient ").append(missingNames.size()).append(" identité(s) qui n'ont pas été retournée(s) par le test: ").append( String.join( ", ", missingNames ) );
                 return new MutablePair<>( false, message.toString() );
             }
             else
             { // Finally, if the sizes are equal, check if the lists are the same (there can be differences)
-                final List<TestIdentity> expectedCopy = new ArrayList<>( expectedTestIdentities );
-                final List<TestIdentity> resultCopy = new ArrayList<>( results );
-                expectedTestIdentities.removeAll( results );
-                if ( expectedTestIdentities.isEmpty( ) ) // means that the two lists contains the same identities, our test is OK then :)
+                if ( missingNames.isEmpty( ) ) // means that the two lists contains the same identities, our test is OK then :)
                 {
                     message.append("\nLe résultat du test correspond à la liste des identités attendues pour la réussite du test.");
                     return new MutablePair<>( true, message.toString() );
                 }
                 else // Same size but different identities, our test is KO :(
                 {
-                    message.append("\nLa liste des identités attendues pour la réussite du test contient ").append(expectedTestIdentities.size()).append(" identité(s) qui n'ont pas été retournée(s) par le test: ").append( expectedTestIdentities.stream( ).map( TestIdentity::getName ).sorted( ).collect( Collectors.joining( ", " ) ) );
-                    resultCopy.removeAll( expectedCopy );
-                    if ( !resultCopy.isEmpty( ) )
+                    message.append("\nLa liste des identités attendues pour la réussite du test contient ").append(missingNames.size()).append(" identité(s) qui n'ont pas été retournée(s) par le test: ").append( String.join( ", ", missingNames ) );
+                    if ( nbUnexpected > 0 )
                     {
-                        message.append("\nLe résultat du test contient ").append(resultCopy.size()).append(" identité(s) non définie(s) dans la liste des identités attendues pour la réussite du test.");
+                        message.append("\nLe résultat du test contient ").append(nbUnexpected).append(" identité(s) non définie(s) dans la liste des identités attendues pour la réussite du test.");
                     }
                     return new MutablePair<>( false, message.toString() );
                 }
             }
     }
 
-    private String getNameFromInputs( final TestIdentity result, final List<TestIdentity> inputs ) {
-        return inputs.stream().filter(expected -> expected.equals(result)).map(TestIdentity::getName).findFirst().orElse("not found");
+    private List<String> toSortedNames( final List<String> fingerprints, final Map<String, String> inputNamesByFingerprint )
+    {
+        return fingerprints.stream( ).map( fingerprint -> inputNamesByFingerprint.getOrDefault( fingerprint, "not found" ) ).sorted( )
+                .collect( Collectors.toList( ) );
     }
 
     protected abstract List<TestIdentity> runDefinition(TestDefinition testDefinition ) throws Exception;
 
-    protected void clearData( ) throws Exception
+    protected BulkIdentitySeeder getBulkSeeder( )
     {
-        /* Clean BDD tables */
-        System.out.println( "----- Truncate BDD tables -----" );
-        final DataSource ds = getDataSource( );
-        try ( final Connection connection = ds.getConnection() ) {
-            final String sql = "truncate table identitystore_identity, identitystore_identity_history, identitystore_identity_attribute, identitystore_identity_attribute_certificate, identitystore_identity_attribute_history, identitystore_index_action;";
-            System.out.println("[Request]\n" + sql + "\n");
-            connection.prepareStatement(sql).executeUpdate( );
-        }
-
-        /* Clean ES index */
-        System.out.println( "----- Delete ES Index -----" );
-        final IdentityIndexer identityIndexer = new IdentityIndexer( PROTOCOL + elasticsearchContainer.getHttpHostAddress( ) );
-        final String indexBehindAlias = identityIndexer.getIndexBehindAlias( CURRENT_INDEX_ALIAS );
-        identityIndexer.deleteIndex( indexBehindAlias );
-        identityIndexer.initIndex( CURRENT_INDEX );
-        identityIndexer.addAliasOnIndex( CURRENT_INDEX, CURRENT_INDEX_ALIAS );
+        if ( bulkSeeder == null )
+        {
+            bulkSeeder = new BulkIdentitySeeder( getDataSource( ), IdentityStoreTestContext.SAMPLE_APPCODE );
+        }
+        return bulkSeeder;
     }
 
-    protected TestIdentity toTestIdentity( final IdentityDto identityDto )
+    /**
+     * Waits until the seeded identities are searchable in Elasticsearch.
+     *
+     * @param customerIds
+     *            the customer ids of the identities created for the current definition
+     * @return the time spent waiting, in milliseconds
+     */
+    protected long awaitIndexing( final List<String> customerIds ) throws Exception
     {
-        final TestIdentity testIdentity = new TestIdentity( );
-        testIdentity.setConnectionId( identityDto.getConnectionId( ) );
-        testIdentity.setCustomerId( identityDto.getCustomerId( ) );
-        identityDto.getAttributes( ).forEach( certifiedAttribute -> {
-            TestAttribute testAttribute = new TestAttribute( );
-            testIdentity.getAttributes( ).add( testAttribute );
-            testAttribute.setCertificationDate( certifiedAttribute.getCertificationDate( ) );
-            testAttribute.setCertifier( certifiedAttribute.getCertifier( ) );
-            testAttribute.setType( certifiedAttribute.getType( ) );
-            testAttribute.setKey( certifiedAttribute.getKey( ) );
-            testAttribute.setValue( certifiedAttribute.getValue( ) );
-            testAttribute.setCertificationLevel( certifiedAttribute.getCertificationLevel( ) );
-
-        } );
-        return testIdentity;
+        System.out.println( "----- Wait for indexing -----" );
+        return new IndexVisibilityBarrier( environment.getElasticsearchClient( ), getDataSource( ), CURRENT_INDEX_ALIAS ).await( customerIds );
     }
 
-    protected IdentityDto toIdentityDto( final TestIdentity testIdentity ) {
-        final IdentityDto identity = new IdentityDto( );
-        identity.setConnectionId( testIdentity.getConnectionId( ) );
-        identity.setCustomerId( testIdentity.getCustomerId( ) );
-        testIdentity.getAttributes( ).forEach( testAttribute -> {
-            final AttributeDto certifiedAttribute = new AttributeDto( );
-            identity.getAttributes( ).add( certifiedAttribute );
-            certifiedAttribute.setValue( testAttribute.getValue( ) );
-            certifiedAttribute.setKey( testAttribute.getKey( ) );
-            certifiedAttribute.setCertificationDate( testAttribute.getCertificationDate( ) );
-            certifiedAttribute.setCertifier( testAttribute.getCertifier( ) );
-        } );
-        return identity;
+    protected void clearData( ) throws Exception
+    {
+        if ( dataReset != null )
+        {
+            System.out.println( "----- Restore baseline -----" );
+            dataReset.restore( );
+            return;
+        }
+
+        environment.resetData( );
     }
 
-    protected IdentityChangeRequest toIdentityChangeRequest(final TestIdentity testIdentity )
+    protected TestIdentity toTestIdentity( final IdentityDto identityDto )
     {
-        final IdentityChangeRequest identityChangeRequest = new IdentityChangeRequest( );
-        identityChangeRequest.setIdentity( this.toIdentityDto(testIdentity) );
-        return identityChangeRequest;
+        return TestDtoConverter.toTestIdentity( identityDto );
     }
 
-    protected DuplicateRule toDuplicateRule(final TestDuplicateRule testDuplicateRule ) {
-        final DuplicateRule duplicateRule = new DuplicateRule();
-        duplicateRule.setName( testDuplicateRule.getName( ) );
-        duplicateRule.setCode( testDuplicateRule.getCode() );
-        duplicateRule.setDescription( testDuplicateRule.getName() );
-        duplicateRule.setDaemon( testDuplicateRule.isDaemon() );
-        duplicateRule.setActive( testDuplicateRule.isActive() );
-        duplicateRule.setDetectionLimit( -1 );
-        duplicateRule.setNbEqualAttributes( testDuplicateRule.getNbEqualAttributes( ) );
-        duplicateRule.setNbFilledAttributes( testDuplicateRule.getNbFilledAttributes( ) );
-        duplicateRule.setNbMissingAttributes( testDuplicateRule.getNbMissingAttributes( ) );
-        duplicateRule.setCheckedAttributes(testDuplicateRule.getCheckedAttributes().stream().map(key -> {
-            try {
-                return IdentityAttributeService.instance().getAttributeKey(key);
-            } catch (IdentityAttributeNotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList()));
-        duplicateRule.setAttributeTreatments(testDuplicateRule.getAttributeTreatments().stream().map(treatment -> {
-            final DuplicateRuleAttributeTreatment attributeTreatment = new DuplicateRuleAttributeTreatment( );
-            attributeTreatment.setAttributes(treatment.getAttributeKeys().stream().map(key -> {
-                try {
-                    return IdentityAttributeService.instance().getAttributeKey(key);
-                } catch (IdentityAttributeNotFoundException e) {
-                    throw new RuntimeException(e);
-                }
-            }).collect(Collectors.toList()));
-            attributeTreatment.setType(AttributeTreatmentType.valueOf(treatment.getType()));
-            return attributeTreatment;
+    protected IdentityDto toIdentityDto( final TestIdentity testIdentity )
+    {
+        return TestDtoConverter.toIdentityDto( testIdentity );
+    }
 
-        }).collect(Collectors.toList()));
+    protected IdentityChangeRequest toIdentityChangeRequest( final TestIdentity testIdentity )
+    {
+        return TestDtoConverter.toIdentityChangeRequest( testIdentity );
+    }
 
-        return duplicateRule;
+    protected DuplicateRule toDuplicateRule( final TestDuplicateRule testDuplicateRule )
+    {
+        return TestDtoConverter.toDuplicateRule( testDuplicateRule );
     }
 
-    protected IdentitySearchRequest toIdentitySearchRequest(final TestIdentity testIdentity, final boolean withSearchType )
+    protected IdentitySearchRequest toIdentitySearchRequest( final TestIdentity testIdentity, final boolean withSearchType )
     {
-        final IdentitySearchRequest identitySearchRequest = new IdentitySearchRequest( );
-        final SearchDto search = new SearchDto( );
-        search.setAttributes( new ArrayList<>( ) );
-        identitySearchRequest.setSearch( search );
-        testIdentity.getAttributes( ).forEach( testAttribute -> {
-            final SearchAttribute searchAttributeDto = new SearchAttribute( );
-            search.getAttributes( ).add( searchAttributeDto );
-            searchAttributeDto.setKey( testAttribute.getKey( ) );
-            searchAttributeDto.setValue( testAttribute.getValue( ) );
-            if( withSearchType && testAttribute.getSearchType() != null )
-            {
-                searchAttributeDto.setTreatmentType(testAttribute.getSearchType());
-            }
-            else
-            {
-                final boolean strict = !StringUtils.equalsAny( testAttribute.getKey( ), "first_name", "family_name", "preferred_username" );
-                searchAttributeDto.setTreatmentType( strict ? AttributeTreatmentType.STRICT : AttributeTreatmentType.APPROXIMATED );
-            }
-        } );
-        return identitySearchRequest;
+        return TestDtoConverter.toIdentitySearchRequest( testIdentity, withSearchType );
     }
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads JSON test definitions over a bounded pool of forked worker JVMs.<br/>
+ * Lutece services are JVM wide singletons bound to one connection pool and one Elasticsearch alias, so each worker runs in its own JVM with its own
+ * containers (its own Postgres database and index/alias pair) and its own copy of the test resources. Each worker writes its results to a JSON file
+ * that is merged back by the coordinator.
+ */
+public class ParallelDefinitionRunner
+{
+    public static final String PROPERTY_WORKERS = "workers";
+    public static final String PROPERTY_WORKER_ID = "worker.id";
+    public static final String PROPERTY_WORKER_BASE_PATH = "worker.basePath";
+    public static final String PROPERTY_WORKER_RESULTS = "worker.results";
+    public static final String PROPERTY_INPUTS = "inputs";
+    private static final String JUNIT_RUNNER = "junit.textui.TestRunner";
+    private static final String KEY_SUCCESS = "success";
+    private static final String KEY_MESSAGE = "message";
+    private static final String KEY_TEST_DEFINITION = "testDefinition";
+    private static final String KEY_NAME = "name";
+    private static final List<String> NOT_FORWARDED_PREFIXES = Arrays.asList( "java.", "javax.", "jdk.", "sun.", "os.", "user.", "file.", "path.", "line.",
+            "awt.", "surefire.", "maven.", "jna.", "native.", "stdout.", "stderr.", "worker." );
+    private static final List<String> NOT_FORWARDED_NAMES = Arrays.asList( "basedir", "localRepository", "incremental", "force", PROPERTY_WORKERS,
+            PROPERTY_INPUTS );
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+
+    private final Class<?> _testClass;
+    private final Path _resourcesPath;
+    private final Path _workDir = Paths.get( "target", "workers" ).toAbsolutePath( );
+
+    /**
+     * Constructor
+     *
+     * @param testClass
+     *            the test class run by each worker
+     * @param resourcesPath
+     *            the test resources directory copied for each worker
+     */
+    public ParallelDefinitionRunner( final Class<?> testClass, final String resourcesPath )
+    {
+        _testClass = testClass;
+        _resourcesPath = Paths.get( resourcesPath );
+    }
+
+    /**
+     * Runs the given definitions on at most <code>nbWorkers</code> workers and merges their results.
+     *
+     * @param definitions
+     *            the sorted definition files
+     * @param nbWorkers
+     *            the maximum number of concurrent workers
+     * @return the results of all the definitions, keyed by definition name
+     */
+    public Map<String, Pair<Boolean, String>> run( final List<File> definitions, final int nbWorkers ) throws Exception
+    {
+        // Round-robin distribution keeps the shards balanced when definitions are sorted by size or number
+        final int nbShards = Math.max( 1, Math.min( nbWorkers, definitions.size( ) ) );
+        final List<List<File>> shards = new ArrayList<>( );
+        for ( int i = 0; i < nbShards; i++ )
+        {
+            shards.add( new ArrayList<>( ) );
+        }
+        for ( int i = 0; i < definitions.size( ); i++ )
+        {
+            shards.get( i % nbShards ).add( definitions.get( i ) );
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool( nbShards );
+        try
+        {
+            final List<Future<Map<String, Pair<Boolean, String>>>> futures = new ArrayList<>( );
+            for ( int i = 0; i < nbShards; i++ )
+            {
+                final int workerId = i;
+                futures.add( pool.submit( ( ) -> this.runWorker( workerId, shards.get( workerId ) ) ) );
+            }
+            final Map<String, Pair<Boolean, String>> results = new HashMap<>( );
+            for ( final Future<Map<String, Pair<Boolean, String>>> future : futures )
+            {
+                results.putAll( future.get( ) );
+            }
+            return results;
+        }
+        finally
+        {
+            pool.shutdownNow( );
+        }
+    }
+
+    private Map<String, Pair<Boolean, String>> runWorker( final int workerId, final List<File> shard ) throws Exception
+    {
+        final Path workerDir = _workDir.resolve( "worker-" + workerId );
+        final Path workerResources = workerDir.resolve( "resources" );
+        final Path resultsFile = workerDir.resolve( "results.json" );
+        final File logFile = workerDir.resolve( "worker.log" ).toFile( );
+        deleteDirectory( workerDir );
+        copyDirectory( _resourcesPath, workerResources );
+
+        final List<String> command = new ArrayList<>( );
+        command.add( Paths.get( System.getProperty( "java.home" ), "bin", "java" ).toString( ) );
+        command.add( "-cp" );
+        command.add( System.getProperty( "surefire.test.class.path", System.getProperty( "java.class.path" ) ) );
+        command.addAll( getForwardedProperties( ) );
+        command.add( "-D" + PROPERTY_WORKER_ID + "=" + workerId );
+        command.add( "-D" + PROPERTY_WORKER_BASE_PATH + "=" + workerResources );
+        command.add( "-D" + PROPERTY_WORKER_RESULTS + "=" + resultsFile );
+        command.add( "-D" + PROPERTY_INPUTS + "=" + shard.stream( ).map( File::getName ).collect( Collectors.joining( "," ) ) );
+        command.add( JUNIT_RUNNER );
+        command.add( _testClass.getName( ) );
+
+        System.out.println( "[Worker " + workerId + "] " + shard.size( ) + " definition(s), log: " + logFile );
+        final Process process = new ProcessBuilder( command ).redirectErrorStream( true ).redirectOutput( logFile ).start( );
+        final int exitCode = process.waitFor( );
+        System.out.println( "[Worker " + workerId + "] exited with code " + exitCode );
+
+        if ( Files.exists( resultsFile ) )
+        {
+            return readResults( resultsFile );
+        }
+        // Keyed by definition name, as the results of the workers that reported
+        final Map<String, Pair<Boolean, String>> crashed = new HashMap<>( );
+        for ( final File file : shard )
+        {
+            crashed.put( readDefinitionName( file ), new ImmutablePair<>( false,
+                    "Worker " + workerId + " stopped before reporting its results (exit code " + exitCode + "), see " + logFile ) );
+        }
+        return crashed;
+    }
+
+    /**
+     * Reads the name of a definition without loading its inputs, which can be large.
+     *
+     * @return the name of the definition, or its file name if it cannot be read
+     */
+    private static String readDefinitionName( final File file )
+    {
+        try ( final JsonParser parser = MAPPER.getFactory( ).createParser( file ) )
+        {
+            if ( parser.nextToken( ) != JsonToken.START_OBJECT )
+            {
+                return file.getName( );
+            }
+            while ( parser.nextToken( ) == JsonToken.FIELD_NAME )
+            {
+                final boolean bDefinition = KEY_TEST_DEFINITION.equals( parser.getCurrentName( ) );
+                if ( parser.nextToken( ) == JsonToken.START_OBJECT && bDefinition )
+                {
+                    while ( parser.nextToken( ) == JsonToken.FIELD_NAME )
+                    {
+                        final boolean bName = KEY_NAME.equals( parser.getCurrentName( ) );
+                        if ( parser.nextToken( ) == JsonToken.VALUE_STRING && bName )
+                        {
+                            return parser.getText( );
+                        }
+                        parser.skipChildren( );
+                    }
+                    return file.getName( );
+                }
+                parser.skipChildren( );
+            }
+        }
+        catch( IOException e )
+        {
+            System.out.println( "Cannot read the name of " + file + " : " + e.getMessage( ) );
+        }
+        return file.getName( );
+    }
+
+    /**
+     * @return the <code>-D</code> options passing the test settings of this JVM to a forked one
+     */
+    public static List<String> getForwardedProperties( )
+    {
+        return System.getProperties( ).stringPropertyNames( ).stream( )
+                .filter( name -> !NOT_FORWARDED_NAMES.contains( name ) && NOT_FORWARDED_PREFIXES.stream( ).noneMatch( name::startsWith ) )
+                .map( name -> "-D" + name + "=" + System.getProperty( name ) ).collect( Collectors.toList( ) );
+    }
+
+    /**
+     * Writes the results of a worker so that the coordinator can merge them.
+     *
+     * @param results
+     *            the worker results
+     * @param path
+     *            the destination file
+     */
+    public static void writeResults( final Map<String, Pair<Boolean, String>> results, final String path ) throws IOException
+    {
+        final ObjectNode root = MAPPER.createObjectNode( );
+        results.forEach( ( name, result ) -> root.putObject( name ).put( KEY_SUCCESS, result.getLeft( ) ).put( KEY_MESSAGE, result.getRight( ) ) );
+        MAPPER.writeValue( new File( path ), root );
+    }
+
+    private static Map<String, Pair<Boolean, String>> readResults( final Path path ) throws IOException
+    {
+        final Map<String, Pair<Boolean, String>> results = new HashMap<>( );
+        final Iterator<Map.Entry<String, JsonNode>> fields = MAPPER.readTree( path.toFile( ) ).fields( );
+        while ( fields.hasNext( ) )
+        {
+            final Map.Entry<String, JsonNode> field = fields.next( );
+            results.put( field.getKey( ), new ImmutablePair<>( field.getValue( ).path( KEY_SUCCESS ).asBoolean( ), field.getValue( ).path( KEY_MESSAGE ).asText( ) ) );
+        }
+        return results;
+    }
+
+    private static void copyDirectory( final Path source, final Path target ) throws IOException
+    {
+        Files.walkFileTree( source, new SimpleFileVisitor<Path>( )
+        {
+            @Override
+            public FileVisitResult preVisitDirectory( final Path dir, final BasicFileAttributes attrs ) throws IOException
+            {
+                Files.createDirectories( target.resolve( source.relativize( dir ).toString( ) ) );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile( final Path file, final BasicFileAttributes attrs ) throws IOException
+            {
+                // The copies keep the modification time of the definitions, which the compiled definitions check before hashing
+                Files.copy( file, target.resolve( source.relativize( file ).toString( ) ), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.COPY_ATTRIBUTES );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+
+    private static void deleteDirectory( final Path directory ) throws IOException
+    {
+        if ( !Files.exists( directory ) )
+        {
+            return;
+        }
+        Files.walkFileTree( directory, new SimpleFileVisitor<Path>( )
+        {
+            @Override
+            public FileVisitResult visitFile( final Path file, final BasicFileAttributes attrs ) throws IOException
+            {
+                Files.delete( file );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory( final Path dir, final IOException exc ) throws IOException
+            {
+                Files.delete( dir );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.ElasticsearchTestClient;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores the test data to a captured baseline instead of truncating tables and recreating the index.<br/>
+ * The database is cloned with <code>CREATE DATABASE ... TEMPLATE</code> and the indices behind the alias are saved in a snapshot of a local filesystem
+ * repository. Both operations copy files rather than replay rows or documents, so the reset cost does not depend on the size of the baseline.
+ */
+public class SnapshotDataReset
+{
+    public static final String SNAPSHOT_REPOSITORY = "identitystore-test";
+    public static final String SNAPSHOT_LOCATION = "/tmp/identitystore-snapshots";
+    private static final String BASELINE_SUFFIX = "_baseline";
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final String _strDatabase;
+    private final String _strAlias;
+    private final ElasticsearchTestClient _client;
+    private final HikariDataSource _dataSource;
+    private Set<String> _indices;
+
+    /**
+     * Constructor
+     *
+     * @param strDatabase
+     *            the database used by the test
+     * @param strAlias
+     *            the alias searched by the identitystore
+     * @param client
+     *            the Elasticsearch client
+     * @param dataSource
+     *            the test datasource, whose connections are evicted after each restore
+     */
+    public SnapshotDataReset( final String strDatabase, final String strAlias, final ElasticsearchTestClient client, final HikariDataSource dataSource )
+    {
+        _strDatabase = strDatabase;
+        _strAlias = strAlias;
+        _client = client;
+        _dataSource = dataSource;
+    }
+
+    /**
+     * Saves the current database and indices as the baseline.
+     */
+    public void capture( ) throws Exception
+    {
+        final long start = System.nanoTime( );
+        this.cloneDatabase( _strDatabase, this.getBaselineDatabase( ) );
+
+        _client.put( "/_snapshot/" + SNAPSHOT_REPOSITORY, "{\"type\":\"fs\",\"settings\":{\"location\":\"" + SNAPSHOT_LOCATION + "\"}}" );
+        this.deleteSnapshot( );
+        _indices = _client.getIndicesBehindAlias( _strAlias );
+        _client.put( "/_snapshot/" + SNAPSHOT_REPOSITORY + "/" + this.getSnapshotName( ) + "?wait_for_completion=true",
+                "{\"indices\":\"" + String.join( ",", _indices ) + "\",\"include_global_state\":false}" );
+        System.out.println( "[Baseline captured in " + TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - start ) + " ms]" );
+    }
+
+    /**
+     * Restores the database and indices saved by {@link #capture()}.
+     */
+    public void restore( ) throws Exception
+    {
+        final long start = System.nanoTime( );
+        this.cloneDatabase( this.getBaselineDatabase( ), _strDatabase );
+        if ( _dataSource != null )
+        {
+            _dataSource.getHikariPoolMXBean( ).softEvictConnections( );
+        }
+
+        for ( final String index : _client.getIndicesBehindAlias( _strAlias ) )
+        {
+            _client.deleteIndexIfExists( index );
+        }
+        for ( final String index : _indices )
+        {
+            _client.deleteIndexIfExists( index );
+        }
+        _client.post( "/_snapshot/" + SNAPSHOT_REPOSITORY + "/" + this.getSnapshotName( ) + "/_restore?wait_for_completion=true",
+                "{\"indices\":\"" + String.join( ",", _indices ) + "\",\"include_aliases\":true,\"include_global_state\":false}" );
+
+        final long elapsed = System.nanoTime( ) - start;
+        IdentityStoreContainerRegistry.recordReset( elapsed );
+        System.out.println( "[Baseline restored in " + TimeUnit.NANOSECONDS.toMillis( elapsed ) + " ms]" );
+    }
+
+    /**
+     * Drops the baseline database and snapshot.
+     */
+    public void release( ) throws Exception
+    {
+        IdentityStoreContainerRegistry.dropDatabase( this.getBaselineDatabase( ) );
+        this.deleteSnapshot( );
+    }
+
+    /**
+     * Replaces the target database by a copy of the source one. A database can only be used as a template when no session is opened on it, so the
+     * connections of the Lutece and test pools are terminated first (both pools validate their connections before use).
+     */
+    private void cloneDatabase( final String strSource, final String strTarget ) throws SQLException, InterruptedException
+    {
+        try ( final Connection connection = IdentityStoreContainerRegistry.getAdminConnection( ); final Statement statement = connection.createStatement( ) )
+        {
+            for ( int attempt = 1;; attempt++ )
+            {
+                IdentityStoreContainerRegistry.terminateConnections( connection, strSource );
+                IdentityStoreContainerRegistry.terminateConnections( connection, strTarget );
+                try
+                {
+                    statement.execute( "DROP DATABASE IF EXISTS " + strTarget );
+                    statement.execute( "CREATE DATABASE " + strTarget + " TEMPLATE " + strSource );
+                    return;
+                }
+                catch( SQLException e )
+                {
+                    // A pooled connection may have been reopened in between
+                    if ( attempt == MAX_ATTEMPTS )
+                    {
+                        throw e;
+                    }
+                    Thread.sleep( 100L * attempt );
+                }
+            }
+        }
+    }
+
+    private void deleteSnapshot( )
+    {
+        try
+        {
+            _client.delete( "/_snapshot/" + SNAPSHOT_REPOSITORY + "/" + this.getSnapshotName( ) );
+        }
+        catch( IOException e )
+        {
+            // no snapshot yet
+        }
+    }
+
+    private String getBaselineDatabase( )
+    {
+        return _strDatabase + BASELINE_SUFFIX;
+    }
+
+    private String getSnapshotName( )
+    {
+        return _strDatabase.toLowerCase( ) + BASELINE_SUFFIX;
+    }
+}
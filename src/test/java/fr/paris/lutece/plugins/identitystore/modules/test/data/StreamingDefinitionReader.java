@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.data;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads a test definition with the Jackson token API, so that its <code>inputs</code> never need to be held in memory at once.<br/>
+ * The definition header (name, description, search request, expected identities and duplicate rule) is read without its inputs, which are then
+ * streamed by chunks of bounded size. The inputs needed to compare the results are resolved by a last pass on the file.
+ */
+public class StreamingDefinitionReader
+{
+    private static final String FIELD_TEST_DEFINITION = "testDefinition";
+    private static final String FIELD_NAME = "name";
+    private static final String FIELD_DESCRIPTION = "description";
+    private static final String FIELD_SEARCH_REQUEST = "searchRequest";
+    private static final String FIELD_INPUTS = "inputs";
+    private static final String FIELD_EXPECTED = "expected";
+    private static final String FIELD_DUPLICATE_RULE = "duplicateRule";
+
+    private final ObjectMapper _mapper;
+    private final int _nChunkSize;
+
+    /**
+     * Consumes a chunk of inputs.
+     */
+    public interface ChunkConsumer
+    {
+        void accept( List<TestIdentity> chunk ) throws Exception;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param mapper
+     *            the mapper used to bind the definition fields
+     * @param nChunkSize
+     *            the maximum number of inputs handed at once
+     */
+    public StreamingDefinitionReader( final ObjectMapper mapper, final int nChunkSize )
+    {
+        _mapper = mapper;
+        _nChunkSize = nChunkSize;
+    }
+
+    /**
+     * Reads the definition without its inputs.
+     *
+     * @return the definition, <code>null</code> if the file has no <code>testDefinition</code>
+     */
+    public TestDefinition readDefinition( final File file ) throws Exception
+    {
+        return this.stream( file, JsonParser::skipChildren );
+    }
+
+    /**
+     * Hands the inputs of the definition to the consumer, in document order and by chunks of at most the configured size.
+     */
+    public void forEachChunk( final File file, final ChunkConsumer consumer ) throws Exception
+    {
+        final List<TestIdentity> chunk = new ArrayList<>( _nChunkSize );
+        this.stream( file, parser -> {
+            while ( parser.nextToken( ) == JsonToken.START_OBJECT )
+            {
+                chunk.add( _mapper.readValue( parser, TestIdentity.class ) );
+                if ( chunk.size( ) >= _nChunkSize )
+                {
+                    consumer.accept( chunk );
+                    chunk.clear( );
+                }
+            }
+        } );
+        if ( !chunk.isEmpty( ) )
+        {
+            consumer.accept( chunk );
+        }
+    }
+
+    /**
+     * Reads again the inputs of the definition and keeps, in document order, the first input of each given name and the first input of each given
+     * fingerprint : this is what the comparison of the results looks up.
+     *
+     * @param names
+     *            the names of the expected identities
+     * @param fingerprints
+     *            the fingerprints of the returned identities
+     * @return the matching inputs
+     */
+    public List<TestIdentity> resolveInputs( final File file, final Set<String> names, final Set<String> fingerprints ) throws Exception
+    {
+        final List<TestIdentity> inputs = new ArrayList<>( );
+        final Set<String> foundNames = new HashSet<>( );
+        final Set<String> foundFingerprints = new HashSet<>( );
+        this.stream( file, parser -> {
+            while ( parser.nextToken( ) == JsonToken.START_OBJECT )
+            {
+                final TestIdentity input = _mapper.readValue( parser, TestIdentity.class );
+                final boolean bFirstOfName = names.contains( input.getName( ) ) && foundNames.add( input.getName( ) );
+                final String fingerprint = fingerprints.isEmpty( ) ? null : input.fingerprint( );
+                final boolean bFirstOfFingerprint = fingerprint != null && fingerprints.contains( fingerprint ) && foundFingerprints.add( fingerprint );
+                if ( bFirstOfName || bFirstOfFingerprint )
+                {
+                    inputs.add( input );
+                }
+            }
+        } );
+        return inputs;
+    }
+
+    /**
+     * Parses the definition fields and calls the handler on the inputs array, the parser being on its START_ARRAY token.
+     *
+     * @return the definition without its inputs, <code>null</code> if the file has no <code>testDefinition</code>
+     */
+    private TestDefinition stream( final File file, final InputsHandler handler ) throws Exception
+    {
+        TestDefinition definition = null;
+        try ( final JsonParser parser = _mapper.getFactory( ).createParser( file ) )
+        {
+            expect( parser, parser.nextToken( ), JsonToken.START_OBJECT, file );
+            while ( parser.nextToken( ) == JsonToken.FIELD_NAME )
+            {
+                final String field = parser.getCurrentName( );
+                final JsonToken token = parser.nextToken( );
+                if ( FIELD_TEST_DEFINITION.equals( field ) && token == JsonToken.START_OBJECT )
+                {
+                    definition = this.streamDefinition( parser, handler );
+                }
+                else
+                {
+                    parser.skipChildren( );
+                }
+            }
+        }
+        return definition;
+    }
+
+    private TestDefinition streamDefinition( final JsonParser parser, final InputsHandler handler ) throws Exception
+    {
+        final TestDefinition header = new TestDefinition( );
+        while ( parser.nextToken( ) == JsonToken.FIELD_NAME )
+        {
+            final String field = parser.getCurrentName( );
+            final JsonToken token = parser.nextToken( );
+            if ( token == JsonToken.VALUE_NULL )
+            {
+                continue;
+            }
+            switch( field )
+            {
+                case FIELD_NAME:
+                    header.setName( parser.getValueAsString( ) );
+                    break;
+                case FIELD_DESCRIPTION:
+                    header.setDescription( parser.getValueAsString( ) );
+                    break;
+                case FIELD_SEARCH_REQUEST:
+                    header.setSearchRequest( _mapper.readValue( parser, TestIdentity.class ) );
+                    break;
+                case FIELD_EXPECTED:
+                    header.setExpected( _mapper.readValue( parser, new TypeReference<List<String>>( )
+                    {
+                    } ) );
+                    break;
+                case FIELD_DUPLICATE_RULE:
+                    header.setDuplicateRule( _mapper.readValue( parser, TestDuplicateRule.class ) );
+                    break;
+                case FIELD_INPUTS:
+                    if ( token == JsonToken.START_ARRAY )
+                    {
+                        handler.handle( parser );
+                    }
+                    else
+                    {
+                        parser.skipChildren( );
+                    }
+                    break;
+                default:
+                    parser.skipChildren( );
+            }
+        }
+        return header;
+    }
+
+    private static void expect( final JsonParser parser, final JsonToken token, final JsonToken expected, final File file ) throws IOException
+    {
+        if ( token != expected )
+        {
+            throw new IOException( "ERROR " + file.getName( ) + " : expected " + expected + " but found " + token + " at "
+                    + parser.getCurrentLocation( ) );
+        }
+    }
+
+    private interface InputsHandler
+    {
+        void handle( JsonParser parser ) throws Exception;
+    }
+}
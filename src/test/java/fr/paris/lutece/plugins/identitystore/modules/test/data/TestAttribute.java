@@ -42,6 +42,9 @@ import java.util.Objects;
 @JsonInclude( JsonInclude.Include.NON_NULL )
 public class TestAttribute
 {
+    private static final char FIELD_SEPARATOR = '\u001F';
+    private static final char NULL_FIELD = '\u0000';
+
     /**
      * Clef de l'attribut en base
      */
@@ -164,6 +167,24 @@ public class TestAttribute
         return Objects.hash( this.key, this.value, this.type, this.certificationLevel, this.certifier, this.certificationDate );
     }
 
+    /**
+     * Appends the fields compared by {@link #equals(Object)} to the fingerprint of an identity.
+     */
+    void appendFingerprint( final StringBuilder fingerprint )
+    {
+        appendField( fingerprint, this.key );
+        appendField( fingerprint, this.value );
+        appendField( fingerprint, this.type );
+        appendField( fingerprint, String.valueOf( this.toInt( this.certificationLevel ) ) );
+        appendField( fingerprint, this.certifier );
+        appendField( fingerprint, this.certificationDate == null ? null : String.valueOf( this.certificationDate.getTime( ) ) );
+    }
+
+    private static void appendField( final StringBuilder fingerprint, final String field )
+    {
+        fingerprint.append( field == null ? NULL_FIELD : field ).append( FIELD_SEPARATOR );
+    }
+
     private int toInt( final Integer integer )
     {
         return integer == null ? 0 : integer;
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.data;
+
+import fr.paris.lutece.plugins.identitystore.business.rules.duplicate.DuplicateRule;
+import fr.paris.lutece.plugins.identitystore.business.rules.duplicate.DuplicateRuleAttributeTreatment;
+import fr.paris.lutece.plugins.identitystore.service.attribute.IdentityAttributeService;
+import fr.paris.lutece.plugins.identitystore.service.identity.IdentityAttributeNotFoundException;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.AttributeDto;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.AttributeTreatmentType;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.IdentityDto;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.crud.IdentityChangeRequest;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.IdentitySearchRequest;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.SearchAttribute;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.SearchDto;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Conversions between the JSON test data and the DTOs of the identitystore services, shared by the test cases and the benchmarks.
+ */
+public final class TestDtoConverter
+{
+    private TestDtoConverter( )
+    {
+    }
+
+    public static TestIdentity toTestIdentity( final IdentityDto identityDto )
+    {
+        final TestIdentity testIdentity = new TestIdentity( );
+        testIdentity.setConnectionId( identityDto.getConnectionId( ) );
+        testIdentity.setCustomerId( identityDto.getCustomerId( ) );
+        identityDto.getAttributes( ).forEach( certifiedAttribute -> {
+            TestAttribute testAttribute = new TestAttribute( );
+            testIdentity.getAttributes( ).add( testAttribute );
+            testAttribute.setCertificationDate( certifiedAttribute.getCertificationDate( ) );
+            testAttribute.setCertifier( certifiedAttribute.getCertifier( ) );
+            testAttribute.setType( certifiedAttribute.getType( ) );
+            testAttribute.setKey( certifiedAttribute.getKey( ) );
+            testAttribute.setValue( certifiedAttribute.getValue( ) );
+            testAttribute.setCertificationLevel( certifiedAttribute.getCertificationLevel( ) );
+
+        } );
+        return testIdentity;
+    }
+
+    public static IdentityDto toIdentityDto( final TestIdentity testIdentity ) {
+        final IdentityDto identity = new IdentityDto( );
+        identity.setConnectionId( testIdentity.getConnectionId( ) );
+        identity.setCustomerId( testIdentity.getCustomerId( ) );
+        testIdentity.getAttributes( ).forEach( testAttribute -> {
+            final AttributeDto certifiedAttribute = new AttributeDto( );
+            identity.getAttributes( ).add( certifiedAttribute );
+            certifiedAttribute.setValue( testAttribute.getValue( ) );
+            certifiedAttribute.setKey( testAttribute.getKey( ) );
+            certifiedAttribute.setCertificationDate( testAttribute.getCertificationDate( ) );
+            certifiedAttribute.setCertifier( testAttribute.getCertifier( ) );
+        } );
+        return identity;
+    }
+
+    public static IdentityChangeRequest toIdentityChangeRequest(final TestIdentity testIdentity )
+    {
+        final IdentityChangeRequest identityChangeRequest = new IdentityChangeRequest( );
+        identityChangeRequest.setIdentity( toIdentityDto(testIdentity) );
+        return identityChangeRequest;
+    }
+
+    public static DuplicateRule toDuplicateRule(final TestDuplicateRule testDuplicateRule ) {
+        final DuplicateRule duplicateRule = new DuplicateRule();
+        duplicateRule.setName( testDuplicateRule.getName( ) );
+        duplicateRule.setCode( testDuplicateRule.getCode() );
+        duplicateRule.setDescription( testDuplicateRule.getName() );
+        duplicateRule.setDaemon( testDuplicateRule.isDaemon() );
+        duplicateRule.setActive( testDuplicateRule.isActive() );
+        duplicateRule.setDetectionLimit( -1 );
+        duplicateRule.setNbEqualAttributes( testDuplicateRule.getNbEqualAttributes( ) );
+        duplicateRule.setNbFilledAttributes( testDuplicateRule.getNbFilledAttributes( ) );
+        duplicateRule.setNbMissingAttributes( testDuplicateRule.getNbMissingAttributes( ) );
+        duplicateRule.setCheckedAttributes(testDuplicateRule.getCheckedAttributes().stream().map(key -> {
+            try {
+                return IdentityAttributeService.instance().getAttributeKey(key);
+            } catch (IdentityAttributeNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }).collect(Collectors.toList()));
+        duplicateRule.setAttributeTreatments(testDuplicateRule.getAttributeTreatments().stream().map(treatment -> {
+            final DuplicateRuleAttributeTreatment attributeTreatment = new DuplicateRuleAttributeTreatment( );
+            attributeTreatment.setAttributes(treatment.getAttributeKeys().stream().map(key -> {
+                try {
+                    return IdentityAttributeService.instance().getAttributeKey(key);
+                } catch (IdentityAttributeNotFoundException e) {
+                    throw new RuntimeException(e);
+                }
+            }).collect(Collectors.toList()));
+            attributeTreatment.setType(AttributeTreatmentType.valueOf(treatment.getType()));
+            return attributeTreatment;
+
+        }).collect(Collectors.toList()));
+
+        return duplicateRule;
+    }
+
+    public static IdentitySearchRequest toIdentitySearchRequest(final TestIdentity testIdentity, final boolean withSearchType )
+    {
+        final IdentitySearchRequest identitySearchRequest = new IdentitySearchRequest( );
+        final SearchDto search = new SearchDto( );
+        search.setAttributes( new ArrayList<>( ) );
+        identitySearchRequest.setSearch( search );
+        testIdentity.getAttributes( ).forEach( testAttribute -> {
+            final SearchAttribute searchAttributeDto = new SearchAttribute( );
+            search.getAttributes( ).add( searchAttributeDto );
+            searchAttributeDto.setKey( testAttribute.getKey( ) );
+            searchAttributeDto.setValue( testAttribute.getValue( ) );
+            if( withSearchType && testAttribute.getSearchType() != null )
+            {
+                searchAttributeDto.setTreatmentType(testAttribute.getSearchType());
+            }
+            else
+            {
+                final boolean strict = !StringUtils.equalsAny( testAttribute.getKey( ), "first_name", "family_name", "preferred_username" );
+                searchAttributeDto.setTreatmentType( strict ? AttributeTreatmentType.STRICT : AttributeTreatmentType.APPROXIMATED );
+            }
+        } );
+        return identitySearchRequest;
+    }
+}
@@ -34,16 +34,19 @@
 package fr.paris.lutece.plugins.identitystore.modules.test.data;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
-import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 @JsonInclude( JsonInclude.Include.NON_NULL )
 public class TestIdentity
 {
+    private static final List<String> IGNORED_ATTRIBUTE_KEYS = Arrays.asList( "birthplace", "birthcountry" );
+    private static final String ATTRIBUTE_SEPARATOR = "\u001E";
+
     protected String name;
     /**
      * GUID
@@ -57,6 +60,16 @@ public class TestIdentity
 
     protected List<TestAttribute> attributes = new ArrayList<>( );
 
+    /**
+     * Forces the creation through the identity service when the definition is seeded in bulk
+     */
+    protected boolean underTest;
+
+    /**
+     * Fingerprint computed on first use, reset when the attributes are replaced
+     */
+    private String fingerprint;
+
     public String getName( )
     {
         return name;
@@ -95,6 +108,50 @@ public class TestIdentity
     public void setAttributes( List<TestAttribute> attributes )
     {
         this.attributes = attributes;
+        this.fingerprint = null;
+    }
+
+    public boolean isUnderTest( )
+    {
+        return underTest;
+    }
+
+    public void setUnderTest( boolean underTest )
+    {
+        this.underTest = underTest;
+    }
+
+    /**
+     * Builds the canonical fingerprint of the identity : its attributes, except birthplace and birthcountry, sorted so that the attribute order does
+     * not matter. Two identities are equal when their fingerprints are equal, which allows results to be matched with hash lookups.<br/>
+     * The fingerprint is computed once, since the comparison of a definition reads it several times per identity : the attributes are expected to be
+     * complete when it is first read, only {@link #setAttributes(List)} resets it.
+     *
+     * @return the fingerprint
+     */
+    public String fingerprint( )
+    {
+        if ( this.fingerprint == null )
+        {
+            this.fingerprint = this.computeFingerprint( );
+        }
+        return this.fingerprint;
+    }
+
+    private String computeFingerprint( )
+    {
+        final List<String> canonicalAttributes = new ArrayList<>( this.attributes.size( ) );
+        for ( final TestAttribute attribute : this.attributes )
+        {
+            if ( !IGNORED_ATTRIBUTE_KEYS.contains( attribute.getKey( ) ) )
+            {
+                final StringBuilder canonicalAttribute = new StringBuilder( );
+                attribute.appendFingerprint( canonicalAttribute );
+                canonicalAttributes.add( canonicalAttribute.toString( ) );
+            }
+        }
+        Collections.sort( canonicalAttributes );
+        return String.join( ATTRIBUTE_SEPARATOR, canonicalAttributes );
     }
 
     @Override
@@ -105,14 +162,12 @@ public class TestIdentity
         if ( o == null || getClass( ) != o.getClass( ) )
             return false;
         final TestIdentity that = (TestIdentity) o;
-        final List<TestAttribute> thisAttributesToCompare = this.attributes.stream().filter(attribute -> !StringUtils.equals(attribute.getKey(), "birthplace") && !StringUtils.equals(attribute.getKey(), "birthcountry")).collect(Collectors.toList());
-        final List<TestAttribute> thatAttributesToCompare = that.attributes.stream().filter(attribute -> !StringUtils.equals(attribute.getKey(), "birthplace") && !StringUtils.equals(attribute.getKey(), "birthcountry")).collect(Collectors.toList());
-        return Objects.equals(thisAttributesToCompare, thatAttributesToCompare );
+        return Objects.equals( this.fingerprint( ), that.fingerprint( ) );
     }
 
     @Override
     public int hashCode( )
     {
-        return Objects.hash( attributes );
+        return this.fingerprint( ).hashCode( );
     }
 }
@@ -62,7 +62,6 @@ public class IdentitySearcherTest extends IdentityStoreJsonDataTestCase
     protected List<TestIdentity> runDefinition(final TestDefinition testDefinition ) throws Exception
     {
         System.out.println( "----- Execute search request -----" );
-        Thread.sleep( 1000 );
         final IdentitySearchResponse identitySearchResponse = new IdentitySearchResponse( );
         try
         {
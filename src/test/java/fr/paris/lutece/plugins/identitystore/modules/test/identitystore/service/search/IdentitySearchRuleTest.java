@@ -64,7 +64,6 @@ public class IdentitySearchRuleTest extends IdentityStoreJsonDataTestCase
     protected List<TestIdentity> runDefinition(final TestDefinition testDefinition ) throws Exception
     {
         System.out.println( "----- Execute search request -----" );
-        Thread.sleep( 1000 );
         final IdentitySearchResponse identitySearchResponse = new IdentitySearchResponse( );
         try
         {
@@ -85,7 +84,7 @@ public class IdentitySearchRuleTest extends IdentityStoreJsonDataTestCase
         System.out.println( "----- Truncate search rules tables -----" );
         final DataSource ds = getDataSource( );
         try (final Connection connection = ds.getConnection()) {
-            final String sql = "truncate table identitystore_identity_search_rule_attribute, idstore.public.identitystore_identity_search_rule";
+            final String sql = "truncate table identitystore_identity_search_rule_attribute, identitystore_identity_search_rule";
             System.out.println("[Request]\n" + sql + "\n");
             connection.prepareStatement( sql ).execute( );
         }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.ParallelDefinitionRunner;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.RegressionGate;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.util.Statistics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a JMH benchmark from a test and prints a summary per parameter combination.<br/>
+ * The run is tuned by system properties : <code>perf.forks</code> (0 by default, the seeded corpus being kept by the {@link BenchmarkStack} of the
+ * JVM), <code>perf.warmup.iterations</code>, <code>perf.warmup.time</code>, <code>perf.iterations</code>, <code>perf.time</code> (in seconds),
+ * <code>perf.threads</code>, and <code>perf.param.&lt;name&gt;</code> to override the values of a benchmark parameter (comma separated). The JMH
+ * results are written as JSON to <code>perf.dir</code> (<code>target/perf</code> by default).
+ */
+public final class BenchmarkLauncher
+{
+    public static final String PROPERTY_PARAM_PREFIX = "perf.param.";
+    private static final String DEFAULT_RESULT_DIR = "target/perf";
+    private static final String GC_ALLOCATION_NORM = "gc.alloc.rate.norm";
+
+    private BenchmarkLauncher( )
+    {
+    }
+
+    /**
+     * Runs the benchmarks of the given class.
+     *
+     * @param benchmark
+     *            the JMH benchmark class
+     * @param params
+     *            the parameter values computed by the caller, overridden by the <code>perf.param.&lt;name&gt;</code> properties
+     * @return the JMH results
+     */
+    public static Collection<RunResult> run( final Class<?> benchmark, final Map<String, String [ ]> params ) throws Exception
+    {
+        return run( benchmark, params, Integer.getInteger( "perf.threads", 1 ), benchmark.getSimpleName( ) );
+    }
+
+    /**
+     * Runs the benchmarks of the given class with a number of threads chosen by the caller, e.g. to sweep the concurrency.
+     *
+     * @param benchmark
+     *            the JMH benchmark class
+     * @param params
+     *            the parameter values computed by the caller, overridden by the <code>perf.param.&lt;name&gt;</code> properties
+     * @param nThreads
+     *            the number of benchmark threads
+     * @param strResultName
+     *            the name of the JSON result file, without extension
+     * @return the JMH results
+     */
+    public static Collection<RunResult> run( final Class<?> benchmark, final Map<String, String [ ]> params, final int nThreads,
+            final String strResultName ) throws Exception
+    {
+        final Path resultFile = getResultDirectory( ).resolve( strResultName + ".json" );
+        Files.createDirectories( resultFile.getParent( ) );
+        final ChainedOptionsBuilder options = new OptionsBuilder( ).include( "^" + benchmark.getName( ).replace( ".", "\\." ) + "\\." )
+                .forks( Integer.getInteger( "perf.forks", 0 ) ).threads( nThreads )
+                .warmupIterations( Integer.getInteger( "perf.warmup.iterations", 2 ) )
+                .warmupTime( TimeValue.seconds( Integer.getInteger( "perf.warmup.time", 5 ) ) )
+                .measurementIterations( Integer.getInteger( "perf.iterations", 5 ) )
+                .measurementTime( TimeValue.seconds( Integer.getInteger( "perf.time", 10 ) ) )
+                .jvmArgsAppend( ParallelDefinitionRunner.getForwardedProperties( ).toArray( new String [ 0] ) )
+                .resultFormat( ResultFormatType.JSON ).result( resultFile.toString( ) ).shouldFailOnError( true );
+        final Map<String, String [ ]> effectiveParams = new LinkedHashMap<>( params );
+        System.getProperties( ).stringPropertyNames( ).stream( ).filter( name -> name.startsWith( PROPERTY_PARAM_PREFIX ) )
+                .forEach( name -> effectiveParams.put( name.substring( PROPERTY_PARAM_PREFIX.length( ) ), System.getProperty( name ).split( "," ) ) );
+        effectiveParams.forEach( options::param );
+
+        if ( Boolean.parseBoolean( System.getProperty( "perf.gc", String.valueOf( RegressionGate.isEnabled( ) ) ) ) )
+        {
+            options.addProfiler( GCProfiler.class );
+        }
+
+        final Collection<RunResult> results = new Runner( options.build( ) ).run( );
+        printSummary( results );
+        System.out.println( "JMH results written to " + resultFile );
+        if ( RegressionGate.isEnabled( ) )
+        {
+            checkBaseline( strResultName, results );
+        }
+        return results;
+    }
+
+    /**
+     * @return the definition directory of a data directory of the test resources
+     */
+    public static Path getDefinitionDirectory( final String strDataPath )
+    {
+        return Paths.get( "src", "test", "resources", strDataPath, "definition" ).toAbsolutePath( );
+    }
+
+    public static Path getResultDirectory( )
+    {
+        return Paths.get( System.getProperty( "perf.dir", DEFAULT_RESULT_DIR ) ).toAbsolutePath( );
+    }
+
+    /**
+     * Compares the throughput, p95 and allocation per operation of each parameter combination with the baseline of the benchmark.
+     */
+    private static void checkBaseline( final String strName, final Collection<RunResult> results ) throws Exception
+    {
+        final RegressionGate gate = new RegressionGate( strName );
+        for ( final RunResult runResult : results )
+        {
+            final String strKey = getCaseName( runResult );
+            final Result<?> primary = runResult.getPrimaryResult( );
+            if ( runResult.getParams( ).getMode( ) == Mode.Throughput )
+            {
+                gate.record( strKey, RegressionGate.METRIC_THROUGHPUT, primary.getScore( ) );
+            }
+            else
+                if ( runResult.getParams( ).getMode( ) == Mode.SampleTime && primary.getStatistics( ).getN( ) > 0 )
+                {
+                    gate.record( strKey, RegressionGate.METRIC_P95, primary.getStatistics( ).getPercentile( 95 ) );
+                }
+            runResult.getSecondaryResults( ).entrySet( ).stream( ).filter( entry -> entry.getKey( ).endsWith( GC_ALLOCATION_NORM ) ).findFirst( )
+                    .ifPresent( entry -> gate.record( strKey, RegressionGate.METRIC_ALLOCATION, entry.getValue( ).getScore( ) ) );
+        }
+        gate.check( );
+    }
+
+    private static String getCaseName( final RunResult runResult )
+    {
+        final String params = runResult.getParams( ).getParamsKeys( ).stream( )
+                .map( key -> key + "=" + runResult.getParams( ).getParam( key ) ).collect( Collectors.joining( ", " ) );
+        return runResult.getParams( ).getBenchmark( ).replaceAll( ".*\\.", "" ) + " [" + params + "]";
+    }
+
+    /**
+     * Prints the throughput, p50 and p99 of each parameter combination, for the benchmarks run in both throughput and sample time modes.
+     */
+    private static void printSummary( final Collection<RunResult> results )
+    {
+        System.out.println( );
+        System.out.println( String.format( "%-70s %-12s %14s %12s %12s", "Benchmark", "Unit", "Score", "p50", "p99" ) );
+        for ( final RunResult runResult : results )
+        {
+            final String name = getCaseName( runResult );
+            final Result<?> primary = runResult.getPrimaryResult( );
+            final Statistics statistics = primary.getStatistics( );
+            final boolean bSampled = runResult.getParams( ).getMode( ) == Mode.SampleTime && statistics.getN( ) > 0;
+            System.out.println( String.format( "%-70s %-12s %14.3f %12s %12s", name, primary.getScoreUnit( ), primary.getScore( ),
+                    bSampled ? format( statistics.getPercentile( 50 ), primary.getScoreUnit( ) ) : "",
+                    bSampled ? format( statistics.getPercentile( 99 ), primary.getScoreUnit( ) ) : "" ) );
+        }
+        System.out.println( );
+    }
+
+    private static String format( final double value, final String strUnit )
+    {
+        return String.format( "%.3f %s", value, strUnit.replace( "/op", "" ) );
+    }
+}
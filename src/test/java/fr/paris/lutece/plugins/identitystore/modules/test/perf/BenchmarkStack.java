@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.paris.lutece.plugins.identitystore.modules.test.IdentityStoreEnvironment;
+import fr.paris.lutece.plugins.identitystore.modules.test.IdentityStoreTestContext;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.IdentityStoreTest;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDefinition;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDtoConverter;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDuplicateRule;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus.GeoReferential;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus.IdentityGenerator;
+import fr.paris.lutece.plugins.identitystore.modules.test.seed.BulkIdentitySeeder;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.ElasticsearchTestClient;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.FileNameAlphanumericComparator;
+import fr.paris.lutece.plugins.identitystore.service.duplicate.DuplicateRuleService;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.RequestAuthor;
+import org.apache.commons.lang3.StringUtils;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Container and Lutece stack shared by the benchmarks run in a JVM.<br/>
+ * The stack starts an {@link IdentityStoreEnvironment} configured from a data directory, as the JSON data test cases do, and loads the definitions
+ * of the directory. It keeps the seeded corpus between the trials of a same corpus size, since seeding a large corpus costs far more than measuring
+ * it.
+ */
+public class BenchmarkStack
+{
+    private static final int SEEDING_CHUNK_SIZE = 10000;
+    private static final String DEFAULT_DUPLICATE_RATE = "0.01";
+    private static final String DEFAULT_NEAR_DUPLICATE_RATE = "0.02";
+    private static BenchmarkStack _instance;
+
+    private final String _strDataPath;
+    private final Map<String, String> _overrides;
+    private final IdentityStoreEnvironment _environment = new IdentityStoreEnvironment( );
+    private final ObjectMapper _mapper = new ObjectMapper( ).disable( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES );
+    private final Map<String, TestDefinition> _definitions = new LinkedHashMap<>( );
+    private final Set<String> _duplicateRules = new HashSet<>( );
+    private BulkIdentitySeeder _bulkSeeder;
+    private String _strCorpusKey;
+    private GeoReferential _geoReferential;
+
+    private BenchmarkStack( final String strDataPath, final Map<String, String> overrides )
+    {
+        _strDataPath = strDataPath;
+        _overrides = new LinkedHashMap<>( overrides );
+    }
+
+    /**
+     * Returns the stack of the given data directory, starting it if needed. A stack started for another data directory is stopped first.
+     *
+     * @param strDataPath
+     *            the data directory, relative to the test resources (e.g. <code>data/search</code>)
+     * @return the started stack
+     */
+    public static synchronized BenchmarkStack acquire( final String strDataPath ) throws Exception
+    {
+        return acquire( strDataPath, Collections.emptyMap( ) );
+    }
+
+    /**
+     * Returns the stack of the given data directory and identitystore properties, starting it if needed. A stack started for another data
+     * directory or other properties is stopped first, the services reading most of their settings once at start up.
+     *
+     * @param strDataPath
+     *            the data directory, relative to the test resources (e.g. <code>data/search</code>)
+     * @param overrides
+     *            the identitystore properties to override, e.g. the benchmarked pool or batch sizes
+     * @return the started stack
+     */
+    public static synchronized BenchmarkStack acquire( final String strDataPath, final Map<String, String> overrides ) throws Exception
+    {
+        if ( _instance != null && ( !_instance._strDataPath.equals( strDataPath ) || !_instance._overrides.equals( overrides ) ) )
+        {
+            release( );
+        }
+        if ( _instance == null )
+        {
+            final BenchmarkStack stack = new BenchmarkStack( strDataPath, overrides );
+            stack.start( );
+            _instance = stack;
+        }
+        return _instance;
+    }
+
+    /**
+     * Stops the current stack, if any.
+     */
+    public static synchronized void release( ) throws Exception
+    {
+        if ( _instance != null )
+        {
+            _instance.stop( );
+            _instance = null;
+        }
+    }
+
+    private void start( ) throws Exception
+    {
+        System.out.println( "----- Start benchmark stack " + _strDataPath + " -----" );
+        _environment.startContainers( );
+        _environment.setPropertiesTemplatePath( Paths.get( _strDataPath, "config/identitystore.properties" ).toString( ) );
+        _environment.getPropertyOverrides( ).putAll( _overrides );
+        if ( QueryPlanCapture.isEnabled( ) )
+        {
+            QueryPlanCapture.enable( _environment.getDatabase( ) );
+        }
+        _environment.initApplication( );
+        _environment.initIndex( );
+        _bulkSeeder = new BulkIdentitySeeder( _environment.getDataSource( ), IdentityStoreTestContext.SAMPLE_APPCODE );
+    }
+
+    private void stop( ) throws IOException
+    {
+        System.out.println( "----- Stop benchmark stack " + _strDataPath + " -----" );
+        _environment.shutDownContainers( );
+        _environment.cleanApplication( );
+    }
+
+    /**
+     * @return the definitions of the data directory keyed by file name without extension, sorted by file name
+     */
+    public synchronized Map<String, TestDefinition> getDefinitions( ) throws IOException
+    {
+        if ( _definitions.isEmpty( ) )
+        {
+            final List<File> files;
+            try ( final Stream<Path> paths = Files.walk( Paths.get( _environment.getBasePath( ), _strDataPath, "definition" ) ) )
+            {
+                files = paths.filter( path -> !Files.isDirectory( path ) && path.toString( ).endsWith( ".json" ) ).map( Path::toFile )
+                        .sorted( FileNameAlphanumericComparator.createStringComparator( ) ).collect( Collectors.toList( ) );
+            }
+            for ( final File file : files )
+            {
+                _definitions.put( StringUtils.removeEnd( file.getName( ), ".json" ), _mapper.readValue( file, IdentityStoreTest.class ).getTestDefinition( ) );
+            }
+        }
+        return _definitions;
+    }
+
+    /**
+     * @param strDefinition
+     *            the definition file name, without extension
+     * @return the definition
+     */
+    public TestDefinition getDefinition( final String strDefinition ) throws IOException
+    {
+        final TestDefinition definition = this.getDefinitions( ).get( strDefinition );
+        if ( definition == null )
+        {
+            throw new IllegalArgumentException( "Unknown definition " + strDefinition + " in " + _strDataPath );
+        }
+        return definition;
+    }
+
+    /**
+     * Seeds a corpus of the given size, unless it is already in place. The inputs of every definition are part of the corpus so that each benchmarked
+     * request keeps the hits of its definition, the rest comes from the background identities.
+     *
+     * @param strCorpus
+     *            the name of the corpus, telling apart the corpora of a same size built from different background identities
+     * @param nCorpusSize
+     *            the number of identities of the corpus
+     * @param background
+     *            the identities completing the definition inputs
+     */
+    public synchronized void seedCorpus( final String strCorpus, final int nCorpusSize, final Iterator<TestIdentity> background ) throws Exception
+    {
+        final String strCorpusKey = strCorpus + "/" + nCorpusSize;
+        if ( strCorpusKey.equals( _strCorpusKey ) )
+        {
+            return;
+        }
+        if ( _strCorpusKey != null )
+        {
+            _environment.resetData( );
+        }
+        final long start = System.nanoTime( );
+        final List<TestIdentity> chunk = new ArrayList<>( SEEDING_CHUNK_SIZE );
+        this.getDefinitions( ).values( ).forEach( definition -> chunk.addAll( definition.getInputs( ) ) );
+        long nbSeeded = 0;
+        while ( nbSeeded + chunk.size( ) < nCorpusSize && background.hasNext( ) )
+        {
+            chunk.add( background.next( ) );
+            if ( chunk.size( ) >= SEEDING_CHUNK_SIZE )
+            {
+                nbSeeded += _bulkSeeder.seed( chunk ).size( );
+                chunk.clear( );
+            }
+        }
+        if ( !chunk.isEmpty( ) )
+        {
+            nbSeeded += _bulkSeeder.seed( chunk ).size( );
+        }
+        _strCorpusKey = strCorpusKey;
+
+        final ElasticsearchTestClient client = this.getElasticsearchClient( );
+        client.refresh( this.getIndexAlias( ) );
+        System.out.println( "[Benchmark corpus " + strCorpusKey + "] " + nbSeeded + " identities seeded, " + client.count( this.getIndexAlias( ) ) + " indexed in "
+                + ( System.nanoTime( ) - start ) / 1_000_000 + " ms" );
+    }
+
+    /**
+     * Inserts identities in database with one pending index action each, without indexing them.
+     *
+     * @param identities
+     *            the identities to insert
+     * @return their customer ids
+     */
+    public List<String> queueIdentities( final List<TestIdentity> identities ) throws SQLException
+    {
+        return _bulkSeeder.queue( identities );
+    }
+
+    /**
+     * Freezes the Elasticsearch container, as during an outage : its port stays open but it no longer answers.
+     */
+    public void pauseElasticsearch( )
+    {
+        final ElasticsearchContainer container = _environment.getElasticsearchContainer( );
+        container.getDockerClient( ).pauseContainerCmd( container.getContainerId( ) ).exec( );
+    }
+
+    public void resumeElasticsearch( )
+    {
+        final ElasticsearchContainer container = _environment.getElasticsearchContainer( );
+        container.getDockerClient( ).unpauseContainerCmd( container.getContainerId( ) ).exec( );
+    }
+
+    /**
+     * @return a client of the Elasticsearch container of the stack
+     */
+    public ElasticsearchTestClient getElasticsearchClient( )
+    {
+        return _environment.getElasticsearchClient( );
+    }
+
+    /**
+     * @return the URL of the Elasticsearch container of the stack, as expected by <code>IdentityIndexer</code>
+     */
+    public String getElasticsearchUrl( )
+    {
+        return _environment.getElasticsearchUrl( );
+    }
+
+    /**
+     * @return the alias searched by the identity store
+     */
+    public String getIndexAlias( )
+    {
+        return IdentityStoreEnvironment.CURRENT_INDEX_ALIAS;
+    }
+
+    /**
+     * @return the data source of the database of the stack
+     */
+    public DataSource getDataSource( )
+    {
+        return _environment.getDataSource( );
+    }
+
+    /**
+     * @return the author of the requests sent to the services
+     */
+    public RequestAuthor getAuthor( )
+    {
+        return _environment.getAuthor( );
+    }
+
+    /**
+     * Creates a generator of realistic identities, with the birth codes of the geocodes referential and the duplicate rates set by the
+     * <code>corpus.duplicate.rate</code> and <code>corpus.near.duplicate.rate</code> properties.
+     *
+     * @param lSeed
+     *            the seed of the generated identities
+     * @return the generator
+     */
+    public synchronized IdentityGenerator newIdentityGenerator( final long lSeed )
+    {
+        if ( _geoReferential == null )
+        {
+            _geoReferential = GeoReferential.load( this.getDataSource( ) );
+        }
+        final IdentityGenerator generator = new IdentityGenerator( lSeed, _geoReferential );
+        generator.setDuplicateRate( Double.parseDouble( System.getProperty( "corpus.duplicate.rate", DEFAULT_DUPLICATE_RATE ) ) );
+        generator.setNearDuplicateRate( Double.parseDouble( System.getProperty( "corpus.near.duplicate.rate", DEFAULT_NEAR_DUPLICATE_RATE ) ) );
+        return generator;
+    }
+
+    /**
+     * Creates the duplicate rule unless it already exists in the database of the stack.
+     *
+     * @return the code of the rule
+     */
+    public synchronized String ensureDuplicateRule( final TestDuplicateRule testDuplicateRule ) throws Exception
+    {
+        if ( !_duplicateRules.contains( testDuplicateRule.getCode( ) ) )
+        {
+            if ( DuplicateRuleService.instance( ).create( TestDtoConverter.toDuplicateRule( testDuplicateRule ) ) == null )
+            {
+                throw new IllegalStateException( "Could not create duplicate rule " + testDuplicateRule.getCode( ) );
+            }
+            _duplicateRules.add( testDuplicateRule.getCode( ) );
+        }
+        return testDuplicateRule.getCode( );
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestAttribute;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mixes near-duplicates of a set of reference identities into a stream of background identities.<br/>
+ * A near-duplicate is a copy of a reference identity with one attribute altered : a typo in a name, another day of birth, another gender or code.
+ * The altered attribute changes from one copy to the next, so that the copies spread over the treatments of the duplicate rules.
+ */
+public class NearDuplicates implements Iterator<TestIdentity>
+{
+    private final Iterator<TestIdentity> _background;
+    private final List<TestIdentity> _references;
+    private final double _dShare;
+    private final Random _random;
+    private long _lCount;
+
+    /**
+     * Constructor
+     *
+     * @param background
+     *            the background identities
+     * @param references
+     *            the identities to duplicate
+     * @param dShare
+     *            the share of near-duplicates in the stream, between 0 and 1
+     * @param lSeed
+     *            the seed of the alterations
+     */
+    public NearDuplicates( final Iterator<TestIdentity> background, final List<TestIdentity> references, final double dShare, final long lSeed )
+    {
+        _background = background;
+        _references = references;
+        _dShare = dShare;
+        _random = new Random( lSeed );
+    }
+
+    @Override
+    public boolean hasNext( )
+    {
+        return _background.hasNext( );
+    }
+
+    @Override
+    public TestIdentity next( )
+    {
+        _lCount++;
+        if ( _references.isEmpty( ) || _random.nextDouble( ) >= _dShare )
+        {
+            return _background.next( );
+        }
+        final TestIdentity reference = _references.get( _random.nextInt( _references.size( ) ) );
+        final TestIdentity copy = new TestIdentity( );
+        copy.setName( "near-duplicate-" + _lCount );
+        final int nAltered = _random.nextInt( reference.getAttributes( ).size( ) );
+        for ( int i = 0; i < reference.getAttributes( ).size( ); i++ )
+        {
+            final TestAttribute attribute = reference.getAttributes( ).get( i );
+            final TestAttribute attributeCopy = new TestAttribute( );
+            attributeCopy.setKey( attribute.getKey( ) );
+            attributeCopy.setType( attribute.getType( ) );
+            attributeCopy.setValue( i == nAltered ? this.alter( attribute.getKey( ), attribute.getValue( ) ) : attribute.getValue( ) );
+            copy.getAttributes( ).add( attributeCopy );
+        }
+        return copy;
+    }
+
+    private String alter( final String strKey, final String strValue )
+    {
+        if ( strValue == null || strValue.isEmpty( ) )
+        {
+            return strValue;
+        }
+        switch( strKey )
+        {
+            case "gender":
+                return "1".equals( strValue ) ? "2" : "1";
+            case "birthdate":
+                // dd/MM/yyyy : another day of the same month
+                final int nDay = 1 + ( Integer.parseInt( strValue.substring( 0, 2 ) ) % 28 );
+                return String.format( "%02d", nDay ) + strValue.substring( 2 );
+            case "birthplace_code":
+            case "birthcountry_code":
+                final char last = strValue.charAt( strValue.length( ) - 1 );
+                return strValue.substring( 0, strValue.length( ) - 1 ) + ( last == '9' ? '0' : (char) ( last + 1 ) );
+            default:
+                // One letter swapped with the next one, as a typing mistake
+                if ( strValue.length( ) < 2 )
+                {
+                    return strValue + "e";
+                }
+                final int nPosition = _random.nextInt( strValue.length( ) - 1 );
+                final char [ ] chars = strValue.toCharArray( );
+                final char swapped = chars [nPosition];
+                chars [nPosition] = chars [nPosition + 1];
+                chars [nPosition + 1] = swapped;
+                return new String( chars );
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.IdentityStoreContainerRegistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the query plans logged by the <code>auto_explain</code> module of the Postgres container while a benchmark runs.<br/>
+ * Enabled by <code>-Dperf.explain=true</code> : the module is then preloaded in the sessions of the benchmark database, which must be done before the
+ * Lutece connection pool opens them, and logs the plan of every statement slower than <code>perf.explain.min.duration</code> milliseconds (10 by
+ * default). The plans are grouped by query text, the slowest one being kept.<br/>
+ * The plans are analyzed for the actual row counts of their nodes, but without timing each node : timing every node of every statement, which
+ * <code>log_analyze</code> does by default, slows down the whole benchmark. The measures of a trial with plans are still only comparable with other
+ * trials with plans.
+ */
+public class QueryPlanCapture
+{
+    public static final String PROPERTY_ENABLED = "perf.explain";
+    private static final Pattern PLAN_START = Pattern.compile( "duration: ([0-9.]+) ms\\s+plan:" );
+    private static final String QUERY_TEXT = "Query Text:";
+
+    private final int _nLogOffset;
+
+    private QueryPlanCapture( )
+    {
+        _nLogOffset = getLogs( ).length( );
+    }
+
+    public static boolean isEnabled( )
+    {
+        return Boolean.getBoolean( PROPERTY_ENABLED );
+    }
+
+    /**
+     * Preloads <code>auto_explain</code> in the future sessions of a database.
+     *
+     * @param strDatabase
+     *            the database, without open session yet
+     */
+    public static void enable( final String strDatabase ) throws SQLException
+    {
+        try ( final Connection connection = IdentityStoreContainerRegistry.getAdminConnection( ); final Statement statement = connection.createStatement( ) )
+        {
+            statement.execute( "ALTER DATABASE " + strDatabase + " SET session_preload_libraries = 'auto_explain'" );
+            statement.execute( "ALTER DATABASE " + strDatabase + " SET auto_explain.log_min_duration = " + Integer.getInteger( "perf.explain.min.duration", 10 ) );
+            statement.execute( "ALTER DATABASE " + strDatabase + " SET auto_explain.log_analyze = on" );
+            statement.execute( "ALTER DATABASE " + strDatabase + " SET auto_explain.log_timing = off" );
+            statement.execute( "ALTER DATABASE " + strDatabase + " SET auto_explain.log_buffers = on" );
+        }
+        System.out.println( "[Query plans] auto_explain enabled on " + strDatabase );
+    }
+
+    /**
+     * @return a capture of the plans logged from now on, or null if the capture is not enabled
+     */
+    public static QueryPlanCapture start( )
+    {
+        return isEnabled( ) ? new QueryPlanCapture( ) : null;
+    }
+
+    /**
+     * Writes the plans logged since the start of the capture, slowest query first.
+     *
+     * @param file
+     *            the destination file
+     * @return the number of distinct queries
+     */
+    public int write( final Path file ) throws IOException
+    {
+        final Map<String, List<String>> plansByQuery = new LinkedHashMap<>( );
+        final Map<String, Double> maxDurations = new LinkedHashMap<>( );
+        final Map<String, Integer> counts = new LinkedHashMap<>( );
+        final String [ ] lines = getLogs( ).substring( _nLogOffset ).split( "\n" );
+        for ( int i = 0; i < lines.length; i++ )
+        {
+            final Matcher matcher = PLAN_START.matcher( lines [i] );
+            if ( !matcher.find( ) )
+            {
+                continue;
+            }
+            final double dDuration = Double.parseDouble( matcher.group( 1 ) );
+            final List<String> plan = new ArrayList<>( );
+            String strQuery = "";
+            while ( i + 1 < lines.length && !lines [i + 1].isEmpty( ) && Character.isWhitespace( lines [i + 1].charAt( 0 ) ) )
+            {
+                final String strLine = lines [++i];
+                if ( strLine.trim( ).startsWith( QUERY_TEXT ) )
+                {
+                    strQuery = strLine.trim( ).substring( QUERY_TEXT.length( ) ).trim( );
+                }
+                else
+                {
+                    plan.add( strLine );
+                }
+            }
+            counts.merge( strQuery, 1, Integer::sum );
+            if ( dDuration >= maxDurations.getOrDefault( strQuery, -1d ) )
+            {
+                maxDurations.put( strQuery, dDuration );
+                plansByQuery.put( strQuery, plan );
+            }
+        }
+
+        final List<String> report = new ArrayList<>( );
+        maxDurations.entrySet( ).stream( ).sorted( Map.Entry.<String, Double> comparingByValue( Comparator.reverseOrder( ) ) ).forEach( entry -> {
+            report.add( "-- " + counts.get( entry.getKey( ) ) + " call(s) over the threshold, slowest " + entry.getValue( ) + " ms" );
+            report.add( entry.getKey( ) );
+            report.addAll( plansByQuery.get( entry.getKey( ) ) );
+            report.add( "" );
+        } );
+        Files.createDirectories( file.getParent( ) );
+        Files.write( file, report, StandardCharsets.UTF_8 );
+        System.out.println( "[Query plans] " + maxDurations.size( ) + " queries written to " + file );
+        return maxDurations.size( );
+    }
+
+    private static String getLogs( )
+    {
+        return IdentityStoreContainerRegistry.getPostgreSQLContainer( ).getLogs( );
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf;
+
+import java.lang.reflect.Method;
+
+/**
+ * Runs an identity store task or daemon by class name, once, in the calling thread.<br/>
+ * Tasks and daemons are looked up by name because their classes and entry points differ between library versions : the first public no-argument
+ * method among <code>run</code>, <code>doJob</code>, <code>execute</code> and <code>process</code> is called.
+ */
+public final class TaskRunner
+{
+    private static final String [ ] ENTRY_POINTS = {
+            "run", "doJob", "execute", "process"
+    };
+
+    private TaskRunner( )
+    {
+    }
+
+    /**
+     * @param strClassName
+     *            the task or daemon class, with a public no-argument constructor
+     * @return the duration of the run, in nanoseconds
+     */
+    public static long run( final String strClassName ) throws Exception
+    {
+        final Class<?> taskClass = Class.forName( strClassName );
+        final Object task = taskClass.getConstructor( ).newInstance( );
+        final Method entryPoint = getEntryPoint( taskClass );
+        final long start = System.nanoTime( );
+        entryPoint.invoke( task );
+        return System.nanoTime( ) - start;
+    }
+
+    private static Method getEntryPoint( final Class<?> taskClass )
+    {
+        for ( final String strName : ENTRY_POINTS )
+        {
+            try
+            {
+                return taskClass.getMethod( strName );
+            }
+            catch( NoSuchMethodException e )
+            {
+                // next candidate
+            }
+        }
+        throw new IllegalArgumentException( taskClass.getName( ) + " has none of the entry points run, doJob, execute or process" );
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestAttribute;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Writes a generated corpus as a test definition following <code>testDefinitionSchema.json</code>, without holding the corpus in memory.<br/>
+ * The first generated identity is the search request, and its exact duplicates are the expected identities. Such files are meant to be run with
+ * the streaming reader.
+ */
+public class CorpusDefinitionWriter
+{
+    private static final String SCHEMA = "../../../schema/testDefinitionSchema.json";
+
+    private final ObjectMapper _mapper = new ObjectMapper( );
+
+    /**
+     * Writes a definition of <code>nbIdentities</code> inputs.
+     *
+     * @param file
+     *            the definition file
+     * @param strName
+     *            the definition name
+     * @param identities
+     *            the identity source
+     * @param nbIdentities
+     *            the number of inputs
+     */
+    public void write( final Path file, final String strName, final Iterator<TestIdentity> identities, final long nbIdentities ) throws IOException
+    {
+        Files.createDirectories( file.toAbsolutePath( ).getParent( ) );
+        try ( final JsonGenerator generator = _mapper.getFactory( ).createGenerator( file.toFile( ), JsonEncoding.UTF8 ) )
+        {
+            final TestIdentity searchRequest = identities.next( );
+            final List<String> expected = new ArrayList<>( );
+            expected.add( searchRequest.getName( ) );
+
+            generator.writeStartObject( );
+            generator.writeStringField( "$schema", SCHEMA );
+            generator.writeObjectFieldStart( "testDefinition" );
+            generator.writeStringField( "name", strName );
+            generator.writeStringField( "description", "Corpus généré de " + nbIdentities + " identités" );
+            generator.writeFieldName( "searchRequest" );
+            this.writeIdentity( generator, searchRequest, false );
+            generator.writeArrayFieldStart( "inputs" );
+            this.writeIdentity( generator, searchRequest, true );
+            for ( long i = 1; i < nbIdentities; i++ )
+            {
+                final TestIdentity identity = identities.next( );
+                if ( identity.getName( ).startsWith( searchRequest.getName( ) + IdentityGenerator.DUPLICATE_SUFFIX ) )
+                {
+                    expected.add( identity.getName( ) );
+                }
+                this.writeIdentity( generator, identity, true );
+            }
+            generator.writeEndArray( );
+            generator.writeArrayFieldStart( "expected" );
+            for ( final String strExpected : expected )
+            {
+                generator.writeString( strExpected );
+            }
+            generator.writeEndArray( );
+            generator.writeEndObject( );
+            generator.writeEndObject( );
+        }
+    }
+
+    private void writeIdentity( final JsonGenerator generator, final TestIdentity identity, final boolean bWithName ) throws IOException
+    {
+        generator.writeStartObject( );
+        if ( bWithName )
+        {
+            generator.writeStringField( "name", identity.getName( ) );
+        }
+        generator.writeArrayFieldStart( "attributes" );
+        for ( final TestAttribute attribute : identity.getAttributes( ) )
+        {
+            generator.writeStartObject( );
+            generator.writeStringField( "key", attribute.getKey( ) );
+            generator.writeStringField( "value", attribute.getValue( ) );
+            generator.writeStringField( "type", attribute.getType( ) );
+            generator.writeEndObject( );
+        }
+        generator.writeEndArray( );
+        generator.writeEndObject( );
+    }
+}
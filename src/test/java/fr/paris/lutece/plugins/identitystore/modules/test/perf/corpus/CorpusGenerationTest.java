@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersion;
+import com.networknt.schema.ValidationMessage;
+import junit.framework.TestCase;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Writes a generated corpus as a JSON test definition, and checks that it matches <code>testDefinitionSchema.json</code>, that it expects at least
+ * the search request, and that the same seed writes the same file. Only run with the <code>perf</code> profile.<br/>
+ * Without a running stack, the birth codes come from the embedded sample of the {@link GeoReferential}.
+ */
+public class CorpusGenerationTest extends TestCase
+{
+    private static final String SCHEMA_RESOURCE = "/schema/testDefinitionSchema.json";
+
+    private final ObjectMapper _mapper = new ObjectMapper( );
+
+    public void test( ) throws Exception
+    {
+        final Path output = Paths.get( System.getProperty( "corpus.output", "target/generated-definitions/corpus.json" ) );
+        final long nbIdentities = Long.getLong( "corpus.size", 10000 );
+
+        final long start = System.nanoTime( );
+        this.write( output, nbIdentities );
+        System.out.println( nbIdentities + " identities written to " + output.toAbsolutePath( ) + " in " + ( System.nanoTime( ) - start ) / 1_000_000
+                + " ms" );
+
+        final JsonNode definition = _mapper.readTree( output.toFile( ) );
+        try ( final InputStream schema = CorpusGenerationTest.class.getResourceAsStream( SCHEMA_RESOURCE ) )
+        {
+            assertNotNull( "Cannot find the definition schema " + SCHEMA_RESOURCE, schema );
+            final Set<ValidationMessage> violations = JsonSchemaFactory.getInstance( SpecVersion.VersionFlag.V202012 ).getSchema( schema )
+                    .validate( definition );
+            assertTrue( "The corpus does not match the schema : " + violations, violations.isEmpty( ) );
+        }
+        final JsonNode testDefinition = definition.path( "testDefinition" );
+        assertEquals( nbIdentities, testDefinition.path( "inputs" ).size( ) );
+        assertTrue( "The corpus expects no identity", testDefinition.path( "expected" ).size( ) > 0 );
+
+        final Path replay = Files.createTempFile( "corpus", ".json" );
+        try
+        {
+            this.write( replay, nbIdentities );
+            assertTrue( "The same seed wrote another corpus", Arrays.equals( Files.readAllBytes( output ), Files.readAllBytes( replay ) ) );
+        }
+        finally
+        {
+            Files.deleteIfExists( replay );
+        }
+    }
+
+    private void write( final Path output, final long nbIdentities ) throws Exception
+    {
+        final IdentityGenerator generator = new IdentityGenerator( Long.getLong( "corpus.seed", 42L ), GeoReferential.defaults( ) );
+        generator.setDuplicateRate( Double.parseDouble( System.getProperty( "corpus.duplicate.rate", "0.01" ) ) );
+        generator.setNearDuplicateRate( Double.parseDouble( System.getProperty( "corpus.near.duplicate.rate", "0.02" ) ) );
+        new CorpusDefinitionWriter( ).write( output, "Corpus :: " + nbIdentities + " identités", generator, nbIdentities );
+    }
+}
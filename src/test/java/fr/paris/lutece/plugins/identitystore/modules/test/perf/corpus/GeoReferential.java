@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Birth place and birth country codes used by the {@link IdentityGenerator}.<br/>
+ * The codes are read from the plugin-geocodes tables when a database is available, otherwise a small embedded sample of INSEE codes is used.
+ */
+public class GeoReferential
+{
+    public static final String FRANCE_CODE = "99100";
+    private static final String SQL_SELECT_CITIES = "SELECT code FROM geocodes_city WHERE code IS NOT NULL ORDER BY code";
+    private static final String SQL_SELECT_COUNTRIES = "SELECT code FROM geocodes_country WHERE code IS NOT NULL AND code <> '" + FRANCE_CODE
+            + "' ORDER BY code";
+    private static final List<String> DEFAULT_CITY_CODES = Arrays.asList( "75056", "13055", "69123", "31555", "06088", "44109", "67482", "34172",
+            "33063", "59350", "35238", "51454", "76351", "42218", "83137", "38185", "21231", "49007", "72181", "30189", "92050", "93066", "94028",
+            "91027", "78646", "95127", "77288", "97411", "97209", "2A004" );
+    private static final List<String> DEFAULT_COUNTRY_CODES = Arrays.asList( "99109", "99127", "99131", "99132", "99134", "99139", "99350",
+            "99351", "99352", "99243", "99404", "99216" );
+
+    private final List<String> _cityCodes;
+    private final List<String> _countryCodes;
+
+    private GeoReferential( final List<String> cityCodes, final List<String> countryCodes )
+    {
+        _cityCodes = Collections.unmodifiableList( cityCodes );
+        _countryCodes = Collections.unmodifiableList( countryCodes );
+    }
+
+    /**
+     * @return the embedded sample of codes
+     */
+    public static GeoReferential defaults( )
+    {
+        return new GeoReferential( DEFAULT_CITY_CODES, DEFAULT_COUNTRY_CODES );
+    }
+
+    /**
+     * Reads the codes of the plugin-geocodes referential, falling back to the embedded sample if the tables are missing or empty.
+     *
+     * @param dataSource
+     *            the identitystore datasource
+     * @return the referential
+     */
+    public static GeoReferential load( final DataSource dataSource )
+    {
+        try ( final Connection connection = dataSource.getConnection( ) )
+        {
+            final List<String> cityCodes = readCodes( connection, SQL_SELECT_CITIES );
+            final List<String> countryCodes = readCodes( connection, SQL_SELECT_COUNTRIES );
+            if ( !cityCodes.isEmpty( ) && !countryCodes.isEmpty( ) )
+            {
+                System.out.println( "[Geo referential] " + cityCodes.size( ) + " cities and " + countryCodes.size( ) + " countries from geocodes" );
+                return new GeoReferential( cityCodes, countryCodes );
+            }
+            System.out.println( "[Geo referential] geocodes tables are empty, using the embedded codes" );
+        }
+        catch( SQLException e )
+        {
+            System.out.println( "[Geo referential] geocodes tables unavailable (" + e.getMessage( ) + "), using the embedded codes" );
+        }
+        return defaults( );
+    }
+
+    public List<String> getCityCodes( )
+    {
+        return _cityCodes;
+    }
+
+    public List<String> getCountryCodes( )
+    {
+        return _countryCodes;
+    }
+
+    private static List<String> readCodes( final Connection connection, final String strSql ) throws SQLException
+    {
+        final List<String> codes = new ArrayList<>( );
+        try ( final PreparedStatement statement = connection.prepareStatement( strSql ); final ResultSet resultSet = statement.executeQuery( ) )
+        {
+            while ( resultSet.next( ) )
+            {
+                codes.add( resultSet.getString( 1 ) );
+            }
+        }
+        return codes;
+    }
+}
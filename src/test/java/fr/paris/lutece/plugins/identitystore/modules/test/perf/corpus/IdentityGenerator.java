@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestAttribute;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+/**
+ * Endless and deterministic source of realistic French civil identities.<br/>
+ * For a given seed, settings and referential, the generated sequence is always the same. Among the generated identities, a configurable share are
+ * exact duplicates of a previous identity, and another share are near-duplicates : a typo in a name, swapped first names, a missing attribute or
+ * a lost accent. Duplicates are named after their source (<code>identity-12~dup345</code>, <code>identity-12~near678</code>) so that the expected
+ * identities of a search can be told.
+ */
+public class IdentityGenerator implements Iterator<TestIdentity>
+{
+    public static final String DUPLICATE_SUFFIX = "~dup";
+    public static final String NEAR_DUPLICATE_SUFFIX = "~near";
+    private static final String NAME_PREFIX = "identity-";
+    private static final String GENDER_MALE = "1";
+    private static final String GENDER_FEMALE = "2";
+    private static final int SOURCES_SIZE = 1000;
+    private static final String [ ] FAMILY_NAMES = {
+            "Martin", "Bernard", "Thomas", "Petit", "Robert", "Richard", "Durand", "Dubois", "Moreau", "Laurent", "Simon", "Michel", "Lefèvre",
+            "Leroy", "Roux", "David", "Bertrand", "Morel", "Fournier", "Girard", "Bonnet", "Dupont", "Lambert", "Fontaine", "Rousseau", "Vincent",
+            "Müller", "Lefebvre", "Faure", "André", "Mercier", "Blanc", "Guérin", "Boyer", "Garnier", "Chevalier", "François", "Legrand", "Gauthier",
+            "Garcia", "Perrin", "Robin", "Clément", "Morin", "Nicolas", "Henry", "Roussel", "Mathieu", "Gautier", "Masson", "Marchand", "Duval",
+            "Denis", "Dumont", "Marie", "Lemaire", "Noël", "Meyer", "Dufour", "Meunier", "Brun", "Blanchard", "Giraud", "Joly", "Rivière", "Lucas",
+            "Brunet", "Gaillard", "Barbier", "Arnaud", "Martinez", "Gérard", "Roche", "Renard", "Schmitt", "Roy", "Leroux", "Colin", "Vidal", "Caron",
+            "Picard", "Roger", "Fabre", "Aubert", "Lemoine", "Renaud", "Dumas", "Lacroix", "Olivier", "Philippe", "Bourgeois", "Pierre", "Benoît",
+            "Rey", "Leclerc", "Payet", "Rolland", "Leclercq", "Guillaume", "Lecomte", "Lopez", "Jean", "Dupuy", "Guillot", "Hubert", "Berger",
+            "Carpentier", "Sanchez", "Dupuis", "Moulin", "Louis", "Deschamps", "Huet", "Vasseur", "Perez", "Boucher", "Fleury", "Royer", "Klein",
+            "Jacquet", "Adam", "Paris", "Poirier", "Marty", "Aubry", "Guyot", "Carré", "Charles", "Renault", "Charpentier", "Ménard", "Maillard",
+            "Baron", "Bertin", "Bailly", "Hervé", "Schneider", "Fernandez", "Le Gall", "Collet", "Léger", "Bouvier", "Julien", "Prévost", "Millet",
+            "Perrot", "Daniel", "Le Roux", "Cousin", "Germain", "Breton", "Besson", "Langlois", "Rémy", "Le Goff", "Pelletier", "Lévêque", "Perrier",
+            "Leblanc", "Barré", "Lebrun", "Marchal", "Weber", "Mallet", "Hamon", "Boulanger", "Jacob", "Monnier", "Michaud", "Rodriguez", "Guichard",
+            "Gillet", "Étienne", "Grondin", "Poulain", "Tessier", "Chevallier", "Collin", "Chauvin", "Da Silva", "Bouchet", "Gay", "Lemaître",
+            "Bénard", "Maréchal", "Humbert", "Reynaud", "Antoine", "Hoarau", "Perret", "Barthélemy", "Cordier", "Pichon", "Lejeune", "Gilbert",
+            "Lamy", "Delaunay", "Pasquier", "Carlier", "Laporte"
+    };
+    private static final String [ ] MALE_FIRST_NAMES = {
+            "Jean", "Pierre", "Michel", "André", "Philippe", "René", "Louis", "Alain", "Jacques", "Bernard", "Marcel", "Daniel", "Roger", "Robert",
+            "Paul", "Claude", "Christian", "Henri", "Georges", "Nicolas", "François", "Patrick", "Gérard", "Christophe", "Joseph", "Julien", "Éric",
+            "Frédéric", "Thierry", "Stéphane", "Laurent", "Sébastien", "Jérôme", "Olivier", "Thomas", "Lucas", "Hugo", "Théo", "Léo", "Gabriel",
+            "Raphaël", "Noé", "Maël", "Clément", "Mathéo", "Timothée", "Loïc", "Cédric", "Grégory", "Benoît", "Jean-Pierre", "Jean-Claude",
+            "Jean-Luc", "Jean-François", "Jean-Marc", "Pierre-Yves", "Jean-Baptiste", "Dominique", "David", "Mohamed", "Karim", "Yanis"
+    };
+    private static final String [ ] FEMALE_FIRST_NAMES = {
+            "Marie", "Jeanne", "Françoise", "Monique", "Catherine", "Nathalie", "Isabelle", "Jacqueline", "Anne", "Sylvie", "Martine", "Madeleine",
+            "Nicole", "Suzanne", "Hélène", "Christine", "Marguerite", "Denise", "Louise", "Christiane", "Valérie", "Sandrine", "Stéphanie", "Céline",
+            "Aurélie", "Émilie", "Julie", "Camille", "Léa", "Manon", "Chloé", "Inès", "Zoé", "Clémence", "Océane", "Maëlle", "Noémie", "Anaïs",
+            "Élodie", "Mélanie", "Agnès", "Bérénice", "Geneviève", "Thérèse", "Éléonore", "Marie-Hélène", "Marie-Claire", "Anne-Sophie",
+            "Marie-Thérèse", "Marie-Christine", "Anne-Laure", "Dominique", "Johanna", "Fatima", "Aïcha", "Yasmine"
+    };
+    private static final String [ ] EMAIL_DOMAINS = {
+            "gmail.com", "yahoo.fr", "orange.fr", "free.fr", "hotmail.fr", "laposte.net", "sfr.fr", "outlook.fr", "wanadoo.fr", "yopmail.com"
+    };
+    private static final String [ ] OPTIONAL_KEYS = {
+            "preferred_username", "birthplace_code", "email", "mobile_phone", "fixed_phone"
+    };
+
+    private final Random _random;
+    private final GeoReferential _geoReferential;
+    private final List<TestIdentity> _sources = new ArrayList<>( SOURCES_SIZE );
+    private double _dDuplicateRate;
+    private double _dNearDuplicateRate;
+    private long _lCount;
+
+    /**
+     * Constructor
+     *
+     * @param lSeed
+     *            the seed of the generated values
+     * @param geoReferential
+     *            the birth place and country codes
+     */
+    public IdentityGenerator( final long lSeed, final GeoReferential geoReferential )
+    {
+        _random = new Random( lSeed );
+        _geoReferential = geoReferential;
+    }
+
+    /**
+     * @param dDuplicateRate
+     *            the share of exact duplicates, between 0 and 1
+     */
+    public void setDuplicateRate( final double dDuplicateRate )
+    {
+        _dDuplicateRate = dDuplicateRate;
+    }
+
+    /**
+     * @param dNearDuplicateRate
+     *            the share of near-duplicates, between 0 and 1
+     */
+    public void setNearDuplicateRate( final double dNearDuplicateRate )
+    {
+        _dNearDuplicateRate = dNearDuplicateRate;
+    }
+
+    @Override
+    public boolean hasNext( )
+    {
+        return true;
+    }
+
+    @Override
+    public TestIdentity next( )
+    {
+        _lCount++;
+        final double dDraw = _random.nextDouble( );
+        if ( !_sources.isEmpty( ) && dDraw < _dDuplicateRate )
+        {
+            final TestIdentity source = this.pickSource( );
+            return copy( source, source.getName( ) + DUPLICATE_SUFFIX + _lCount );
+        }
+        if ( !_sources.isEmpty( ) && dDraw < _dDuplicateRate + _dNearDuplicateRate )
+        {
+            final TestIdentity source = this.pickSource( );
+            return this.alter( copy( source, source.getName( ) + NEAR_DUPLICATE_SUFFIX + _lCount ) );
+        }
+        final TestIdentity identity = this.generate( NAME_PREFIX + _lCount );
+        // Keeps a bounded sample of the originals as duplicate sources
+        if ( _sources.size( ) < SOURCES_SIZE )
+        {
+            _sources.add( identity );
+        }
+        else
+        {
+            _sources.set( _random.nextInt( SOURCES_SIZE ), identity );
+        }
+        return identity;
+    }
+
+    private TestIdentity generate( final String strName )
+    {
+        final TestIdentity identity = new TestIdentity( );
+        identity.setName( strName );
+        final boolean bFemale = _random.nextBoolean( );
+        final String familyName = this.pick( FAMILY_NAMES );
+        final String firstNames = this.firstNames( bFemale );
+        addAttribute( identity, "gender", bFemale ? GENDER_FEMALE : GENDER_MALE );
+        addAttribute( identity, "family_name", familyName );
+        if ( bFemale && _random.nextInt( 100 ) < 30 )
+        {
+            // Married name
+            addAttribute( identity, "preferred_username", this.pick( FAMILY_NAMES ) );
+        }
+        addAttribute( identity, "first_name", firstNames );
+        addAttribute( identity, "birthdate",
+                String.format( "%02d/%02d/%04d", 1 + _random.nextInt( 28 ), 1 + _random.nextInt( 12 ), 1930 + _random.nextInt( 77 ) ) );
+        if ( _random.nextInt( 100 ) < 88 )
+        {
+            addAttribute( identity, "birthplace_code", this.pick( _geoReferential.getCityCodes( ) ) );
+            addAttribute( identity, "birthcountry_code", GeoReferential.FRANCE_CODE );
+        }
+        else
+        {
+            addAttribute( identity, "birthcountry_code", this.pick( _geoReferential.getCountryCodes( ) ) );
+        }
+        if ( _random.nextInt( 100 ) < 80 )
+        {
+            addAttribute( identity, "email", StringUtils.stripAccents( StringUtils.substringBefore( firstNames, " " ) + "." + familyName )
+                    .toLowerCase( ).replace( ' ', '-' ) + ( _random.nextBoolean( ) ? "" : String.valueOf( _random.nextInt( 100 ) ) ) + "@"
+                    + this.pick( EMAIL_DOMAINS ) );
+        }
+        if ( _random.nextInt( 100 ) < 70 )
+        {
+            addAttribute( identity, "mobile_phone", ( _random.nextBoolean( ) ? "06" : "07" ) + this.digits( 8 ) );
+        }
+        if ( _random.nextInt( 100 ) < 20 )
+        {
+            addAttribute( identity, "fixed_phone", "0" + ( 1 + _random.nextInt( 5 ) ) + this.digits( 8 ) );
+        }
+        return identity;
+    }
+
+    /**
+     * One to three first names, the first one possibly compound
+     */
+    private String firstNames( final boolean bFemale )
+    {
+        final String [ ] names = bFemale ? FEMALE_FIRST_NAMES : MALE_FIRST_NAMES;
+        final int nbNames = 1 + ( _random.nextInt( 100 ) < 40 ? 1 + _random.nextInt( 2 ) : 0 );
+        final StringBuilder firstNames = new StringBuilder( this.pick( names ) );
+        for ( int i = 1; i < nbNames; i++ )
+        {
+            firstNames.append( ' ' ).append( this.pick( names ) );
+        }
+        return firstNames.toString( );
+    }
+
+    private TestIdentity alter( final TestIdentity identity )
+    {
+        switch( _random.nextInt( 4 ) )
+        {
+            case 0:
+                this.update( identity, "family_name", this::typo );
+                break;
+            case 1:
+                this.update( identity, "first_name", this::swapFirstNames );
+                break;
+            case 2:
+                final String strKey = this.pick( OPTIONAL_KEYS );
+                identity.getAttributes( ).removeIf( attribute -> strKey.equals( attribute.getKey( ) ) );
+                break;
+            default:
+                this.update( identity, _random.nextBoolean( ) ? "family_name" : "first_name", StringUtils::stripAccents );
+        }
+        return identity;
+    }
+
+    private String typo( final String strValue )
+    {
+        if ( strValue.length( ) < 3 )
+        {
+            return strValue + "e";
+        }
+        final int nPosition = 1 + _random.nextInt( strValue.length( ) - 2 );
+        final char [ ] chars = strValue.toCharArray( );
+        switch( _random.nextInt( 3 ) )
+        {
+            case 0:
+                // Doubled letter
+                return strValue.substring( 0, nPosition ) + chars [nPosition] + strValue.substring( nPosition );
+            case 1:
+                // Missing letter
+                return strValue.substring( 0, nPosition ) + strValue.substring( nPosition + 1 );
+            default:
+                // Swapped letters
+                final char swapped = chars [nPosition];
+                chars [nPosition] = chars [nPosition - 1];
+                chars [nPosition - 1] = swapped;
+                return new String( chars );
+        }
+    }
+
+    private String swapFirstNames( final String strValue )
+    {
+        final String [ ] names = strValue.split( " " );
+        if ( names.length < 2 )
+        {
+            return this.typo( strValue );
+        }
+        final String first = names [0];
+        names [0] = names [1];
+        names [1] = first;
+        return String.join( " ", names );
+    }
+
+    private void update( final TestIdentity identity, final String strKey, final UnaryOperator<String> operator )
+    {
+        identity.getAttributes( ).stream( ).filter( attribute -> strKey.equals( attribute.getKey( ) ) )
+                .forEach( attribute -> attribute.setValue( operator.apply( attribute.getValue( ) ) ) );
+    }
+
+    private TestIdentity pickSource( )
+    {
+        return _sources.get( _random.nextInt( _sources.size( ) ) );
+    }
+
+    private String pick( final String [ ] values )
+    {
+        return values [_random.nextInt( values.length )];
+    }
+
+    private String pick( final List<String> values )
+    {
+        return values.get( _random.nextInt( values.size( ) ) );
+    }
+
+    private String digits( final int nbDigits )
+    {
+        final StringBuilder digits = new StringBuilder( nbDigits );
+        for ( int i = 0; i < nbDigits; i++ )
+        {
+            digits.append( (char) ( '0' + _random.nextInt( 10 ) ) );
+        }
+        return digits.toString( );
+    }
+
+    private static TestIdentity copy( final TestIdentity source, final String strName )
+    {
+        final TestIdentity copy = new TestIdentity( );
+        copy.setName( strName );
+        for ( final TestAttribute attribute : source.getAttributes( ) )
+        {
+            addAttribute( copy, attribute.getKey( ), attribute.getValue( ) );
+        }
+        return copy;
+    }
+
+    private static void addAttribute( final TestIdentity identity, final String strKey, final String strValue )
+    {
+        final TestAttribute attribute = new TestAttribute( );
+        attribute.setKey( strKey );
+        attribute.setValue( strValue );
+        attribute.setType( "string" );
+        identity.getAttributes( ).add( attribute );
+    }
+}
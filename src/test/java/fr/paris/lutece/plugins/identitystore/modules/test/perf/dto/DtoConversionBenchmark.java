@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.dto;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.IdentityStoreTestContext;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestAttribute;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDtoConverter;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus.IdentityGenerator;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.IdentityDto;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.crud.IdentityChangeRequest;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.IdentitySearchRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmark of the DTO conversions of the harness, for identities of 5, 18 ({@link IdentityStoreTestContext#SAMPLE_NB_ATTR}) and 40 attributes.
+ * Meant to be run with the JMH GC profiler, whose <code>gc.alloc.rate.norm</code> gives the bytes allocated per call.<br/>
+ * The generated identities are cut or padded to the number of attributes : padding uses the attribute keys of the referential missing from the
+ * identity, then repeats them once the referential is exhausted. Identities of 40 attributes are therefore only measured here, no service accepting
+ * them : the round trips through the services are measured by {@link DtoRoundTripBenchmark}, up to the size of the referential.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class DtoConversionBenchmark
+{
+    public static final String DATA_PATH = "data/search";
+    static final long CORPUS_SEED = 42L;
+    static final int POOL_SIZE = 1024;
+    private static final String SQL_SELECT_ATTRIBUTE_KEYS = "SELECT key_name FROM identitystore_ref_attribute ORDER BY key_name";
+    // Kept first when an identity is cut, so that small identities can still be created and searched
+    private static final List<String> IDENTIFYING_KEYS = Arrays.asList( "family_name", "first_name", "birthdate", "gender", "birthplace_code",
+            "birthcountry_code" );
+
+    @Param( {
+            "5", "" + IdentityStoreTestContext.SAMPLE_NB_ATTR, "40"
+    } )
+    public int nbAttributes;
+
+    private List<String> _referentialKeys;
+    private final List<TestIdentity> _identities = new ArrayList<>( );
+    private final List<IdentityDto> _identityDtos = new ArrayList<>( );
+    private final AtomicInteger _nextIndex = new AtomicInteger( );
+
+    @Setup( Level.Trial )
+    public void setUp( ) throws Exception
+    {
+        final BenchmarkStack stack = BenchmarkStack.acquire( DATA_PATH );
+        _referentialKeys = loadReferentialKeys( stack );
+        final IdentityGenerator generator = stack.newIdentityGenerator( CORPUS_SEED );
+        _identities.clear( );
+        _identityDtos.clear( );
+        for ( int i = 0; i < POOL_SIZE; i++ )
+        {
+            final TestIdentity identity = resize( generator.next( ), nbAttributes, _referentialKeys );
+            _identities.add( identity );
+            // As returned by the service, with certificates
+            final IdentityDto identityDto = TestDtoConverter.toIdentityDto( identity );
+            identityDto.setCustomerId( "customer-" + i );
+            identityDto.getAttributes( ).forEach( attribute -> {
+                attribute.setCertificationLevel( 100 );
+                attribute.setType( "string" );
+            } );
+            _identityDtos.add( identityDto );
+        }
+    }
+
+    @Benchmark
+    public IdentityChangeRequest toIdentityChangeRequest( )
+    {
+        return TestDtoConverter.toIdentityChangeRequest( this.nextIdentity( ) );
+    }
+
+    @Benchmark
+    public IdentityDto toIdentityDto( )
+    {
+        return TestDtoConverter.toIdentityDto( this.nextIdentity( ) );
+    }
+
+    @Benchmark
+    public TestIdentity toTestIdentity( )
+    {
+        return TestDtoConverter.toTestIdentity( _identityDtos.get( this.nextIndex( ) ) );
+    }
+
+    @Benchmark
+    public IdentitySearchRequest toIdentitySearchRequest( )
+    {
+        return TestDtoConverter.toIdentitySearchRequest( this.nextIdentity( ), false );
+    }
+
+    private TestIdentity nextIdentity( )
+    {
+        return _identities.get( this.nextIndex( ) );
+    }
+
+    private int nextIndex( )
+    {
+        return Math.floorMod( _nextIndex.getAndIncrement( ), POOL_SIZE );
+    }
+
+    /**
+     * @return the attribute keys of the referential of the stack, sorted
+     */
+    static List<String> loadReferentialKeys( final BenchmarkStack stack ) throws SQLException
+    {
+        final List<String> keys = new ArrayList<>( );
+        try ( final Connection connection = stack.getDataSource( ).getConnection( );
+                final PreparedStatement statement = connection.prepareStatement( SQL_SELECT_ATTRIBUTE_KEYS );
+                final ResultSet resultSet = statement.executeQuery( ) )
+        {
+            while ( resultSet.next( ) )
+            {
+                keys.add( resultSet.getString( 1 ) );
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Cuts the attributes of the identity, identifying keys first, or pads them with the missing keys of the referential, repeated once the
+     * referential is exhausted. The padding values only depend on their rank, so that the same identity is always resized the same way.
+     *
+     * @return a resized copy, the given identity being left unchanged
+     */
+    static TestIdentity resize( final TestIdentity identity, final int nbAttributes, final List<String> referentialKeys )
+    {
+        final TestIdentity resized = new TestIdentity( );
+        resized.setName( identity.getName( ) );
+        resized.setConnectionId( identity.getConnectionId( ) );
+        resized.setCustomerId( identity.getCustomerId( ) );
+        resized.setUnderTest( identity.isUnderTest( ) );
+        final List<TestAttribute> attributes = new ArrayList<>( identity.getAttributes( ) );
+        if ( attributes.size( ) > nbAttributes )
+        {
+            attributes.sort( Comparator.comparingInt( attribute -> {
+                final int nRank = IDENTIFYING_KEYS.indexOf( attribute.getKey( ) );
+                return nRank < 0 ? IDENTIFYING_KEYS.size( ) : nRank;
+            } ) );
+            resized.setAttributes( new ArrayList<>( attributes.subList( 0, nbAttributes ) ) );
+            return resized;
+        }
+        final Set<String> presentKeys = attributes.stream( ).map( TestAttribute::getKey ).collect( Collectors.toSet( ) );
+        final List<String> paddingKeys = referentialKeys.stream( ).filter( key -> !presentKeys.contains( key ) ).collect( Collectors.toList( ) );
+        paddingKeys.addAll( referentialKeys );
+        for ( int i = 0; attributes.size( ) < nbAttributes; i++ )
+        {
+            final TestAttribute attribute = new TestAttribute( );
+            attribute.setKey( paddingKeys.get( i % paddingKeys.size( ) ) );
+            attribute.setValue( "value" + i );
+            attribute.setType( "string" );
+            attribute.setCertifier( IdentityStoreTestContext.CERTIFIER2_CODE );
+            attribute.setCertificationDate( new Date( ) );
+            attributes.add( attribute );
+        }
+        resized.setAttributes( attributes );
+        return resized;
+    }
+}
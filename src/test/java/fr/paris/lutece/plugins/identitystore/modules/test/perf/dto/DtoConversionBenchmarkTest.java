@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.dto;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkLauncher;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import junit.framework.TestCase;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Launches {@link DtoConversionBenchmark} and {@link DtoRoundTripBenchmark} with the GC profiler and writes the bytes allocated per call to
+ * <code>DtoConversionBenchmark-allocation.csv</code>, with the allocation rate they cause at <code>dto.rate</code> calls per second (100 by
+ * default) and the share of the conversions in the create and search round trips. Only run with the <code>perf</code> profile.
+ */
+public class DtoConversionBenchmarkTest extends TestCase
+{
+    private static final String PROPERTY_GC = "perf.gc";
+    private static final String ALLOCATION_FILE = "DtoConversionBenchmark-allocation.csv";
+    private static final String GC_ALLOCATION_NORM = "gc.alloc.rate.norm";
+    private static final double BYTES_PER_MB = 1024d * 1024d;
+
+    public void test( ) throws Exception
+    {
+        // The allocation per call is the point of this benchmark, the property is restored for the suites run next in the JVM
+        final String strGc = System.getProperty( PROPERTY_GC );
+        if ( strGc == null )
+        {
+            System.setProperty( PROPERTY_GC, "true" );
+        }
+        try
+        {
+            final List<RunResult> results = new ArrayList<>( BenchmarkLauncher.run( DtoConversionBenchmark.class, new HashMap<>( ) ) );
+            results.addAll( BenchmarkLauncher.run( DtoRoundTripBenchmark.class, new HashMap<>( ) ) );
+            this.writeAllocations( results );
+        }
+        finally
+        {
+            if ( strGc == null )
+            {
+                System.clearProperty( PROPERTY_GC );
+            }
+            BenchmarkStack.release( );
+        }
+    }
+
+    private void writeAllocations( final Collection<RunResult> results ) throws Exception
+    {
+        final int nRate = Integer.getInteger( "dto.rate", 100 );
+        // Bytes per call, by number of attributes then benchmark
+        final Map<Integer, Map<String, Double>> allocations = new TreeMap<>( );
+        for ( final RunResult runResult : results )
+        {
+            if ( runResult.getParams( ).getMode( ) != Mode.Throughput )
+            {
+                continue;
+            }
+            runResult.getSecondaryResults( ).entrySet( ).stream( ).filter( entry -> entry.getKey( ).endsWith( GC_ALLOCATION_NORM ) ).findFirst( )
+                    .ifPresent( entry -> allocations
+                            .computeIfAbsent( Integer.valueOf( runResult.getParams( ).getParam( "nbAttributes" ) ), key -> new TreeMap<>( ) )
+                            .put( runResult.getParams( ).getBenchmark( ).replaceAll( ".*\\.", "" ), entry.getValue( ).getScore( ) ) ) );
+        }
+
+        final List<String> lines = new ArrayList<>( );
+        lines.add( "nbAttributes,benchmark,bytesPerCall,mbPerSecondAtRate" );
+        System.out.println( String.format( "%-14s %-26s %14s %16s", "Attributes", "Benchmark", "Bytes/call", "MB/s @" + nRate + "/s" ) );
+        allocations.forEach( ( nbAttributes, bytesByBenchmark ) -> {
+            bytesByBenchmark.forEach( ( benchmark, bytes ) -> {
+                lines.add( String.format( Locale.ROOT, "%d,%s,%.0f,%.3f", nbAttributes, benchmark, bytes, bytes * nRate / BYTES_PER_MB ) );
+                System.out.println( String.format( "%-14d %-26s %14.0f %16.3f", nbAttributes, benchmark, bytes, bytes * nRate / BYTES_PER_MB ) );
+            } );
+            final Double create = bytesByBenchmark.get( "create" );
+            final Double generate = bytesByBenchmark.get( "generate" );
+            final Double changeRequest = bytesByBenchmark.get( "toIdentityChangeRequest" );
+            if ( create != null && generate != null && changeRequest != null && create > generate )
+            {
+                System.out.println( String.format( "%-14d %-26s %13.1f%%", nbAttributes, "create conversion share",
+                        changeRequest * 100 / ( create - generate ) ) );
+            }
+            final Double search = bytesByBenchmark.get( "search" );
+            final Double searchRequest = bytesByBenchmark.get( "toIdentitySearchRequest" );
+            if ( search != null && searchRequest != null && search > 0 )
+            {
+                System.out.println( String.format( "%-14d %-26s %13.1f%%", nbAttributes, "search conversion share", searchRequest * 100 / search ) );
+            }
+        } );
+
+        final Path allocationFile = BenchmarkLauncher.getResultDirectory( ).resolve( ALLOCATION_FILE );
+        Files.createDirectories( allocationFile.getParent( ) );
+        Files.write( allocationFile, lines, StandardCharsets.UTF_8 );
+        System.out.println( "Allocations written to " + allocationFile );
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.dto;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.IdentityStoreTestContext;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDtoConverter;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus.IdentityGenerator;
+import fr.paris.lutece.plugins.identitystore.service.identity.IdentityService;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.RequestAuthor;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.ResponseStatus;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.crud.IdentityChangeResponse;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.IdentitySearchResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmark of the service round trips fed by the DTO conversions of {@link DtoConversionBenchmark}, for identities of 5 and 18
+ * ({@link IdentityStoreTestContext#SAMPLE_NB_ATTR}) attributes. Meant to be run with the JMH GC profiler, whose <code>gc.alloc.rate.norm</code>
+ * gives the bytes allocated per call.<br/>
+ * The identities are resized as for the conversions, with distinct keys only : a number of attributes beyond the referential is rejected. The
+ * corpus is seeded with identities resized the same way, so that the searched identities, padding included, are part of it. A create and a search
+ * are sent at setup, and the trial fails unless both succeed and the search finds an identity, so that rejected or empty requests are never
+ * measured.<br/>
+ * <code>create</code> draws a new identity for each call so that the creation rules do not reject it as a duplicate : <code>generate</code>
+ * measures that draw alone, to be subtracted.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class DtoRoundTripBenchmark
+{
+    @Param( {
+            "10000"
+    } )
+    public int corpusSize;
+
+    @Param( {
+            "5", "" + IdentityStoreTestContext.SAMPLE_NB_ATTR
+    } )
+    public int nbAttributes;
+
+    private RequestAuthor _author;
+    private List<String> _referentialKeys;
+    private IdentityGenerator _generator;
+    private final List<TestIdentity> _identities = new ArrayList<>( );
+    private final AtomicInteger _nextIndex = new AtomicInteger( );
+
+    @Setup( Level.Trial )
+    public void setUp( ) throws Exception
+    {
+        final BenchmarkStack stack = BenchmarkStack.acquire( DtoConversionBenchmark.DATA_PATH );
+        _referentialKeys = DtoConversionBenchmark.loadReferentialKeys( stack );
+        if ( nbAttributes > _referentialKeys.size( ) )
+        {
+            throw new IllegalArgumentException( "The round trips need distinct attribute keys : at most " + _referentialKeys.size( ) + " attributes, not "
+                    + nbAttributes );
+        }
+        final IdentityGenerator background = stack.newIdentityGenerator( DtoConversionBenchmark.CORPUS_SEED );
+        stack.seedCorpus( "generated-" + nbAttributes + "-attributes", corpusSize, new Iterator<TestIdentity>( )
+        {
+            @Override
+            public boolean hasNext( )
+            {
+                return background.hasNext( );
+            }
+
+            @Override
+            public TestIdentity next( )
+            {
+                return DtoConversionBenchmark.resize( background.next( ), nbAttributes, _referentialKeys );
+            }
+        } );
+        _author = stack.getAuthor( );
+
+        // Drawn from the corpus seed and resized alike : the searches target identities of the corpus, padding attributes included
+        final IdentityGenerator corpusGenerator = stack.newIdentityGenerator( DtoConversionBenchmark.CORPUS_SEED );
+        _identities.clear( );
+        for ( int i = 0; i < DtoConversionBenchmark.POOL_SIZE; i++ )
+        {
+            _identities.add( DtoConversionBenchmark.resize( corpusGenerator.next( ), nbAttributes, _referentialKeys ) );
+        }
+
+        _generator = stack.newIdentityGenerator( System.nanoTime( ) );
+        _generator.setDuplicateRate( 0 );
+        _generator.setNearDuplicateRate( 0 );
+
+        final IdentityChangeResponse createProbe = this.create( );
+        final IdentitySearchResponse searchProbe = new IdentitySearchResponse( );
+        IdentityService.instance( ).search( TestDtoConverter.toIdentitySearchRequest( _identities.get( 0 ), false ), _author, searchProbe,
+                IdentityStoreTestContext.SAMPLE_APPCODE );
+        checkProbe( "create", createProbe.getStatus( ) );
+        checkProbe( "search", searchProbe.getStatus( ) );
+        if ( searchProbe.getIdentities( ) == null || searchProbe.getIdentities( ).isEmpty( ) )
+        {
+            throw new IllegalStateException( "[" + nbAttributes + " attributes] the search of an identity of the corpus found no identity" );
+        }
+        System.out.println( "[" + nbAttributes + " attributes] create status " + createProbe.getStatus( ).getHttpCode( ) + ", search status "
+                + searchProbe.getStatus( ).getHttpCode( ) + ", " + searchProbe.getIdentities( ).size( ) + " identities" );
+    }
+
+    /**
+     * The draw of a new identity made by {@link #create()}, alone.
+     */
+    @Benchmark
+    public TestIdentity generate( )
+    {
+        return this.nextNewIdentity( );
+    }
+
+    /**
+     * Round trip of a creation : conversion of the test identity, then mapping of the request to the business objects and of the created identity
+     * back to the response by the service.
+     */
+    @Benchmark
+    public IdentityChangeResponse create( ) throws Exception
+    {
+        final IdentityChangeResponse response = new IdentityChangeResponse( );
+        IdentityService.instance( ).create( TestDtoConverter.toIdentityChangeRequest( this.nextNewIdentity( ) ), _author,
+                IdentityStoreTestContext.SAMPLE_APPCODE, response );
+        return response;
+    }
+
+    /**
+     * Round trip of a search : conversion of the test identity to a request, search by the service and conversion of the returned identities, as
+     * done by the search definitions.
+     */
+    @Benchmark
+    public List<TestIdentity> search( ) throws Exception
+    {
+        final IdentitySearchResponse response = new IdentitySearchResponse( );
+        IdentityService.instance( ).search( TestDtoConverter.toIdentitySearchRequest( this.nextIdentity( ), false ), _author, response,
+                IdentityStoreTestContext.SAMPLE_APPCODE );
+        return response.getIdentities( ).stream( ).map( TestDtoConverter::toTestIdentity ).collect( Collectors.toList( ) );
+    }
+
+    private TestIdentity nextIdentity( )
+    {
+        return _identities.get( Math.floorMod( _nextIndex.getAndIncrement( ), DtoConversionBenchmark.POOL_SIZE ) );
+    }
+
+    private TestIdentity nextNewIdentity( )
+    {
+        final TestIdentity identity;
+        synchronized( _generator )
+        {
+            identity = _generator.next( );
+        }
+        return DtoConversionBenchmark.resize( identity, nbAttributes, _referentialKeys );
+    }
+
+    private void checkProbe( final String strOperation, final ResponseStatus status )
+    {
+        if ( status == null || status.getHttpCode( ) < 200 || status.getHttpCode( ) >= 300 )
+        {
+            throw new IllegalStateException( "[" + nbAttributes + " attributes] " + strOperation + " rejected by the service : "
+                    + ( status == null ? "no status" : status.getHttpCode( ) + " - " + status.getMessage( ) ) );
+        }
+    }
+}
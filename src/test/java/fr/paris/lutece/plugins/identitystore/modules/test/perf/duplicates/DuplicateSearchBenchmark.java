@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.duplicates;
+
+import fr.paris.lutece.plugins.identitystore.modules.quality.service.SearchDuplicatesService;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDefinition;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDtoConverter;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.NearDuplicates;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.IdentityDto;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.DuplicateSearchResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmark of <code>SearchDuplicatesService.findDuplicates</code> for each duplicate rule of <code>data/duplicates/definition</code>, as the
+ * corpus and its share of near-duplicates grow. The near-duplicates are altered copies of the search requests of all the definitions, so that every
+ * rule is measured on the same corpus.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class DuplicateSearchBenchmark
+{
+    public static final String DATA_PATH = "data/duplicates";
+    private static final long CORPUS_SEED = 42L;
+
+    @Param( {
+            "10000", "100000"
+    } )
+    public int corpusSize;
+
+    @Param( {
+            "0", "0.001", "0.01"
+    } )
+    public double nearDuplicateShare;
+
+    /**
+     * Overridden by the launcher with the definition files of the rules
+     */
+    @Param( {
+            "RG_GEN_StrictDoublon_01"
+    } )
+    public String rule;
+
+    private IdentityDto _identity;
+    private List<String> _ruleCodes;
+
+    @Setup
+    public void setUp( ) throws Exception
+    {
+        final BenchmarkStack stack = BenchmarkStack.acquire( DATA_PATH );
+        final List<TestIdentity> references = stack.getDefinitions( ).values( ).stream( ).map( TestDefinition::getSearchRequest )
+                .collect( Collectors.toList( ) );
+        stack.seedCorpus( "near-duplicates-" + nearDuplicateShare, corpusSize,
+                new NearDuplicates( stack.newIdentityGenerator( CORPUS_SEED ), references, nearDuplicateShare, CORPUS_SEED ) );
+        final TestDefinition definition = stack.getDefinition( rule );
+        _ruleCodes = Collections.singletonList( stack.ensureDuplicateRule( definition.getDuplicateRule( ) ) );
+        _identity = TestDtoConverter.toIdentityDto( definition.getSearchRequest( ) );
+
+        final DuplicateSearchResponse probe = this.findDuplicates( );
+        System.out.println( "[" + rule + "] status " + probe.getStatus( ).getHttpCode( ) + ", "
+                + ( probe.getIdentities( ) != null ? probe.getIdentities( ).size( ) : 0 ) + " duplicates" );
+    }
+
+    @Benchmark
+    public DuplicateSearchResponse findDuplicates( ) throws Exception
+    {
+        return SearchDuplicatesService.instance( ).findDuplicates( _identity, _ruleCodes, Collections.emptyList( ) );
+    }
+}
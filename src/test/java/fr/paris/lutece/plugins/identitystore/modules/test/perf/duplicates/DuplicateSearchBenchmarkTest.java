@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.duplicates;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.IdentityStoreTest;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDuplicateRule;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDuplicateRuleAttributeTreatment;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkLauncher;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import junit.framework.TestCase;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Launches {@link DuplicateSearchBenchmark} for every rule of the duplicate definitions, and prints the characteristics of each rule to read the
+ * results by number of equal and missing attributes and by treatment type. Only run with the <code>perf</code> profile.
+ */
+public class DuplicateSearchBenchmarkTest extends TestCase
+{
+    public void test( ) throws Exception
+    {
+        final Map<String, TestDuplicateRule> rules = this.readRules( BenchmarkLauncher.getDefinitionDirectory( DuplicateSearchBenchmark.DATA_PATH ) );
+        System.out.println( String.format( "%-30s %8s %8s %8s  %s", "Rule", "filled", "equal", "missing", "treatments" ) );
+        rules.forEach( ( strRule, rule ) -> System.out.println( String.format( "%-30s %8d %8d %8d  %s", strRule, rule.getNbFilledAttributes( ),
+                rule.getNbEqualAttributes( ), rule.getNbMissingAttributes( ), rule.getAttributeTreatments( ).stream( )
+                        .collect( Collectors.groupingBy( TestDuplicateRuleAttributeTreatment::getType, TreeMap::new, Collectors.counting( ) ) ) ) ) );
+
+        final Map<String, String [ ]> params = new HashMap<>( );
+        params.put( "rule", rules.keySet( ).toArray( new String [ 0] ) );
+        try
+        {
+            BenchmarkLauncher.run( DuplicateSearchBenchmark.class, params );
+        }
+        finally
+        {
+            BenchmarkStack.release( );
+        }
+    }
+
+    private Map<String, TestDuplicateRule> readRules( final Path definitionDirectory ) throws Exception
+    {
+        final ObjectMapper mapper = new ObjectMapper( ).disable( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES );
+        final Map<String, TestDuplicateRule> rules = new TreeMap<>( );
+        final List<File> files;
+        try ( final Stream<Path> paths = Files.list( definitionDirectory ) )
+        {
+            files = paths.filter( path -> path.toString( ).endsWith( ".json" ) ).map( Path::toFile ).collect( Collectors.toList( ) );
+        }
+        for ( final File file : files )
+        {
+            final TestDuplicateRule rule = mapper.readValue( file, IdentityStoreTest.class ).getTestDefinition( ).getDuplicateRule( );
+            if ( rule != null )
+            {
+                rules.put( StringUtils.removeEnd( file.getName( ), ".json" ), rule );
+            }
+        }
+        return rules;
+    }
+}
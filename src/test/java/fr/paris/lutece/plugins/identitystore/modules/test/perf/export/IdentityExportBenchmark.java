@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.ThreadMXBean;
+import fr.paris.lutece.plugins.identitystore.modules.test.IdentityStoreTestContext;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkLauncher;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.QueryPlanCapture;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.load.LoadOperation;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.load.RestServiceClient;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Benchmark of the export and "updated identities" endpoints of the v3 REST service over growing corpora, for the limits capping what a call
+ * returns : <code>identitystore.export.batch.size</code>, <code>identitystore.identity.export.size.limit</code> and
+ * <code>identitystore.identity.updated.size.limit</code>.<br/>
+ * Besides the latency, the bytes allocated by the calling thread are divided by the number of identities returned, and appended to
+ * <code>IdentityExportBenchmark-memory.csv</code>. With <code>-Dperf.explain=true</code>, the plans of the slow queries of each trial are written
+ * next to it.<br/>
+ * The request bodies are built from the <code>perf/export-request.json</code> and <code>perf/updated-request.json</code> templates, whose field
+ * names follow the library version ; other templates can be given with <code>export.request.template</code> and
+ * <code>updated.request.template</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class IdentityExportBenchmark
+{
+    public static final String DATA_PATH = "data/search";
+    private static final String SQL_SELECT_CUIDS = "SELECT customer_id FROM identitystore_identity ORDER BY id_identity LIMIT ?";
+    private static final String MEMORY_FILE = "IdentityExportBenchmark-memory.csv";
+    private static final long CORPUS_SEED = 42L;
+
+    @Param( {
+            "10000", "100000"
+    } )
+    public int corpusSize;
+
+    @Param( {
+            "export", "updated"
+    } )
+    public String endpoint;
+
+    /**
+     * Number of customer ids of an export request, page size of an updated identities request
+     */
+    @Param( {
+            "100", "500"
+    } )
+    public int requestSize;
+
+    /**
+     * Value of both the export and the updated identities size limits
+     */
+    @Param( {
+            "500", "5000"
+    } )
+    public int sizeLimit;
+
+    @Param( {
+            "1000"
+    } )
+    public int exportBatchSize;
+
+    private final LongAdder _allocatedBytes = new LongAdder( );
+    private final LongAdder _returnedIdentities = new LongAdder( );
+    private final LongAdder _calls = new LongAdder( );
+    private RestServiceClient _client;
+    private LoadOperation _operation;
+    private Object _body;
+    private QueryPlanCapture _planCapture;
+
+    @Setup( Level.Trial )
+    public void setUp( ) throws Exception
+    {
+        final Map<String, String> overrides = new LinkedHashMap<>( );
+        overrides.put( "identitystore.export.batch.size", String.valueOf( exportBatchSize ) );
+        overrides.put( "identitystore.identity.export.size.limit", String.valueOf( sizeLimit ) );
+        overrides.put( "identitystore.identity.updated.size.limit", String.valueOf( sizeLimit ) );
+        final BenchmarkStack stack = BenchmarkStack.acquire( DATA_PATH, overrides );
+        stack.seedCorpus( "generated", corpusSize, stack.newIdentityGenerator( CORPUS_SEED ) );
+
+        _client = new RestServiceClient( );
+        _operation = "export".equals( endpoint ) ? LoadOperation.EXPORT : LoadOperation.UPDATED;
+        final String strTemplate = this.readTemplate( _operation == LoadOperation.EXPORT ? "export" : "updated" );
+        final String strJson = strTemplate.replace( "${cuids}", new ObjectMapper( ).writeValueAsString( this.selectCustomerIds( stack ) ) )
+                .replace( "${days}", System.getProperty( "updated.days", "1" ) ).replace( "${size}", String.valueOf( requestSize ) );
+        _body = new ObjectMapper( ).readValue( strJson, _client.getBodyType( _operation ) );
+
+        final Object probe = _client.call( _operation, null, _body, IdentityStoreTestContext.SAMPLE_APPCODE );
+        System.out.println( "[" + endpoint + "] status " + RestServiceClient.getStatus( probe ) + ", " + countIdentities( RestServiceClient.getEntity( probe ) )
+                + " identities returned" );
+        _allocatedBytes.reset( );
+        _returnedIdentities.reset( );
+        _calls.reset( );
+        _planCapture = QueryPlanCapture.start( );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown( ) throws Exception
+    {
+        final String strTrial = endpoint + "," + corpusSize + "," + requestSize + "," + sizeLimit + "," + exportBatchSize;
+        final long lCalls = _calls.sum( );
+        final long lIdentities = _returnedIdentities.sum( );
+        final String line = String.format( Locale.ROOT, "%s,%d,%.1f,%.0f", strTrial, lCalls, lCalls > 0 ? (double) lIdentities / lCalls : 0d,
+                lIdentities > 0 ? (double) _allocatedBytes.sum( ) / lIdentities : 0d );
+        System.out.println( "[" + endpoint + "] " + line );
+
+        final Path memoryFile = BenchmarkLauncher.getResultDirectory( ).resolve( MEMORY_FILE );
+        Files.createDirectories( memoryFile.getParent( ) );
+        if ( !Files.exists( memoryFile ) )
+        {
+            Files.write( memoryFile, "endpoint,corpusSize,requestSize,sizeLimit,exportBatchSize,calls,identitiesPerCall,bytesPerIdentity\n"
+                    .getBytes( StandardCharsets.UTF_8 ) );
+        }
+        Files.write( memoryFile, ( line + "\n" ).getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+        if ( _planCapture != null )
+        {
+            _planCapture.write( BenchmarkLauncher.getResultDirectory( ).resolve( "IdentityExportBenchmark-plans-" + strTrial.replace( ',', '-' ) + ".txt" ) );
+        }
+    }
+
+    @Benchmark
+    public Object call( ) throws Exception
+    {
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean( );
+        final long lThreadId = Thread.currentThread( ).getId( );
+        final long lAllocatedBefore = threads.getThreadAllocatedBytes( lThreadId );
+        final Object response = _client.call( _operation, null, _body, IdentityStoreTestContext.SAMPLE_APPCODE );
+        _allocatedBytes.add( threads.getThreadAllocatedBytes( lThreadId ) - lAllocatedBefore );
+        _returnedIdentities.add( countIdentities( RestServiceClient.getEntity( response ) ) );
+        _calls.increment( );
+        return response;
+    }
+
+    private List<String> selectCustomerIds( final BenchmarkStack stack ) throws Exception
+    {
+        final List<String> customerIds = new ArrayList<>( requestSize );
+        try ( final Connection connection = stack.getDataSource( ).getConnection( );
+                final PreparedStatement statement = connection.prepareStatement( SQL_SELECT_CUIDS ) )
+        {
+            statement.setInt( 1, requestSize );
+            try ( final ResultSet resultSet = statement.executeQuery( ) )
+            {
+                while ( resultSet.next( ) )
+                {
+                    customerIds.add( resultSet.getString( 1 ) );
+                }
+            }
+        }
+        return customerIds;
+    }
+
+    private String readTemplate( final String strName ) throws Exception
+    {
+        final String strPath = System.getProperty( strName + ".request.template" );
+        if ( strPath != null )
+        {
+            return new String( Files.readAllBytes( Paths.get( strPath ) ), StandardCharsets.UTF_8 );
+        }
+        try ( final InputStream in = IdentityExportBenchmark.class.getResourceAsStream( "/perf/" + strName + "-request.json" ) )
+        {
+            return IOUtils.toString( in, StandardCharsets.UTF_8 );
+        }
+    }
+
+    /**
+     * @return the number of identities of an export or updated identities response, found through its <code>getIdentities</code> or
+     *         <code>getUpdatedIdentityList</code> collection
+     */
+    private static int countIdentities( final Object entity ) throws ReflectiveOperationException
+    {
+        if ( entity == null )
+        {
+            return 0;
+        }
+        for ( final String strGetter : new String [ ] {
+                "getIdentities", "getUpdatedIdentityList"
+        } )
+        {
+            try
+            {
+                final Object identities = entity.getClass( ).getMethod( strGetter ).invoke( entity );
+                return identities instanceof Collection ? ( (Collection<?>) identities ).size( ) : 0;
+            }
+            catch( NoSuchMethodException e )
+            {
+                // next candidate
+            }
+        }
+        return 0;
+    }
+}
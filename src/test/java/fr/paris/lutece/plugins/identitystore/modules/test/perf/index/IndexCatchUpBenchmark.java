@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.index;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkLauncher;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.TaskRunner;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus.IdentityGenerator;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.ElasticsearchTestClient;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.RegressionGate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the catch up of the index after an Elasticsearch outage : with the Elasticsearch container paused, a backlog of identities with
+ * pending index actions is inserted in <code>identitystore_index_action</code>, then the container is resumed and the missing index task is run
+ * until the backlog is drained.<br/>
+ * For each <code>identitystore.task.missingindex.batch.size</code> and backlog size, the drained actions are sampled over time, and the time until
+ * every identity of the backlog is found by a search (without forced refresh) is measured from the resume. Each run reseeds the corpus, so that
+ * the index and the database do not grow with the backlogs of the previous runs. The settings are read from system properties :
+ * <ul>
+ * <li><code>catchup.batch.sizes</code> : the batch sizes, <code>100,1000,5000</code> by default</li>
+ * <li><code>catchup.backlog.sizes</code> : the numbers of pending actions, <code>10000,50000</code> by default</li>
+ * <li><code>catchup.repetitions</code> : the runs per combination, 1 by default</li>
+ * <li><code>catchup.task.class</code> : the task draining the backlog, the missing index task by default</li>
+ * </ul>
+ */
+public class IndexCatchUpBenchmark
+{
+    public static final String DATA_PATH = "data/search";
+    private static final String DEFAULT_TASK_CLASS = "fr.paris.lutece.plugins.identitystore.service.indexer.elastic.index.task.MissingIndexTask";
+    private static final String SQL_COUNT_INDEX_ACTIONS = "SELECT count(*) FROM identitystore_index_action";
+    private static final String SUMMARY_FILE = "IndexCatchUpBenchmark.csv";
+    private static final String CURVE_FILE = "IndexCatchUpBenchmark-curve.csv";
+    private static final int QUEUE_CHUNK_SIZE = 10000;
+    private static final int COUNT_BATCH_SIZE = 10000;
+    private static final long SAMPLING_INTERVAL_MS = 250;
+    private static final long CONSISTENCY_TIMEOUT_MS = TimeUnit.MINUTES.toMillis( 10 );
+    private static final int MAX_IDLE_RUNS = 3;
+
+    private final String _strTaskClass = System.getProperty( "catchup.task.class", DEFAULT_TASK_CLASS );
+    private final int _nRepetitions = Integer.getInteger( "catchup.repetitions", 1 );
+    private final int _nCorpusSize = Integer.getInteger( "catchup.corpus.size", 10000 );
+    private final List<String> _summary = new ArrayList<>( );
+    private final List<String> _curve = new ArrayList<>( );
+    private final Map<String, List<Double>> _throughputs = new LinkedHashMap<>( );
+
+    /**
+     * Runs every combination of the settings and writes the summary and the drain curves to the result directory.
+     *
+     * @return the summary CSV lines, header first
+     */
+    public List<String> run( ) throws Exception
+    {
+        _summary.clear( );
+        _summary.add( "batchSize,backlog,run,backlogBuildMs,catchUpMs,actionsPerSecond,taskRuns,pendingLeft,consistentMs" );
+        _curve.clear( );
+        _curve.add( "batchSize,backlog,run,elapsedMs,pending,actionsPerSecond" );
+        try
+        {
+            for ( final String strBatchSize : System.getProperty( "catchup.batch.sizes", "100,1000,5000" ).split( "," ) )
+            {
+                final BenchmarkStack stack = BenchmarkStack.acquire( DATA_PATH,
+                        Collections.singletonMap( "identitystore.task.missingindex.batch.size", strBatchSize.trim( ) ) );
+                final IdentityGenerator generator = stack.newIdentityGenerator( System.nanoTime( ) );
+                for ( final String strBacklog : System.getProperty( "catchup.backlog.sizes", "10000,50000" ).split( "," ) )
+                {
+                    for ( int nRun = 1; nRun <= _nRepetitions; nRun++ )
+                    {
+                        // Each run starts from the corpus alone : the backlog of the previous run is cleared with the corpus it was added to
+                        stack.seedCorpus( "catchup-" + strBacklog.trim( ) + "-" + nRun, _nCorpusSize, stack.newIdentityGenerator( 42L ) );
+                        this.catchUp( stack, generator, strBatchSize.trim( ) + "," + strBacklog.trim( ) + "," + nRun, Integer.parseInt( strBacklog.trim( ) ) );
+                    }
+                }
+            }
+            if ( RegressionGate.isEnabled( ) )
+            {
+                final RegressionGate gate = new RegressionGate( IndexCatchUpBenchmark.class.getSimpleName( ) );
+                _throughputs.forEach( ( key, values ) -> gate.recordMedian( key, RegressionGate.METRIC_THROUGHPUT, values ) );
+                gate.check( );
+            }
+        }
+        finally
+        {
+            BenchmarkStack.release( );
+            final Path directory = BenchmarkLauncher.getResultDirectory( );
+            Files.createDirectories( directory );
+            Files.write( directory.resolve( SUMMARY_FILE ), _summary, StandardCharsets.UTF_8 );
+            Files.write( directory.resolve( CURVE_FILE ), _curve, StandardCharsets.UTF_8 );
+            System.out.println( );
+            _summary.forEach( line -> System.out.println( line.replace( ",", "\t" ) ) );
+            System.out.println( "Index catch up results written to " + directory.resolve( SUMMARY_FILE ) + " and " + CURVE_FILE );
+        }
+        return _summary;
+    }
+
+    private void catchUp( final BenchmarkStack stack, final IdentityGenerator generator, final String strKey, final int nBacklog ) throws Exception
+    {
+        // Outage : the identities are written while Elasticsearch does not answer, their index actions stay pending
+        final long lBuildStart = System.nanoTime( );
+        final List<String> customerIds = new ArrayList<>( nBacklog );
+        stack.pauseElasticsearch( );
+        try
+        {
+            final List<TestIdentity> chunk = new ArrayList<>( QUEUE_CHUNK_SIZE );
+            while ( customerIds.size( ) + chunk.size( ) < nBacklog )
+            {
+                chunk.add( generator.next( ) );
+                if ( chunk.size( ) == QUEUE_CHUNK_SIZE || customerIds.size( ) + chunk.size( ) == nBacklog )
+                {
+                    customerIds.addAll( stack.queueIdentities( chunk ) );
+                    chunk.clear( );
+                }
+            }
+        }
+        finally
+        {
+            stack.resumeElasticsearch( );
+        }
+        final long lBuildMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - lBuildStart );
+        final long lPendingAtStart = this.countPendingActions( stack );
+        System.out.println( "[Index catch up " + strKey + "] " + lPendingAtStart + " pending index actions after " + lBuildMs + " ms of outage" );
+
+        // Catch up : the task is run until the backlog is drained, while a sampler records the drain curve
+        final long lResume = System.nanoTime( );
+        final Thread sampler = new Thread( ( ) -> this.sample( stack, strKey, lResume ), "index-catch-up-sampler" );
+        sampler.setDaemon( true );
+        sampler.start( );
+        int nTaskRuns = 0;
+        int nIdleRuns = 0;
+        long lPending = lPendingAtStart;
+        try
+        {
+            while ( lPending > 0 && nIdleRuns < MAX_IDLE_RUNS )
+            {
+                TaskRunner.run( _strTaskClass );
+                nTaskRuns++;
+                final long lRemaining = this.countPendingActions( stack );
+                nIdleRuns = lRemaining < lPending ? 0 : nIdleRuns + 1;
+                lPending = lRemaining;
+            }
+        }
+        finally
+        {
+            sampler.interrupt( );
+            sampler.join( );
+        }
+        final long lCatchUpMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - lResume );
+        final long lConsistentMs = this.awaitSearchable( stack.getElasticsearchClient( ), stack.getIndexAlias( ), customerIds, lResume );
+        if ( lPending > 0 )
+        {
+            System.out.println( "[Index catch up " + strKey + "] " + lPending + " index actions left after " + nTaskRuns + " task runs" );
+        }
+        final double dThroughput = lCatchUpMs > 0 ? ( lPendingAtStart - lPending ) * 1000d / lCatchUpMs : 0d;
+        _summary.add( String.format( Locale.ROOT, "%s,%d,%d,%.1f,%d,%d,%d", strKey, lBuildMs, lCatchUpMs, dThroughput, nTaskRuns, lPending,
+                lConsistentMs ) );
+        _throughputs.computeIfAbsent( strKey.substring( 0, strKey.lastIndexOf( ',' ) ).replace( ",", ", backlog=" ), key -> new ArrayList<>( ) )
+                .add( dThroughput );
+    }
+
+    /**
+     * Records the pending index actions and the instant drain rate until interrupted.
+     */
+    private void sample( final BenchmarkStack stack, final String strKey, final long lResume )
+    {
+        long lPreviousPending = -1;
+        long lPreviousNanos = lResume;
+        while ( !Thread.currentThread( ).isInterrupted( ) )
+        {
+            try
+            {
+                final long lPending = this.countPendingActions( stack );
+                final long lNow = System.nanoTime( );
+                final double dRate = lPreviousPending < 0 ? 0d : ( lPreviousPending - lPending ) * 1e9d / ( lNow - lPreviousNanos );
+                synchronized( _curve )
+                {
+                    _curve.add( String.format( Locale.ROOT, "%s,%d,%d,%.1f", strKey, TimeUnit.NANOSECONDS.toMillis( lNow - lResume ), lPending, dRate ) );
+                }
+                lPreviousPending = lPending;
+                lPreviousNanos = lNow;
+                Thread.sleep( SAMPLING_INTERVAL_MS );
+            }
+            catch( InterruptedException e )
+            {
+                return;
+            }
+            catch( SQLException e )
+            {
+                System.out.println( "[Index catch up] " + e.getMessage( ) );
+            }
+        }
+    }
+
+    /**
+     * Polls the alias, without forcing a refresh, until every identity of the backlog is found.
+     *
+     * @return the time from the resume of Elasticsearch to consistent search results, in milliseconds, or -1 on timeout
+     */
+    private long awaitSearchable( final ElasticsearchTestClient client, final String strAlias, final List<String> customerIds, final long lResume )
+            throws Exception
+    {
+        final long lDeadline = System.nanoTime( ) + TimeUnit.MILLISECONDS.toNanos( CONSISTENCY_TIMEOUT_MS );
+        while ( System.nanoTime( ) < lDeadline )
+        {
+            long lVisible = 0;
+            for ( int i = 0; i < customerIds.size( ); i += COUNT_BATCH_SIZE )
+            {
+                lVisible += client.countByIds( strAlias, customerIds.subList( i, Math.min( i + COUNT_BATCH_SIZE, customerIds.size( ) ) ) );
+            }
+            if ( lVisible >= customerIds.size( ) )
+            {
+                return TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - lResume );
+            }
+            Thread.sleep( SAMPLING_INTERVAL_MS );
+        }
+        return -1;
+    }
+
+    private long countPendingActions( final BenchmarkStack stack ) throws SQLException
+    {
+        try ( final Connection connection = stack.getDataSource( ).getConnection( );
+                final PreparedStatement statement = connection.prepareStatement( SQL_COUNT_INDEX_ACTIONS );
+                final ResultSet resultSet = statement.executeQuery( ) )
+        {
+            return resultSet.next( ) ? resultSet.getLong( 1 ) : 0;
+        }
+    }
+}
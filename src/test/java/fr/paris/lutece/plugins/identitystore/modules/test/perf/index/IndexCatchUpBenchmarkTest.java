@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.index;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Launches {@link IndexCatchUpBenchmark}, and checks that every backlog was drained and became searchable. Only run with the <code>perf</code>
+ * profile.
+ */
+public class IndexCatchUpBenchmarkTest extends TestCase
+{
+    public void test( ) throws Exception
+    {
+        final List<String> summary = new IndexCatchUpBenchmark( ).run( );
+        assertTrue( summary.size( ) > 1 );
+        for ( final String line : summary.subList( 1, summary.size( ) ) )
+        {
+            // pendingLeft and consistentMs are the last two columns
+            final String [ ] columns = line.split( "," );
+            assertEquals( "Index actions left by run " + line, 0, Long.parseLong( columns [7] ) );
+            assertTrue( "Backlog of run " + line + " not searchable before the timeout", Long.parseLong( columns [8] ) >= 0 );
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms of the load generator, one per operation, recorded in microseconds.<br/>
+ * The histograms are exported as percentile distributions (<code>.hgrm</code>, in milliseconds, readable by the HdrHistogram plotter), as
+ * histogram logs (<code>.hlog</code>) and as a JSON summary, so that runs can be compared.
+ */
+public class LatencyRecorder
+{
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros( 10 );
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Map<LoadOperation, Recorder> _recorders = new EnumMap<>( LoadOperation.class );
+    private final Map<LoadOperation, AtomicLong> _errors = new EnumMap<>( LoadOperation.class );
+    private final Map<LoadOperation, Histogram> _histograms = new EnumMap<>( LoadOperation.class );
+    private long _lStartTimestamp;
+
+    public LatencyRecorder( )
+    {
+        for ( final LoadOperation operation : LoadOperation.values( ) )
+        {
+            _recorders.put( operation, new Recorder( HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS ) );
+            _errors.put( operation, new AtomicLong( ) );
+        }
+        this.reset( );
+    }
+
+    /**
+     * Records a latency measured from the intended start of the operation.
+     */
+    public void record( final LoadOperation operation, final long lLatencyNanos )
+    {
+        _recorders.get( operation ).recordValue( toMicros( lLatencyNanos ) );
+    }
+
+    /**
+     * Records a latency measured from the actual start of the operation, back-filling the operations that a stalled closed loop did not send.
+     *
+     * @param lExpectedIntervalNanos
+     *            the interval between two operations at the target rate
+     */
+    public void record( final LoadOperation operation, final long lLatencyNanos, final long lExpectedIntervalNanos )
+    {
+        _recorders.get( operation ).recordValueWithExpectedInterval( toMicros( lLatencyNanos ), toMicros( lExpectedIntervalNanos ) );
+    }
+
+    public void recordError( final LoadOperation operation )
+    {
+        _errors.get( operation ).incrementAndGet( );
+    }
+
+    /**
+     * Discards what was recorded so far, at the end of the warm up.
+     */
+    public void reset( )
+    {
+        _recorders.values( ).forEach( Recorder::reset );
+        _errors.values( ).forEach( errors -> errors.set( 0 ) );
+        _histograms.clear( );
+        _lStartTimestamp = System.currentTimeMillis( );
+    }
+
+    /**
+     * @return the latencies recorded since the last reset, in microseconds
+     */
+    public synchronized Histogram getHistogram( final LoadOperation operation )
+    {
+        final Histogram interval = _recorders.get( operation ).getIntervalHistogram( );
+        interval.setStartTimeStamp( _lStartTimestamp );
+        interval.setEndTimeStamp( System.currentTimeMillis( ) );
+        return _histograms.merge( operation, interval, ( previous, next ) -> {
+            previous.add( next );
+            previous.setEndTimeStamp( next.getEndTimeStamp( ) );
+            return previous;
+        } );
+    }
+
+    public long getErrors( final LoadOperation operation )
+    {
+        return _errors.get( operation ).get( );
+    }
+
+    /**
+     * Writes the histograms and the summary of the run.
+     *
+     * @param directory
+     *            the destination directory
+     * @param dDurationSeconds
+     *            the measured duration, for the throughput
+     * @return the summary, also written to <code>summary.json</code>
+     */
+    public ObjectNode export( final Path directory, final double dDurationSeconds ) throws IOException
+    {
+        Files.createDirectories( directory );
+        final ObjectMapper mapper = new ObjectMapper( ).enable( SerializationFeature.INDENT_OUTPUT );
+        final ObjectNode summary = mapper.createObjectNode( );
+        System.out.println( String.format( "%-8s %10s %8s %10s %10s %10s %10s %10s %10s", "Endpoint", "Count", "Errors", "Ops/s", "p50 ms", "p90 ms",
+                "p99 ms", "p99.9 ms", "max ms" ) );
+        for ( final LoadOperation operation : LoadOperation.values( ) )
+        {
+            final Histogram histogram = this.getHistogram( operation );
+            if ( histogram.getTotalCount( ) == 0 && this.getErrors( operation ) == 0 )
+            {
+                continue;
+            }
+            try ( final PrintStream out = new PrintStream( Files.newOutputStream( directory.resolve( operation.getKey( ) + ".hgrm" ) ) ) )
+            {
+                histogram.outputPercentileDistribution( out, MICROS_PER_MILLI );
+            }
+            try ( final PrintStream out = new PrintStream( Files.newOutputStream( directory.resolve( operation.getKey( ) + ".hlog" ) ) ) )
+            {
+                final HistogramLogWriter writer = new HistogramLogWriter( out );
+                writer.outputLogFormatVersion( );
+                writer.outputStartTime( histogram.getStartTimeStamp( ) );
+                writer.outputLegend( );
+                writer.outputIntervalHistogram( histogram );
+            }
+            final ObjectNode node = summary.putObject( operation.getKey( ) );
+            node.put( "count", histogram.getTotalCount( ) ).put( "errors", this.getErrors( operation ) )
+                    .put( "throughput", dDurationSeconds > 0 ? histogram.getTotalCount( ) / dDurationSeconds : 0 )
+                    .put( "p50", toMillis( histogram.getValueAtPercentile( 50 ) ) ).put( "p90", toMillis( histogram.getValueAtPercentile( 90 ) ) )
+                    .put( "p95", toMillis( histogram.getValueAtPercentile( 95 ) ) )
+                    .put( "p99", toMillis( histogram.getValueAtPercentile( 99 ) ) ).put( "p999", toMillis( histogram.getValueAtPercentile( 99.9 ) ) )
+                    .put( "max", toMillis( histogram.getMaxValue( ) ) );
+            System.out.println( String.format( "%-8s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f %10.2f", operation.getKey( ), histogram.getTotalCount( ),
+                    this.getErrors( operation ), node.get( "throughput" ).asDouble( ), node.get( "p50" ).asDouble( ), node.get( "p90" ).asDouble( ),
+                    node.get( "p99" ).asDouble( ), node.get( "p999" ).asDouble( ), node.get( "max" ).asDouble( ) ) );
+        }
+        mapper.writeValue( directory.resolve( "summary.json" ).toFile( ), summary );
+        return summary;
+    }
+
+    private static long toMicros( final long lNanos )
+    {
+        return Math.min( HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros( lNanos ) );
+    }
+
+    private static double toMillis( final long lMicros )
+    {
+        return lMicros / MICROS_PER_MILLI;
+    }
+}
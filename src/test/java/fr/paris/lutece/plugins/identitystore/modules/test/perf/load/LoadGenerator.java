@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.load;
+
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.crud.IdentityChangeResponse;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.IdentitySearchResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the v3 REST service with a mix of create, update, search and get operations, in the test JVM.<br/>
+ * In open loop, operations are started at the target rate whatever the response times, and latencies are measured from their intended start, so
+ * that a stalled service does not hide the operations it delayed. In closed loop, a fixed number of virtual users send operations one after the
+ * other, paced to the target rate if any, and the latencies are corrected with the expected interval between two operations of a user.<br/>
+ * Operations run on virtual threads when the JVM provides them, on a cached thread pool otherwise.
+ */
+public class LoadGenerator
+{
+    private static final int CUSTOMER_IDS_SIZE = 10000;
+
+    private final RestServiceClient _client;
+    private final LoadPayloads _payloads;
+    private final LatencyRecorder _recorder = new LatencyRecorder( );
+    private final Map<LoadOperation, Integer> _mix = new EnumMap<>( LoadOperation.class );
+    private final List<String> _clientCodes = new ArrayList<>( );
+    private final AtomicReferenceArray<String> _customerIds = new AtomicReferenceArray<>( CUSTOMER_IDS_SIZE );
+    private final AtomicLong _lCreated = new AtomicLong( );
+    private boolean _bOpenLoop = true;
+    private double _dRate = 50;
+    private int _nConcurrency = 16;
+    private long _lDurationSeconds = 60;
+    private long _lWarmupSeconds = 10;
+    private volatile boolean _bStopped;
+
+    /**
+     * Constructor
+     *
+     * @param client
+     *            the REST service client
+     * @param payloads
+     *            the request bodies
+     */
+    public LoadGenerator( final RestServiceClient client, final LoadPayloads payloads )
+    {
+        _client = client;
+        _payloads = payloads;
+    }
+
+    /**
+     * Reads the settings from the <code>load.*</code> system properties.
+     *
+     * @return this generator
+     */
+    public LoadGenerator configureFromSystemProperties( )
+    {
+        this.setMix( System.getProperty( "load.mix", "create:20,update:10,search:50,get:20" ) );
+        _clientCodes.clear( );
+        _clientCodes.addAll( Arrays.asList( System.getProperty( "load.clientcodes", "TESTAPP1" ).split( "," ) ) );
+        _bOpenLoop = !"closed".equals( System.getProperty( "load.mode", "open" ) );
+        _dRate = Double.parseDouble( System.getProperty( "load.rate", String.valueOf( _dRate ) ) );
+        _nConcurrency = Integer.getInteger( "load.concurrency", _nConcurrency );
+        _lDurationSeconds = Long.getLong( "load.duration", _lDurationSeconds );
+        _lWarmupSeconds = Long.getLong( "load.warmup", _lWarmupSeconds );
+        return this;
+    }
+
+    /**
+     * @param strMix
+     *            the weights of the operations, e.g. <code>create:20,search:80</code>
+     * @throws IllegalArgumentException
+     *             if an entry is malformed or has a negative weight, or if all the weights are zero
+     */
+    public void setMix( final String strMix )
+    {
+        final Map<LoadOperation, Integer> mix = new EnumMap<>( LoadOperation.class );
+        for ( final String strEntry : strMix.split( "," ) )
+        {
+            final String [ ] entry = strEntry.trim( ).split( ":" );
+            if ( entry.length != 2 )
+            {
+                throw new IllegalArgumentException( "Invalid load mix entry '" + strEntry + "' in '" + strMix + "', expected operation:weight" );
+            }
+            final int nWeight = Integer.parseInt( entry [1].trim( ) );
+            if ( nWeight < 0 )
+            {
+                throw new IllegalArgumentException( "Negative weight for " + entry [0].trim( ) + " in load mix '" + strMix + "'" );
+            }
+            mix.put( LoadOperation.valueOf( entry [0].trim( ).toUpperCase( ) ), nWeight );
+        }
+        if ( mix.values( ).stream( ).mapToInt( Integer::intValue ).sum( ) <= 0 )
+        {
+            throw new IllegalArgumentException( "The load mix '" + strMix + "' has no operation with a positive weight" );
+        }
+        _mix.clear( );
+        _mix.putAll( mix );
+    }
+
+    public void setOpenLoop( final boolean bOpenLoop )
+    {
+        _bOpenLoop = bOpenLoop;
+    }
+
+    public void setRate( final double dRate )
+    {
+        _dRate = dRate;
+    }
+
+    public void setDurationSeconds( final long lDurationSeconds )
+    {
+        _lDurationSeconds = lDurationSeconds;
+    }
+
+    public void setWarmupSeconds( final long lWarmupSeconds )
+    {
+        _lWarmupSeconds = lWarmupSeconds;
+    }
+
+    /**
+     * Ends the current run before its duration, e.g. when the operation measured under load is over.
+     */
+    public void stop( )
+    {
+        _bStopped = true;
+    }
+
+    public LatencyRecorder getRecorder( )
+    {
+        return _recorder;
+    }
+
+    /**
+     * Creates identities, without recording them, so that the get and update operations have customer ids to work on.
+     */
+    public void preload( final int nbIdentities ) throws Exception
+    {
+        for ( int i = 0; i < nbIdentities; i++ )
+        {
+            this.rememberCustomerId( RestServiceClient.getEntity( _client.call( LoadOperation.CREATE, null, _payloads.newCreateRequest( ),
+                    _clientCodes.get( 0 ) ) ) );
+        }
+    }
+
+    /**
+     * Runs the warm up then the measured period, and stops sending operations.
+     *
+     * @return the recorded latencies of the measured period
+     */
+    public LatencyRecorder run( ) throws InterruptedException
+    {
+        if ( _mix.isEmpty( ) )
+        {
+            throw new IllegalStateException( "No load mix : call setMix( ) or configureFromSystemProperties( ) first" );
+        }
+        System.out.println( "[Load] " + ( _bOpenLoop ? "open loop at " + _dRate + " ops/s" : "closed loop with " + _nConcurrency + " users" + ( _dRate > 0
+                ? " at " + _dRate + " ops/s" : "" ) ) + ", mix " + _mix + ", client codes " + _clientCodes + ", warm up " + _lWarmupSeconds + " s, run "
+                + _lDurationSeconds + " s" );
+        _bStopped = false;
+        final ExecutorService executor = newExecutor( );
+        try
+        {
+            if ( _bOpenLoop )
+            {
+                this.runOpenLoop( executor );
+            }
+            else
+            {
+                this.runClosedLoop( executor );
+            }
+        }
+        finally
+        {
+            executor.shutdown( );
+            if ( !executor.awaitTermination( 1, TimeUnit.MINUTES ) )
+            {
+                System.out.println( "[Load] operations still running after the end of the run" );
+                executor.shutdownNow( );
+            }
+        }
+        return _recorder;
+    }
+
+    private void runOpenLoop( final ExecutorService executor )
+    {
+        final long lIntervalNanos = (long) ( TimeUnit.SECONDS.toNanos( 1 ) / _dRate );
+        final long lStart = System.nanoTime( );
+        final long lWarmupEnd = lStart + TimeUnit.SECONDS.toNanos( _lWarmupSeconds );
+        final long lEnd = lWarmupEnd + TimeUnit.SECONDS.toNanos( _lDurationSeconds );
+        _recorder.reset( );
+        for ( long lIntended = lStart; lIntended < lEnd && !_bStopped; lIntended += lIntervalNanos )
+        {
+            final long lWait = lIntended - System.nanoTime( );
+            if ( lWait > 0 )
+            {
+                LockSupport.parkNanos( lWait );
+            }
+            // Tagged with the phase it was scheduled in : a warm up operation completing during the measured period is not recorded
+            final long lScheduled = lIntended;
+            final boolean bMeasured = lIntended >= lWarmupEnd;
+            executor.execute( ( ) -> this.execute( lScheduled, 0, bMeasured ) );
+        }
+    }
+
+    private void runClosedLoop( final ExecutorService executor ) throws InterruptedException
+    {
+        final long lUserIntervalNanos = _dRate > 0 ? (long) ( TimeUnit.SECONDS.toNanos( 1 ) * _nConcurrency / _dRate ) : 0;
+        for ( int i = 0; i < _nConcurrency; i++ )
+        {
+            executor.execute( ( ) -> {
+                long lNext = System.nanoTime( );
+                while ( !_bStopped )
+                {
+                    final long lStart = System.nanoTime( );
+                    this.execute( lStart, lUserIntervalNanos, true );
+                    if ( lUserIntervalNanos > 0 )
+                    {
+                        lNext += lUserIntervalNanos;
+                        final long lWait = lNext - System.nanoTime( );
+                        if ( lWait > 0 )
+                        {
+                            LockSupport.parkNanos( lWait );
+                        }
+                    }
+                }
+            } );
+        }
+        this.sleepUnlessStopped( _lWarmupSeconds );
+        _recorder.reset( );
+        this.sleepUnlessStopped( _lDurationSeconds );
+        _bStopped = true;
+    }
+
+    private void sleepUnlessStopped( final long lSeconds ) throws InterruptedException
+    {
+        final long lEnd = System.nanoTime( ) + TimeUnit.SECONDS.toNanos( lSeconds );
+        while ( !_bStopped && System.nanoTime( ) < lEnd )
+        {
+            TimeUnit.MILLISECONDS.sleep( Math.min( 100, TimeUnit.NANOSECONDS.toMillis( lEnd - System.nanoTime( ) ) + 1 ) );
+        }
+    }
+
+    /**
+     * Runs one operation and records its latency from the given start, if it belongs to the measured period.
+     */
+    private void execute( final long lStartNanos, final long lExpectedIntervalNanos, final boolean bMeasured )
+    {
+        LoadOperation operation = this.pickOperation( );
+        final String strCustomerId = this.pickCustomerId( );
+        if ( strCustomerId == null && ( operation == LoadOperation.GET || operation == LoadOperation.UPDATE ) )
+        {
+            operation = LoadOperation.CREATE;
+        }
+        final String strClientCode = _clientCodes.get( ThreadLocalRandom.current( ).nextInt( _clientCodes.size( ) ) );
+        try
+        {
+            final Object response;
+            switch( operation )
+            {
+                case CREATE:
+                    response = _client.call( operation, null, _payloads.newCreateRequest( ), strClientCode );
+                    this.rememberCustomerId( RestServiceClient.getEntity( response ) );
+                    break;
+                case UPDATE:
+                    // An update needs the last update date of the identity : the read is part of the measured operation
+                    final IdentitySearchResponse current = (IdentitySearchResponse) RestServiceClient
+                            .getEntity( _client.call( LoadOperation.GET, strCustomerId, null, strClientCode ) );
+                    response = current != null && current.getIdentities( ) != null && !current.getIdentities( ).isEmpty( )
+                            ? _client.call( operation, strCustomerId, _payloads.newUpdateRequest( current.getIdentities( ).get( 0 ) ), strClientCode )
+                            : null;
+                    break;
+                case SEARCH:
+                    response = _client.call( operation, null, _payloads.newSearchRequest( ), strClientCode );
+                    break;
+                default:
+                    response = _client.call( operation, strCustomerId, null, strClientCode );
+            }
+            final long lLatencyNanos = System.nanoTime( ) - lStartNanos;
+            if ( !bMeasured )
+            {
+                return;
+            }
+            if ( response == null || RestServiceClient.getStatus( response ) >= 400 )
+            {
+                _recorder.recordError( operation );
+            }
+            if ( lExpectedIntervalNanos > 0 )
+            {
+                _recorder.record( operation, lLatencyNanos, lExpectedIntervalNanos );
+            }
+            else
+            {
+                _recorder.record( operation, lLatencyNanos );
+            }
+        }
+        catch( Exception e )
+        {
+            if ( bMeasured )
+            {
+                _recorder.recordError( operation );
+            }
+        }
+    }
+
+    private LoadOperation pickOperation( )
+    {
+        final int nTotal = _mix.values( ).stream( ).mapToInt( Integer::intValue ).sum( );
+        int nDraw = ThreadLocalRandom.current( ).nextInt( nTotal );
+        for ( final Map.Entry<LoadOperation, Integer> entry : _mix.entrySet( ) )
+        {
+            nDraw -= entry.getValue( );
+            if ( nDraw < 0 )
+            {
+                return entry.getKey( );
+            }
+        }
+        return LoadOperation.SEARCH;
+    }
+
+    private String pickCustomerId( )
+    {
+        final long lCreated = _lCreated.get( );
+        return lCreated == 0 ? null : _customerIds.get( (int) ( ThreadLocalRandom.current( ).nextLong( Math.min( lCreated, CUSTOMER_IDS_SIZE ) ) ) );
+    }
+
+    private void rememberCustomerId( final Object entity )
+    {
+        if ( entity instanceof IdentityChangeResponse && ( (IdentityChangeResponse) entity ).getCustomerId( ) != null )
+        {
+            _customerIds.set( (int) ( _lCreated.getAndIncrement( ) % CUSTOMER_IDS_SIZE ), ( (IdentityChangeResponse) entity ).getCustomerId( ) );
+        }
+    }
+
+    /**
+     * @return a virtual thread per task executor on Java 21 and later, a cached thread pool otherwise
+     */
+    private static ExecutorService newExecutor( )
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        }
+        catch( ReflectiveOperationException e )
+        {
+            System.out.println( "[Load] virtual threads unavailable on Java " + System.getProperty( "java.specification.version" )
+                    + ", using platform threads" );
+            return Executors.newCachedThreadPool( );
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.load;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus.IdentityGenerator;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.RegressionGate;
+import junit.framework.TestCase;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Runs the {@link LoadGenerator} against a seeded stack and exports the latencies to <code>target/load/&lt;load.name&gt;</code>, so that two runs
+ * can be compared with the HdrHistogram tools. Only run with the <code>perf</code> profile.
+ */
+public class LoadGeneratorTest extends TestCase
+{
+    private static final String DATA_PATH = "data/search";
+    private static final long DEFAULT_LOAD_SEED = 4242L;
+
+    public void test( ) throws Exception
+    {
+        final BenchmarkStack stack = BenchmarkStack.acquire( DATA_PATH );
+        try
+        {
+            final int nCorpusSize = Integer.getInteger( "load.corpus.size", 10000 );
+            stack.seedCorpus( "generated", nCorpusSize, stack.newIdentityGenerator( 42 ) );
+
+            // Created identities must not be rejected as duplicates of the corpus nor of each other : a seed other than the corpus one
+            final IdentityGenerator generator = stack.newIdentityGenerator( Long.getLong( "load.seed", DEFAULT_LOAD_SEED ) );
+            generator.setDuplicateRate( 0 );
+            generator.setNearDuplicateRate( 0 );
+            final LoadGenerator loadGenerator = new LoadGenerator( new RestServiceClient( ), new LoadPayloads( generator ) )
+                    .configureFromSystemProperties( );
+            loadGenerator.preload( Integer.getInteger( "load.preload", 100 ) );
+
+            final LatencyRecorder recorder = loadGenerator.run( );
+            final Path directory = Paths.get( System.getProperty( "load.dir", "target/load" ),
+                    System.getProperty( "load.name", new SimpleDateFormat( "yyyyMMdd-HHmmss" ).format( new Date( ) ) ) );
+            final ObjectNode summary = recorder.export( directory, Long.getLong( "load.duration", 60 ) );
+            System.out.println( "[Load] results written to " + directory.toAbsolutePath( ) );
+            if ( RegressionGate.isEnabled( ) )
+            {
+                final RegressionGate gate = new RegressionGate( "LoadGenerator" );
+                summary.fields( ).forEachRemaining( operation -> {
+                    gate.record( operation.getKey( ), RegressionGate.METRIC_THROUGHPUT, operation.getValue( ).path( "throughput" ).asDouble( ) );
+                    gate.record( operation.getKey( ), RegressionGate.METRIC_P95, operation.getValue( ).path( "p95" ).asDouble( ) );
+                } );
+                gate.check( );
+            }
+        }
+        finally
+        {
+            BenchmarkStack.release( );
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.load;
+
+/**
+ * Operations of the load generator, each one bound to a method of the v3 REST service. The method names can be overridden with the
+ * <code>load.method.&lt;operation&gt;</code> properties (e.g. <code>load.method.search</code>).
+ */
+public enum LoadOperation
+{
+    CREATE( "createIdentity" ),
+    UPDATE( "updateIdentity" ),
+    SEARCH( "searchIdentities" ),
+    GET( "getIdentity" ),
+    EXPORT( "exportIdentities" ),
+    UPDATED( "getUpdatedIdentities" );
+
+    private final String _strDefaultMethod;
+
+    LoadOperation( final String strDefaultMethod )
+    {
+        _strDefaultMethod = strDefaultMethod;
+    }
+
+    /**
+     * @return the name of the REST service method
+     */
+    public String getMethodName( )
+    {
+        return System.getProperty( "load.method." + this.getKey( ), _strDefaultMethod );
+    }
+
+    /**
+     * @return the lower case name used in the properties and the exported files
+     */
+    public String getKey( )
+    {
+        return this.name( ).toLowerCase( );
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.load;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDtoConverter;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus.IdentityGenerator;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.AttributeDto;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.AttributeTreatmentType;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.IdentityDto;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.crud.IdentityChangeRequest;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.IdentitySearchRequest;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Request bodies of the load generator, built from generated identities.
+ */
+public class LoadPayloads
+{
+    private static final String KEY_BIRTHDATE = "birthdate";
+    private static final String [ ] SEARCH_KEYS = {
+            "family_name", "first_name", KEY_BIRTHDATE
+    };
+
+    private final IdentityGenerator _generator;
+
+    /**
+     * Constructor
+     *
+     * @param generator
+     *            the identity source
+     */
+    public LoadPayloads( final IdentityGenerator generator )
+    {
+        _generator = generator;
+    }
+
+    public IdentityChangeRequest newCreateRequest( )
+    {
+        final IdentityChangeRequest request = new IdentityChangeRequest( );
+        request.setIdentity( TestDtoConverter.toIdentityDto( this.nextIdentity( ) ) );
+        return request;
+    }
+
+    /**
+     * @return a search on the names and birthdate of a generated identity, names being approximated and the birthdate strict
+     */
+    public IdentitySearchRequest newSearchRequest( )
+    {
+        final TestIdentity identity = this.nextIdentity( );
+        identity.setAttributes( identity.getAttributes( ).stream( ).filter( attribute -> StringUtils.equalsAny( attribute.getKey( ), SEARCH_KEYS ) )
+                .collect( Collectors.toList( ) ) );
+        identity.getAttributes( ).forEach( attribute -> attribute.setSearchType(
+                StringUtils.equals( attribute.getKey( ), KEY_BIRTHDATE ) ? AttributeTreatmentType.STRICT : AttributeTreatmentType.APPROXIMATED ) );
+        return TestDtoConverter.toIdentitySearchRequest( identity, true );
+    }
+
+    /**
+     * @param current
+     *            the identity as returned by the service, for its customer id and last update date
+     * @return a change of the mobile phone of the identity
+     */
+    public IdentityChangeRequest newUpdateRequest( final IdentityDto current )
+    {
+        final IdentityDto identity = new IdentityDto( );
+        identity.setCustomerId( current.getCustomerId( ) );
+        identity.setLastUpdateDate( current.getLastUpdateDate( ) );
+        final AttributeDto phone = new AttributeDto( );
+        phone.setKey( "mobile_phone" );
+        phone.setValue( "06" + String.format( "%08d", ThreadLocalRandom.current( ).nextInt( 100_000_000 ) ) );
+        identity.getAttributes( ).add( phone );
+        final IdentityChangeRequest request = new IdentityChangeRequest( );
+        request.setIdentity( identity );
+        return request;
+    }
+
+    private TestIdentity nextIdentity( )
+    {
+        synchronized( _generator )
+        {
+            return _generator.next( );
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.load;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Calls the v3 <code>IdentityStoreRestService</code> bean in process, as the REST layer would.<br/>
+ * The arguments are bound from the JAX-RS annotations of the resource methods rather than from their exact signatures, which differ between
+ * identitystore versions : the path parameter receives the customer id, the headers receive the client code and the author, and the parameter
+ * without annotation receives the request body.
+ */
+public class RestServiceClient
+{
+    public static final String BEAN_NAME = "identitystore.v3.identityStoreRestService";
+    private static final String AUTHOR_NAME = "load-generator";
+    private static final String AUTHOR_TYPE = "application";
+    private static final List<String> BOUND_ANNOTATIONS = Arrays.asList( "PathParam", "HeaderParam", "QueryParam", "Context" );
+
+    private final Object _service;
+    private final Map<LoadOperation, Method> _methods = new EnumMap<>( LoadOperation.class );
+
+    /**
+     * Resolves the REST service bean and its methods. The Lutece services must be initialized.
+     */
+    public RestServiceClient( )
+    {
+        _service = SpringContextService.getBean( BEAN_NAME );
+        for ( final LoadOperation operation : LoadOperation.values( ) )
+        {
+            Arrays.stream( _service.getClass( ).getMethods( ) ).filter( m -> m.getName( ).equals( operation.getMethodName( ) ) ).findFirst( )
+                    .ifPresent( method -> _methods.put( operation, method ) );
+        }
+    }
+
+    /**
+     * @return the type of the request body of the operation, e.g. to build it from JSON
+     */
+    public Class<?> getBodyType( final LoadOperation operation )
+    {
+        final Method method = this.getMethod( operation );
+        final Annotation [ ] [ ] annotations = method.getParameterAnnotations( );
+        for ( int i = 0; i < annotations.length; i++ )
+        {
+            if ( Arrays.stream( annotations [i] ).map( a -> a.annotationType( ).getSimpleName( ) ).noneMatch( BOUND_ANNOTATIONS::contains ) )
+            {
+                return method.getParameterTypes( ) [i];
+            }
+        }
+        throw new IllegalStateException( "No request body for " + method );
+    }
+
+    /**
+     * Calls the method of the operation.
+     *
+     * @param operation
+     *            the operation
+     * @param strCustomerId
+     *            the customer id of the path, if any
+     * @param body
+     *            the request body, if any
+     * @param strClientCode
+     *            the client (application) code sent in the headers
+     * @return the JAX-RS response
+     */
+    public Object call( final LoadOperation operation, final String strCustomerId, final Object body, final String strClientCode ) throws Exception
+    {
+        final Method method = this.getMethod( operation );
+        final Class<?> [ ] types = method.getParameterTypes( );
+        final Annotation [ ] [ ] annotations = method.getParameterAnnotations( );
+        final Object [ ] args = new Object [ types.length];
+        for ( int i = 0; i < types.length; i++ )
+        {
+            args [i] = bind( types [i], annotations [i], strCustomerId, body, strClientCode );
+        }
+        try
+        {
+            return method.invoke( _service, args );
+        }
+        catch( InvocationTargetException e )
+        {
+            throw e.getCause( ) instanceof Exception ? (Exception) e.getCause( ) : e;
+        }
+    }
+
+    /**
+     * @return the HTTP status of a JAX-RS response, 200 for a plain result
+     */
+    public static int getStatus( final Object response ) throws ReflectiveOperationException
+    {
+        return response != null && hasMethod( response, "getStatus" ) ? (Integer) response.getClass( ).getMethod( "getStatus" ).invoke( response )
+                : 200;
+    }
+
+    /**
+     * @return the entity of a JAX-RS response, or the plain result
+     */
+    public static Object getEntity( final Object response ) throws ReflectiveOperationException
+    {
+        return response != null && hasMethod( response, "getEntity" ) ? response.getClass( ).getMethod( "getEntity" ).invoke( response ) : response;
+    }
+
+    private Method getMethod( final LoadOperation operation )
+    {
+        final Method method = _methods.get( operation );
+        if ( method == null )
+        {
+            throw new IllegalStateException( "No method " + operation.getMethodName( ) + " on " + BEAN_NAME + ", set load.method." + operation.getKey( )
+                    + " to one of " + Arrays.stream( _service.getClass( ).getDeclaredMethods( ) ).map( Method::getName ).sorted( )
+                            .collect( Collectors.joining( ", " ) ) );
+        }
+        return method;
+    }
+
+    private static Object bind( final Class<?> type, final Annotation [ ] annotations, final String strCustomerId, final Object body,
+            final String strClientCode ) throws ReflectiveOperationException
+    {
+        for ( final Annotation annotation : annotations )
+        {
+            final String strAnnotation = annotation.annotationType( ).getSimpleName( );
+            if ( "PathParam".equals( strAnnotation ) )
+            {
+                return strCustomerId;
+            }
+            if ( "HeaderParam".equals( strAnnotation ) )
+            {
+                final String strHeader = String.valueOf( annotation.annotationType( ).getMethod( "value" ).invoke( annotation ) ).toLowerCase( );
+                if ( strHeader.contains( "author_name" ) )
+                {
+                    return AUTHOR_NAME;
+                }
+                if ( strHeader.contains( "author_type" ) )
+                {
+                    return AUTHOR_TYPE;
+                }
+                return strHeader.contains( "client" ) || strHeader.contains( "app" ) ? strClientCode : null;
+            }
+            if ( "QueryParam".equals( strAnnotation ) || "Context".equals( strAnnotation ) )
+            {
+                return null;
+            }
+        }
+        return body != null && type.isInstance( body ) ? body : null;
+    }
+
+    private static boolean hasMethod( final Object object, final String strMethod )
+    {
+        return Arrays.stream( object.getClass( ).getMethods( ) ).anyMatch( m -> m.getName( ).equals( strMethod ) && m.getParameterCount( ) == 0 );
+    }
+}
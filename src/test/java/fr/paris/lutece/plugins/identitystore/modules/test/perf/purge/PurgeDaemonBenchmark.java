@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.purge;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkLauncher;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.TaskRunner;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus.IdentityGenerator;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.load.LoadGenerator;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.load.LoadOperation;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.load.LoadPayloads;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.load.RestServiceClient;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.RegressionGate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the identity purge daemon : a corpus with a share of expired identities is seeded, then the daemon is run until no expired
+ * identity is left, for each <code>daemon.purgeIdentityDaemon.batch.limit</code>. The purged rows per second and the history rows written per purged
+ * identity are reported, with the latencies of a search and create traffic sent by the {@link LoadGenerator} before and during the purge. The
+ * attribute and history rows are counted for the expired identities only, since the concurrent creates write their own.<br/>
+ * The settings are read from system properties :
+ * <ul>
+ * <li><code>purge.batch.limits</code> : the batch limits, <code>100,1000,5000</code> by default</li>
+ * <li><code>purge.corpus.size</code> : the seeded identities, 100000 by default</li>
+ * <li><code>purge.expired.share</code> : the share of expired identities, between 0 and 1, 0.1 by default</li>
+ * <li><code>purge.load.mix</code>, <code>purge.load.rate</code> and <code>purge.load.baseline</code> : the operation mix, rate and baseline
+ * duration in seconds of the concurrent traffic, <code>search:80,create:20</code>, 20 ops/s and 30 s by default</li>
+ * <li><code>purge.repetitions</code> : the runs per batch limit, 1 by default</li>
+ * <li><code>purge.daemon.class</code> : the purge daemon</li>
+ * </ul>
+ */
+public class PurgeDaemonBenchmark
+{
+    public static final String DATA_PATH = "data/search";
+    private static final String DEFAULT_DAEMON_CLASS = "fr.paris.lutece.plugins.identitystore.service.daemon.PurgeIdentityDaemon";
+    private static final String SQL_COUNT = "SELECT count(*) FROM ";
+    private static final String SQL_COUNT_EXPIRED = "SELECT count(*) FROM identitystore_identity WHERE expiration_date < now()";
+    private static final String SQL_EXPIRE_SHARE = "UPDATE identitystore_identity SET expiration_date = now() - interval '1 day' WHERE mod(id_identity, ?) = 0";
+    // The expired identities are kept aside so that the rows they own are told apart from the rows of the concurrent creates
+    private static final String SQL_DROP_EXPIRED_IDS = "DROP TABLE IF EXISTS benchmark_expired_identity";
+    private static final String SQL_KEEP_EXPIRED_IDS = "CREATE TABLE benchmark_expired_identity AS SELECT id_identity, customer_id FROM identitystore_identity WHERE expiration_date < now()";
+    private static final String SQL_COUNT_EXPIRED_ATTRIBUTES = "SELECT count(*) FROM identitystore_identity_attribute a JOIN benchmark_expired_identity e ON e.id_identity = a.id_identity";
+    private static final String SQL_COUNT_EXPIRED_HISTORY = "SELECT ( SELECT count(*) FROM identitystore_identity_history h JOIN benchmark_expired_identity e ON e.customer_id = h.customer_id )"
+            + " + ( SELECT count(*) FROM identitystore_identity_attribute_history h JOIN benchmark_expired_identity e ON e.id_identity = h.id_identity )";
+    private static final String TABLE_IDENTITY = "identitystore_identity";
+    private static final String RESULT_FILE = "PurgeDaemonBenchmark.csv";
+    private static final int MAX_IDLE_RUNS = 3;
+
+    private final String _strDaemonClass = System.getProperty( "purge.daemon.class", DEFAULT_DAEMON_CLASS );
+    private final int _nCorpusSize = Integer.getInteger( "purge.corpus.size", 100000 );
+    private final double _dExpiredShare = Double.parseDouble( System.getProperty( "purge.expired.share", "0.1" ) );
+    private final int _nRepetitions = Integer.getInteger( "purge.repetitions", 1 );
+    private final List<String> _results = new ArrayList<>( );
+    private final Map<String, List<Double>> _throughputs = new LinkedHashMap<>( );
+
+    /**
+     * Runs the purge for every batch limit and writes the results to <code>PurgeDaemonBenchmark.csv</code> in the result directory.
+     *
+     * @return the CSV lines, header first
+     */
+    public List<String> run( ) throws Exception
+    {
+        if ( !( _dExpiredShare >= 0 && _dExpiredShare <= 1 ) )
+        {
+            throw new IllegalArgumentException( "purge.expired.share must be between 0 and 1 : " + _dExpiredShare );
+        }
+        _results.clear( );
+        _results.add( "batchLimit,run,identities,expired,purged,daemonRuns,purgeMs,identitiesPerSecond,attributeRowsPerSecond,"
+                + "historyRowsPerIdentity,searchP99BaselineMs,searchP99DuringMs,createP99BaselineMs,createP99DuringMs" );
+        try
+        {
+            for ( final String strBatchLimit : System.getProperty( "purge.batch.limits", "100,1000,5000" ).split( "," ) )
+            {
+                final BenchmarkStack stack = BenchmarkStack.acquire( DATA_PATH,
+                        Collections.singletonMap( "daemon.purgeIdentityDaemon.batch.limit", strBatchLimit.trim( ) ) );
+                for ( int nRun = 1; nRun <= _nRepetitions; nRun++ )
+                {
+                    _results.add( strBatchLimit.trim( ) + "," + nRun + "," + this.purge( stack, strBatchLimit.trim( ), nRun ) );
+                }
+            }
+            if ( RegressionGate.isEnabled( ) )
+            {
+                final RegressionGate gate = new RegressionGate( PurgeDaemonBenchmark.class.getSimpleName( ) );
+                _throughputs.forEach( ( key, values ) -> gate.recordMedian( key, RegressionGate.METRIC_THROUGHPUT, values ) );
+                gate.check( );
+            }
+        }
+        finally
+        {
+            BenchmarkStack.release( );
+            final Path resultFile = BenchmarkLauncher.getResultDirectory( ).resolve( RESULT_FILE );
+            Files.createDirectories( resultFile.getParent( ) );
+            Files.write( resultFile, _results, StandardCharsets.UTF_8 );
+            System.out.println( );
+            _results.forEach( line -> System.out.println( line.replace( ",", "\t" ) ) );
+            System.out.println( "Purge results written to " + resultFile );
+        }
+        return _results;
+    }
+
+    /**
+     * Seeds a fresh corpus, expires a share of it, and purges it under load.
+     *
+     * @return the CSV columns of the run, from the number of identities
+     */
+    private String purge( final BenchmarkStack stack, final String strBatchLimit, final int nRun ) throws Exception
+    {
+        // Each run purges its own corpus
+        stack.seedCorpus( "purge-" + strBatchLimit + "-" + nRun, _nCorpusSize, stack.newIdentityGenerator( 42L + nRun ) );
+        this.expireShare( stack );
+        final long lIdentities = this.count( stack, SQL_COUNT + TABLE_IDENTITY );
+        final long lExpired = this.count( stack, SQL_COUNT_EXPIRED );
+        final long lAttributes = this.count( stack, SQL_COUNT_EXPIRED_ATTRIBUTES );
+        final long lHistory = this.count( stack, SQL_COUNT_EXPIRED_HISTORY );
+        final Path loadDirectory = BenchmarkLauncher.getResultDirectory( ).resolve( "purge" ).resolve( strBatchLimit + "-" + nRun );
+
+        // Traffic without purge, as the baseline
+        final long lBaselineSeconds = Long.getLong( "purge.load.baseline", 30 );
+        final LoadGenerator baseline = this.newLoadGenerator( stack );
+        baseline.setWarmupSeconds( 5 );
+        baseline.setDurationSeconds( lBaselineSeconds );
+        final ObjectNode baselineSummary = baseline.run( ).export( loadDirectory.resolve( "baseline" ), lBaselineSeconds );
+
+        // Same traffic while the daemon purges the expired identities
+        final LoadGenerator during = this.newLoadGenerator( stack );
+        during.setWarmupSeconds( 0 );
+        during.setDurationSeconds( TimeUnit.HOURS.toSeconds( 1 ) );
+        final Thread load = new Thread( ( ) -> {
+            try
+            {
+                during.run( );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+            }
+        }, "purge-load" );
+        load.start( );
+        TimeUnit.SECONDS.sleep( 1 );
+
+        final long lPurgeStart = System.nanoTime( );
+        int nDaemonRuns = 0;
+        int nIdleRuns = 0;
+        long lRemaining = lExpired;
+        try
+        {
+            while ( lRemaining > 0 && nIdleRuns < MAX_IDLE_RUNS )
+            {
+                TaskRunner.run( _strDaemonClass );
+                nDaemonRuns++;
+                final long lNow = this.count( stack, SQL_COUNT_EXPIRED );
+                nIdleRuns = lNow < lRemaining ? 0 : nIdleRuns + 1;
+                lRemaining = lNow;
+            }
+        }
+        finally
+        {
+            during.stop( );
+            load.join( );
+        }
+        final long lPurgeNanos = System.nanoTime( ) - lPurgeStart;
+        final ObjectNode duringSummary = during.getRecorder( ).export( loadDirectory.resolve( "during" ), lPurgeNanos / 1e9d );
+
+        // The identities created by the concurrent traffic are not expired, and their attributes and history are not counted
+        final long lPurged = lExpired - lRemaining;
+        final long lPurgedAttributes = lAttributes - this.count( stack, SQL_COUNT_EXPIRED_ATTRIBUTES );
+        final long lHistoryWritten = this.count( stack, SQL_COUNT_EXPIRED_HISTORY ) - lHistory;
+        final double dPurgeSeconds = lPurgeNanos / 1e9d;
+        _throughputs.computeIfAbsent( "batchLimit=" + strBatchLimit, key -> new ArrayList<>( ) ).add( lPurged / dPurgeSeconds );
+        System.out.println( "[Purge, batch limit " + strBatchLimit + "] " + lPurged + "/" + lExpired + " expired identities purged in " + nDaemonRuns
+                + " daemon runs, " + lHistoryWritten + " history rows written" );
+        return String.format( Locale.ROOT, "%d,%d,%d,%d,%d,%.1f,%.1f,%.2f,%s,%s,%s,%s", lIdentities, lExpired, lPurged, nDaemonRuns,
+                TimeUnit.NANOSECONDS.toMillis( lPurgeNanos ), lPurged / dPurgeSeconds, lPurgedAttributes / dPurgeSeconds,
+                lPurged > 0 ? (double) lHistoryWritten / lPurged : 0d, p99( baselineSummary, LoadOperation.SEARCH ), p99( duringSummary, LoadOperation.SEARCH ),
+                p99( baselineSummary, LoadOperation.CREATE ), p99( duringSummary, LoadOperation.CREATE ) );
+    }
+
+    private LoadGenerator newLoadGenerator( final BenchmarkStack stack )
+    {
+        final IdentityGenerator generator = stack.newIdentityGenerator( System.nanoTime( ) );
+        generator.setDuplicateRate( 0 );
+        generator.setNearDuplicateRate( 0 );
+        final LoadGenerator loadGenerator = new LoadGenerator( new RestServiceClient( ), new LoadPayloads( generator ) ).configureFromSystemProperties( );
+        loadGenerator.setOpenLoop( true );
+        loadGenerator.setMix( System.getProperty( "purge.load.mix", "search:80,create:20" ) );
+        loadGenerator.setRate( Double.parseDouble( System.getProperty( "purge.load.rate", "20" ) ) );
+        return loadGenerator;
+    }
+
+    /**
+     * Expires one identity out of <code>1 / purge.expired.share</code>, none with a share of 0, and keeps the ids of the expired identities.
+     */
+    private void expireShare( final BenchmarkStack stack ) throws SQLException
+    {
+        try ( final Connection connection = stack.getDataSource( ).getConnection( ) )
+        {
+            if ( _dExpiredShare > 0 )
+            {
+                try ( final PreparedStatement statement = connection.prepareStatement( SQL_EXPIRE_SHARE ) )
+                {
+                    // A long modulus : a tiny share must not wrap around to a negative or null int
+                    statement.setLong( 1, Math.max( 1, Math.round( 1 / _dExpiredShare ) ) );
+                    statement.executeUpdate( );
+                }
+            }
+            try ( final Statement statement = connection.createStatement( ) )
+            {
+                statement.executeUpdate( SQL_DROP_EXPIRED_IDS );
+                statement.executeUpdate( SQL_KEEP_EXPIRED_IDS );
+            }
+        }
+    }
+
+    private long count( final BenchmarkStack stack, final String strSql ) throws SQLException
+    {
+        try ( final Connection connection = stack.getDataSource( ).getConnection( );
+                final PreparedStatement statement = connection.prepareStatement( strSql );
+                final ResultSet resultSet = statement.executeQuery( ) )
+        {
+            return resultSet.next( ) ? resultSet.getLong( 1 ) : 0;
+        }
+    }
+
+    private static String p99( final ObjectNode summary, final LoadOperation operation )
+    {
+        return summary.has( operation.getKey( ) ) ? summary.get( operation.getKey( ) ).path( "p99" ).asText( ) : "";
+    }
+}
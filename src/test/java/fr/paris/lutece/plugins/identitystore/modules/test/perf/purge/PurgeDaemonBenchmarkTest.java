@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.purge;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Launches {@link PurgeDaemonBenchmark}, and checks that every run purged all the expired identities. Only run with the <code>perf</code>
+ * profile.
+ */
+public class PurgeDaemonBenchmarkTest extends TestCase
+{
+    public void test( ) throws Exception
+    {
+        final List<String> results = new PurgeDaemonBenchmark( ).run( );
+        final boolean bExpiring = Double.parseDouble( System.getProperty( "purge.expired.share", "0.1" ) ) > 0;
+        assertTrue( results.size( ) > 1 );
+        for ( final String line : results.subList( 1, results.size( ) ) )
+        {
+            // expired and purged are the fourth and fifth columns
+            final String [ ] columns = line.split( "," );
+            assertEquals( "Expired identities of run " + line, bExpiring, Long.parseLong( columns [3] ) > 0 );
+            assertEquals( "Purged identities of run " + line, columns [3], columns [4] );
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.reindex;
+
+import fr.paris.lutece.plugins.identitystore.service.indexer.elastic.index.service.IdentityIndexer;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the index behind the identities alias while a reindex runs, to measure how long searches have no index to hit when the alias is moved
+ * to the new index.
+ */
+public class AliasSwapWatcher implements AutoCloseable
+{
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos( 2 );
+
+    private final IdentityIndexer _indexer;
+    private final String _strAlias;
+    private final Thread _thread;
+    private final String _strInitialIndex;
+    private volatile boolean _bRunning = true;
+    private volatile String _strCurrentIndex;
+    private long _lUnresolvedNanos;
+    private long _lLongestPauseNanos;
+    private int _nSwaps;
+
+    /**
+     * Constructor, starting the polling thread
+     *
+     * @param indexer
+     *            the indexer of the stack
+     * @param strAlias
+     *            the watched alias
+     */
+    public AliasSwapWatcher( final IdentityIndexer indexer, final String strAlias )
+    {
+        _indexer = indexer;
+        _strAlias = strAlias;
+        _strInitialIndex = this.resolve( );
+        _strCurrentIndex = _strInitialIndex;
+        _thread = new Thread( this::poll, "alias-swap-watcher" );
+        _thread.setDaemon( true );
+        _thread.start( );
+    }
+
+    @Override
+    public void close( ) throws InterruptedException
+    {
+        _bRunning = false;
+        _thread.join( );
+    }
+
+    public String getInitialIndex( )
+    {
+        return _strInitialIndex;
+    }
+
+    public String getCurrentIndex( )
+    {
+        return _strCurrentIndex;
+    }
+
+    /**
+     * @return the number of times the alias moved to another index
+     */
+    public int getSwaps( )
+    {
+        return _nSwaps;
+    }
+
+    /**
+     * @return the total time the alias resolved to no index, in milliseconds
+     */
+    public double getUnresolvedMs( )
+    {
+        return _lUnresolvedNanos / 1_000_000d;
+    }
+
+    /**
+     * @return the longest continuous time the alias resolved to no index, in milliseconds
+     */
+    public double getLongestPauseMs( )
+    {
+        return _lLongestPauseNanos / 1_000_000d;
+    }
+
+    private void poll( )
+    {
+        long lUnresolvedSince = 0;
+        while ( _bRunning )
+        {
+            final long lNow = System.nanoTime( );
+            final String strIndex = this.resolve( );
+            if ( strIndex == null )
+            {
+                if ( lUnresolvedSince == 0 )
+                {
+                    lUnresolvedSince = lNow;
+                }
+            }
+            else
+            {
+                if ( lUnresolvedSince != 0 )
+                {
+                    final long lPause = lNow - lUnresolvedSince;
+                    _lUnresolvedNanos += lPause;
+                    _lLongestPauseNanos = Math.max( _lLongestPauseNanos, lPause );
+                    lUnresolvedSince = 0;
+                }
+                if ( !strIndex.equals( _strCurrentIndex ) )
+                {
+                    _nSwaps++;
+                    _strCurrentIndex = strIndex;
+                }
+            }
+            final long lWait = POLL_INTERVAL_NANOS - ( System.nanoTime( ) - lNow );
+            if ( lWait > 0 )
+            {
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep( lWait );
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread( ).interrupt( );
+                    return;
+                }
+            }
+        }
+        if ( lUnresolvedSince != 0 )
+        {
+            _lUnresolvedNanos += System.nanoTime( ) - lUnresolvedSince;
+        }
+    }
+
+    private String resolve( )
+    {
+        try
+        {
+            final String strIndex = _indexer.getIndexBehindAlias( _strAlias );
+            return StringUtils.isBlank( strIndex ) ? null : strIndex;
+        }
+        catch( Exception e )
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.reindex;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkLauncher;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.TaskRunner;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.ElasticsearchTestClient;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.RegressionGate;
+import fr.paris.lutece.plugins.identitystore.service.indexer.elastic.index.service.IdentityIndexer;
+import junit.framework.AssertionFailedError;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the full reindex task : for each combination of <code>identitystore.task.reindex.batch.size</code> and retry settings, and each
+ * corpus size, the task is run on a seeded corpus and the throughput, peak heap, Elasticsearch bulk time and alias swap pause are reported.<br/>
+ * The settings are read from system properties :
+ * <ul>
+ * <li><code>reindex.corpus.sizes</code> : the corpus sizes, <code>10000,100000</code> by default</li>
+ * <li><code>reindex.batch.sizes</code> : the batch sizes, <code>500,1000,5000</code> by default</li>
+ * <li><code>reindex.retries</code> : the <code>retry.max:retry.wait</code> pairs, <code>500:1000</code> by default</li>
+ * <li><code>reindex.repetitions</code> : the runs per combination, 3 by default</li>
+ * <li><code>reindex.task.class</code> : the full reindex task</li>
+ * </ul>
+ * The library gives no timing of its database reads : they are reported, with the mapping of identities to documents, as the part of the run not
+ * spent in Elasticsearch bulk requests.
+ */
+public class FullReindexBenchmark
+{
+    public static final String DATA_PATH = "data/search";
+    private static final String DEFAULT_TASK_CLASS = "fr.paris.lutece.plugins.identitystore.service.indexer.elastic.index.task.FullIndexTask";
+    private static final String RESULT_FILE = "FullReindexBenchmark.csv";
+    private static final String CSV_HEADER = "corpusSize,batchSize,retryMax,retryWaitMs,run,durationMs,documents,docsPerSecond,peakHeapMb,esBulkMs,"
+            + "dbAndMappingMs,aliasSwaps,aliasUnresolvedMs,aliasLongestPauseMs,addAliasMs";
+    private static final long CORPUS_SEED = 42L;
+
+    private final String _strTaskClass = System.getProperty( "reindex.task.class", DEFAULT_TASK_CLASS );
+    private final int _nRepetitions = Integer.getInteger( "reindex.repetitions", 3 );
+    private final List<String> _results = new ArrayList<>( );
+    private final Map<String, List<Double>> _throughputs = new LinkedHashMap<>( );
+
+    /**
+     * Runs every combination of the settings and writes the results to <code>FullReindexBenchmark.csv</code> in the result directory.
+     *
+     * @return the CSV lines, header first
+     */
+    public List<String> run( ) throws Exception
+    {
+        _results.clear( );
+        _results.add( CSV_HEADER );
+        try
+        {
+            for ( final String strRetry : System.getProperty( "reindex.retries", "500:1000" ).split( "," ) )
+            {
+                final String [ ] retry = strRetry.trim( ).split( ":" );
+                for ( final String strBatchSize : System.getProperty( "reindex.batch.sizes", "500,1000,5000" ).split( "," ) )
+                {
+                    final Map<String, String> overrides = new LinkedHashMap<>( );
+                    overrides.put( "identitystore.task.reindex.active", "true" );
+                    overrides.put( "identitystore.task.reindex.batch.size", strBatchSize.trim( ) );
+                    overrides.put( "identitystore.task.reindex.retry.max", retry [0] );
+                    overrides.put( "identitystore.task.reindex.retry.wait", retry [1] );
+                    final BenchmarkStack stack = BenchmarkStack.acquire( DATA_PATH, overrides );
+                    for ( final String strCorpusSize : System.getProperty( "reindex.corpus.sizes", "10000,100000" ).split( "," ) )
+                    {
+                        final int nCorpusSize = Integer.parseInt( strCorpusSize.trim( ) );
+                        stack.seedCorpus( "generated", nCorpusSize, stack.newIdentityGenerator( CORPUS_SEED ) );
+                        for ( int nRun = 1; nRun <= _nRepetitions; nRun++ )
+                        {
+                            _results.add( nCorpusSize + "," + strBatchSize.trim( ) + "," + retry [0] + "," + retry [1] + "," + nRun + ","
+                                    + this.reindex( stack, nCorpusSize,
+                                            "corpusSize=" + nCorpusSize + ", batchSize=" + strBatchSize.trim( ) + ", retry=" + strRetry.trim( ) ) );
+                        }
+                    }
+                }
+            }
+            if ( RegressionGate.isEnabled( ) )
+            {
+                final RegressionGate gate = new RegressionGate( FullReindexBenchmark.class.getSimpleName( ) );
+                _throughputs.forEach( ( key, values ) -> gate.recordMedian( key, RegressionGate.METRIC_THROUGHPUT, values ) );
+                gate.check( );
+            }
+        }
+        finally
+        {
+            BenchmarkStack.release( );
+            final Path resultFile = BenchmarkLauncher.getResultDirectory( ).resolve( RESULT_FILE );
+            Files.createDirectories( resultFile.getParent( ) );
+            Files.write( resultFile, _results, StandardCharsets.UTF_8 );
+            System.out.println( );
+            _results.forEach( line -> System.out.println( line.replace( ",", "\t" ) ) );
+            System.out.println( "Full reindex results written to " + resultFile );
+        }
+        return _results;
+    }
+
+    /**
+     * Runs the full reindex task once.
+     *
+     * @param nCorpusSize
+     *            the seeded identities, all expected in the new index
+     * @param strKey
+     *            the settings of the run, as case of the regression gate
+     * @return the CSV columns of the run, from the duration
+     * @throws AssertionFailedError
+     *             if the new index does not hold the whole corpus
+     */
+    private String reindex( final BenchmarkStack stack, final int nCorpusSize, final String strKey ) throws Exception
+    {
+        final ElasticsearchTestClient client = stack.getElasticsearchClient( );
+        final IdentityIndexer indexer = new IdentityIndexer( stack.getElasticsearchUrl( ) );
+        System.gc( );
+        final List<MemoryPoolMXBean> heapPools = new ArrayList<>( );
+        for ( final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans( ) )
+        {
+            if ( pool.getType( ) == MemoryType.HEAP )
+            {
+                pool.resetPeakUsage( );
+                heapPools.add( pool );
+            }
+        }
+        final long lBulkBefore = getBulkTimeMs( client );
+
+        final long lDurationNanos;
+        final AliasSwapWatcher watcher = new AliasSwapWatcher( indexer, stack.getIndexAlias( ) );
+        try
+        {
+            lDurationNanos = TaskRunner.run( _strTaskClass );
+        }
+        finally
+        {
+            watcher.close( );
+        }
+
+        // Sum of the peaks of the heap pools : an upper bound of the peak heap, the pools not peaking at the same time
+        final long lPeakHeap = heapPools.stream( ).mapToLong( pool -> pool.getPeakUsage( ).getUsed( ) ).sum( );
+        final long lBulkMs = getBulkTimeMs( client ) - lBulkBefore;
+        final long lDurationMs = TimeUnit.NANOSECONDS.toMillis( lDurationNanos );
+        client.refresh( stack.getIndexAlias( ) );
+        final long lDocuments = client.count( stack.getIndexAlias( ) );
+        if ( lDocuments != nCorpusSize )
+        {
+            // A partial reindex would be measured as a faster one
+            throw new AssertionFailedError( "[Full reindex] " + strKey + " : " + lDocuments + " documents indexed, " + nCorpusSize + " expected" );
+        }
+
+        // Time of the alias request alone, re-pointing the alias to the index it is already on
+        final long lAddAliasStart = System.nanoTime( );
+        indexer.addAliasOnIndex( watcher.getCurrentIndex( ), stack.getIndexAlias( ) );
+        final double dAddAliasMs = ( System.nanoTime( ) - lAddAliasStart ) / 1_000_000d;
+
+        _throughputs.computeIfAbsent( strKey, key -> new ArrayList<>( ) ).add( lDurationMs > 0 ? lDocuments * 1000d / lDurationMs : 0d );
+        System.out.println( "[Full reindex] " + lDocuments + " documents in " + lDurationMs + " ms, index " + watcher.getInitialIndex( ) + " -> "
+                + watcher.getCurrentIndex( ) + ", alias unresolved " + watcher.getUnresolvedMs( ) + " ms" );
+        return String.format( Locale.ROOT, "%d,%d,%.1f,%.1f,%d,%d,%d,%.1f,%.1f,%.1f", lDurationMs, lDocuments,
+                lDurationMs > 0 ? lDocuments * 1000d / lDurationMs : 0d, lPeakHeap / 1_048_576d, lBulkMs, Math.max( 0, lDurationMs - lBulkMs ),
+                watcher.getSwaps( ), watcher.getUnresolvedMs( ), watcher.getLongestPauseMs( ), dAddAliasMs );
+    }
+
+    /**
+     * @return the total time spent by the Elasticsearch nodes in bulk requests since they started
+     */
+    private static long getBulkTimeMs( final ElasticsearchTestClient client ) throws Exception
+    {
+        long lBulkMs = 0;
+        final Iterator<JsonNode> nodes = client.readTree( client.get( "/_nodes/stats/indices/bulk" ) ).path( "nodes" ).elements( );
+        while ( nodes.hasNext( ) )
+        {
+            lBulkMs += nodes.next( ).path( "indices" ).path( "bulk" ).path( "total_time_in_millis" ).asLong( );
+        }
+        return lBulkMs;
+    }
+}
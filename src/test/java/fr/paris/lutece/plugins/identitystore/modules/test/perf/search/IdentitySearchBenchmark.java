@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.search;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.IdentityStoreTestContext;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDefinition;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDtoConverter;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.service.identity.IdentityService;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.RequestAuthor;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.IdentitySearchRequest;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.IdentitySearchResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of <code>IdentityService.search</code> for the request shapes of <code>data/search/definition</code>, over corpora of growing size.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class IdentitySearchBenchmark
+{
+    public static final String DATA_PATH = "data/search";
+    private static final long CORPUS_SEED = 42L;
+
+    @Param( {
+            "10000", "100000", "1000000"
+    } )
+    public int corpusSize;
+
+    /**
+     * Overridden by the launcher with the shapes of the definitions
+     */
+    @Param( {
+            "testCase1:strict"
+    } )
+    public String shape;
+
+    private IdentitySearchRequest _request;
+    private RequestAuthor _author;
+
+    @Setup
+    public void setUp( ) throws Exception
+    {
+        final BenchmarkStack stack = BenchmarkStack.acquire( DATA_PATH );
+        stack.seedCorpus( "generated", corpusSize, stack.newIdentityGenerator( CORPUS_SEED ) );
+        final TestDefinition definition = stack.getDefinition( SearchShape.getDefinition( shape ) );
+        _request = TestDtoConverter.toIdentitySearchRequest( SearchShape.apply( shape, definition.getSearchRequest( ) ), true );
+        _author = stack.getAuthor( );
+
+        // The status tells whether the shape is measured on a served request or on a rejected one
+        final IdentitySearchResponse probe = this.search( );
+        System.out.println( "[" + shape + "] status " + probe.getStatus( ).getHttpCode( ) + ", "
+                + ( probe.getIdentities( ) != null ? probe.getIdentities( ).size( ) : 0 ) + " identities" );
+    }
+
+    @Benchmark
+    public IdentitySearchResponse search( ) throws Exception
+    {
+        final IdentitySearchResponse response = new IdentitySearchResponse( );
+        IdentityService.instance( ).search( _request, _author, response, IdentityStoreTestContext.SAMPLE_APPCODE );
+        return response;
+    }
+}
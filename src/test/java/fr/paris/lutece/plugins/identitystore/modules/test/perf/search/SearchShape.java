@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.search;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.IdentityStoreTest;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestAttribute;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDefinition;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.modules.test.util.FileNameAlphanumericComparator;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.AttributeTreatmentType;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Search request shape benchmarked for a definition : the search request of the definition, with its name attributes searched strictly or
+ * approximately, and with or without its birthdate.<br/>
+ * A shape is written <code>&lt;definition file&gt;:&lt;variant&gt;</code>, e.g. <code>testCase3:approximated-no-birthdate</code>.
+ */
+public final class SearchShape
+{
+    public static final String STRICT = "strict";
+    public static final String APPROXIMATED = "approximated";
+    public static final String NO_BIRTHDATE_SUFFIX = "-no-birthdate";
+    private static final String SEPARATOR = ":";
+    private static final String KEY_BIRTHDATE = "birthdate";
+    private static final String [ ] NAME_KEYS = {
+            "first_name", "family_name"
+    };
+
+    private SearchShape( )
+    {
+    }
+
+    /**
+     * Lists the distinct shapes of the definitions of a directory : variants that would send the same request are listed once.
+     *
+     * @param definitionDirectory
+     *            the definition directory
+     * @return the shapes
+     */
+    public static List<String> list( final Path definitionDirectory ) throws IOException
+    {
+        final ObjectMapper mapper = new ObjectMapper( ).disable( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES );
+        final List<File> files;
+        try ( final Stream<Path> paths = Files.list( definitionDirectory ) )
+        {
+            files = paths.filter( path -> path.toString( ).endsWith( ".json" ) ).map( Path::toFile )
+                    .sorted( FileNameAlphanumericComparator.createStringComparator( ) ).collect( Collectors.toList( ) );
+        }
+        final List<String> shapes = new ArrayList<>( );
+        for ( final File file : files )
+        {
+            final TestDefinition definition = mapper.readValue( file, IdentityStoreTest.class ).getTestDefinition( );
+            if ( definition == null || definition.getSearchRequest( ) == null )
+            {
+                continue;
+            }
+            final String strDefinition = StringUtils.removeEnd( file.getName( ), ".json" );
+            final boolean bHasNames = definition.getSearchRequest( ).getAttributes( ).stream( )
+                    .anyMatch( attribute -> StringUtils.equalsAny( attribute.getKey( ), NAME_KEYS ) );
+            final boolean bHasBirthdate = definition.getSearchRequest( ).getAttributes( ).stream( )
+                    .anyMatch( attribute -> KEY_BIRTHDATE.equals( attribute.getKey( ) ) );
+            for ( final String strTreatment : bHasNames ? new String [ ] {
+                    STRICT, APPROXIMATED
+            } : new String [ ] {
+                    STRICT
+            } )
+            {
+                shapes.add( strDefinition + SEPARATOR + strTreatment );
+                if ( bHasBirthdate )
+                {
+                    shapes.add( strDefinition + SEPARATOR + strTreatment + NO_BIRTHDATE_SUFFIX );
+                }
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * @return the definition file name of the shape, without extension
+     */
+    public static String getDefinition( final String strShape )
+    {
+        return StringUtils.substringBefore( strShape, SEPARATOR );
+    }
+
+    /**
+     * Applies the variant of the shape to a search request.
+     *
+     * @param strShape
+     *            the shape
+     * @param searchRequest
+     *            the search request of the definition, left unchanged
+     * @return a copy of the search request, with the search types of the name attributes set
+     */
+    public static TestIdentity apply( final String strShape, final TestIdentity searchRequest )
+    {
+        final String strVariant = StringUtils.substringAfter( strShape, SEPARATOR );
+        final AttributeTreatmentType nameTreatment = strVariant.startsWith( APPROXIMATED ) ? AttributeTreatmentType.APPROXIMATED
+                : AttributeTreatmentType.STRICT;
+        final boolean bWithoutBirthdate = strVariant.endsWith( NO_BIRTHDATE_SUFFIX );
+        final TestIdentity shaped = new TestIdentity( );
+        shaped.setName( strShape );
+        for ( final TestAttribute attribute : searchRequest.getAttributes( ) )
+        {
+            if ( bWithoutBirthdate && KEY_BIRTHDATE.equals( attribute.getKey( ) ) )
+            {
+                continue;
+            }
+            final TestAttribute copy = new TestAttribute( );
+            copy.setKey( attribute.getKey( ) );
+            copy.setValue( attribute.getValue( ) );
+            copy.setType( attribute.getType( ) );
+            copy.setSearchType( StringUtils.equalsAny( attribute.getKey( ), NAME_KEYS ) ? nameTreatment : attribute.getSearchType( ) );
+            shaped.getAttributes( ).add( copy );
+        }
+        return shaped;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.write;
+
+import fr.paris.lutece.plugins.identitystore.modules.quality.service.SearchDuplicatesService;
+import fr.paris.lutece.plugins.identitystore.modules.test.IdentityStoreTestContext;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestDtoConverter;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkLauncher;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.BenchmarkStack;
+import fr.paris.lutece.plugins.identitystore.modules.test.perf.corpus.IdentityGenerator;
+import fr.paris.lutece.plugins.identitystore.service.identity.IdentityService;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.common.RequestAuthor;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.crud.IdentityChangeRequest;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.crud.IdentityChangeResponse;
+import fr.paris.lutece.plugins.identitystore.v3.web.rs.dto.search.DuplicateSearchResponse;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmark of the write path : <code>IdentityService.create</code> with its service contract checks, duplicate checks on the
+ * <code>identitystore.identity.duplicates.creation.rules</code>, database inserts and listeners, as the number of writer threads and the
+ * <code>identitystore.listener.pool.size</code> grow.<br/>
+ * The duplicate check of the creation rules is also measured alone, so that its share of a creation can be told apart from the inserts and
+ * synchronous listeners. The lag between a creation and the moment the identity is searchable is sampled by a {@link SearchableLagProbe} and
+ * appended to <code>IdentityCreateBenchmark-lag.csv</code> at the end of each trial.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class IdentityCreateBenchmark
+{
+    public static final String DATA_PATH = "data/search";
+    public static final String PROPERTY_LISTENER_POOL_SIZE = "identitystore.listener.pool.size";
+    private static final String PROPERTY_CREATION_RULES = "identitystore.identity.duplicates.creation.rules";
+    private static final String LAG_FILE = "IdentityCreateBenchmark-lag.csv";
+    private static final long CORPUS_SEED = 42L;
+    private static final AtomicInteger TRIALS = new AtomicInteger( );
+
+    @Param( {
+            "10000"
+    } )
+    public int corpusSize;
+
+    @Param( {
+            "2", "10", "32"
+    } )
+    public int listenerPoolSize;
+
+    private BenchmarkStack _stack;
+    private IdentityGenerator _generator;
+    private RequestAuthor _author;
+    private List<String> _creationRules;
+    private SearchableLagProbe _lagProbe;
+
+    @Setup( Level.Trial )
+    public void setUp( final BenchmarkParams params ) throws Exception
+    {
+        // The listener pool is created when the services start : a new pool size needs a new stack
+        _stack = BenchmarkStack.acquire( DATA_PATH, Collections.singletonMap( PROPERTY_LISTENER_POOL_SIZE, String.valueOf( listenerPoolSize ) ) );
+        // The previous trials grew the corpus with their creations : each trial gets its own corpus key, so that it starts from corpusSize
+        _stack.seedCorpus( "create-t" + params.getThreads( ) + "-" + TRIALS.incrementAndGet( ), corpusSize, _stack.newIdentityGenerator( CORPUS_SEED ) );
+        _author = _stack.getAuthor( );
+        _creationRules = Arrays.stream( AppPropertiesService.getProperty( PROPERTY_CREATION_RULES, "" ).split( "," ) ).map( String::trim )
+                .filter( rule -> !rule.isEmpty( ) ).collect( Collectors.toList( ) );
+
+        // Created identities are new : each trial draws from its own seed, without duplicates that the creation rules would reject
+        _generator = _stack.newIdentityGenerator( System.nanoTime( ) );
+        _generator.setDuplicateRate( 0 );
+        _generator.setNearDuplicateRate( 0 );
+        _lagProbe = new SearchableLagProbe( _stack.getElasticsearchClient( ), _stack.getIndexAlias( ), Integer.getInteger( "write.lag.sampling", 20 ) );
+
+        final IdentityChangeResponse probe = this.create( );
+        System.out.println( "[Create, listener pool " + listenerPoolSize + "] status " + probe.getStatus( ).getHttpCode( ) + ", creation rules "
+                + _creationRules );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown( final BenchmarkParams params ) throws Exception
+    {
+        _lagProbe.close( );
+        final Histogram lags = _lagProbe.getLags( );
+        final String line = String.format( "%d,%d,%d,%d,%d,%d,%d,%d,%d", corpusSize, listenerPoolSize, params.getThreads( ), lags.getTotalCount( ),
+                lags.getValueAtPercentile( 50 ), lags.getValueAtPercentile( 90 ), lags.getValueAtPercentile( 99 ), lags.getMaxValue( ),
+                _lagProbe.getTimedOut( ) );
+        System.out.println( "[Create to searchable, listener pool " + listenerPoolSize + ", " + params.getThreads( ) + " writer(s)] "
+                + lags.getTotalCount( ) + " sampled, p50 " + lags.getValueAtPercentile( 50 ) + " ms, p99 " + lags.getValueAtPercentile( 99 )
+                + " ms, max " + lags.getMaxValue( ) + " ms, " + _lagProbe.getTimedOut( ) + " timed out" );
+
+        final Path lagFile = BenchmarkLauncher.getResultDirectory( ).resolve( LAG_FILE );
+        Files.createDirectories( lagFile.getParent( ) );
+        if ( !Files.exists( lagFile ) )
+        {
+            Files.write( lagFile, "corpusSize,listenerPoolSize,threads,sampled,p50Ms,p90Ms,p99Ms,maxMs,timedOut\n".getBytes( StandardCharsets.UTF_8 ) );
+        }
+        Files.write( lagFile, ( line + "\n" ).getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+    }
+
+    @Benchmark
+    public IdentityChangeResponse create( ) throws Exception
+    {
+        final IdentityChangeRequest request = new IdentityChangeRequest( );
+        request.setIdentity( TestDtoConverter.toIdentityDto( this.nextIdentity( ) ) );
+        final IdentityChangeResponse response = new IdentityChangeResponse( );
+        IdentityService.instance( ).create( request, _author, IdentityStoreTestContext.SAMPLE_APPCODE, response );
+        _lagProbe.created( response.getCustomerId( ) );
+        return response;
+    }
+
+    /**
+     * The duplicate check made by a creation, alone.
+     */
+    @Benchmark
+    public DuplicateSearchResponse duplicateCheck( ) throws Exception
+    {
+        return SearchDuplicatesService.instance( ).findDuplicates( TestDtoConverter.toIdentityDto( this.nextIdentity( ) ), _creationRules,
+                Collections.emptyList( ) );
+    }
+
+    private TestIdentity nextIdentity( )
+    {
+        synchronized( _generator )
+        {
+            return _generator.next( );
+        }
+    }
+}
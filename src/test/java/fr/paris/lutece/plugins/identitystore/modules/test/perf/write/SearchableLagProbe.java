@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.perf.write;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.util.ElasticsearchTestClient;
+import org.HdrHistogram.Histogram;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the lag between the creation of an identity and the moment it can be found in the index, for a sample of the created identities.<br/>
+ * The index is polled without forcing a refresh, so that the lag includes the asynchronous index listener, the index actions left to the
+ * missing index task and the refresh interval of Elasticsearch.
+ */
+public class SearchableLagProbe implements AutoCloseable
+{
+    private static final long POLL_INTERVAL_MS = 20;
+    private static final long TIMEOUT_MS = TimeUnit.MINUTES.toMillis( 2 );
+
+    private final ElasticsearchTestClient _client;
+    private final String _strAlias;
+    private final int _nSampling;
+    private final AtomicLong _lCreated = new AtomicLong( );
+    private final AtomicLong _lTimedOut = new AtomicLong( );
+    private final Map<String, Long> _pending = new ConcurrentHashMap<>( );
+    private final Histogram _lags = new Histogram( TIMEOUT_MS, 3 );
+    private final Thread _thread;
+    private volatile boolean _bRunning = true;
+
+    /**
+     * Constructor, starting the polling thread
+     *
+     * @param client
+     *            the Elasticsearch client
+     * @param strAlias
+     *            the searched alias
+     * @param nSampling
+     *            one created identity out of <code>nSampling</code> is probed
+     */
+    public SearchableLagProbe( final ElasticsearchTestClient client, final String strAlias, final int nSampling )
+    {
+        _client = client;
+        _strAlias = strAlias;
+        _nSampling = Math.max( 1, nSampling );
+        _thread = new Thread( this::poll, "searchable-lag-probe" );
+        _thread.setDaemon( true );
+        _thread.start( );
+    }
+
+    /**
+     * Notifies the creation of an identity, probed if it belongs to the sample.
+     *
+     * @param strCustomerId
+     *            the customer id of the created identity
+     */
+    public void created( final String strCustomerId )
+    {
+        if ( strCustomerId != null && _lCreated.getAndIncrement( ) % _nSampling == 0 )
+        {
+            _pending.put( strCustomerId, System.nanoTime( ) );
+        }
+    }
+
+    /**
+     * Waits for the pending identities to be searchable, then stops the polling thread.
+     */
+    @Override
+    public void close( ) throws InterruptedException
+    {
+        final long lDeadline = System.nanoTime( ) + TimeUnit.MILLISECONDS.toNanos( TIMEOUT_MS );
+        while ( !_pending.isEmpty( ) && System.nanoTime( ) < lDeadline )
+        {
+            Thread.sleep( POLL_INTERVAL_MS );
+        }
+        _bRunning = false;
+        _thread.join( TimeUnit.SECONDS.toMillis( 10 ) );
+        _lTimedOut.addAndGet( _pending.size( ) );
+        _pending.clear( );
+    }
+
+    /**
+     * @return a copy of the lags, in milliseconds
+     */
+    public synchronized Histogram getLags( )
+    {
+        return _lags.copy( );
+    }
+
+    /**
+     * @return the number of probed identities not searchable within the timeout
+     */
+    public long getTimedOut( )
+    {
+        return _lTimedOut.get( );
+    }
+
+    private void poll( )
+    {
+        while ( _bRunning )
+        {
+            final Iterator<Map.Entry<String, Long>> iterator = _pending.entrySet( ).iterator( );
+            while ( iterator.hasNext( ) )
+            {
+                final Map.Entry<String, Long> entry = iterator.next( );
+                final long lLagMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - entry.getValue( ) );
+                try
+                {
+                    if ( _client.countByIds( _strAlias, Collections.singletonList( entry.getKey( ) ) ) > 0 )
+                    {
+                        synchronized( this )
+                        {
+                            _lags.recordValue( Math.min( lLagMs, TIMEOUT_MS ) );
+                        }
+                        iterator.remove( );
+                    }
+                    else
+                        if ( lLagMs > TIMEOUT_MS )
+                        {
+                            _lTimedOut.incrementAndGet( );
+                            iterator.remove( );
+                        }
+                }
+                catch( Exception e )
+                {
+                    System.out.println( "[Searchable lag] " + e.getMessage( ) );
+                }
+            }
+            try
+            {
+                Thread.sleep( POLL_INTERVAL_MS );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                return;
+            }
+        }
+    }
+}
@@ -78,7 +78,6 @@ public class SearchDuplicatesServiceTest extends IdentityStoreJsonDataTestCase
         System.out.println();
         System.out.println( "----- Execute duplicate search request -----" );
         System.out.println( "\n[Duplicate search attributes]\n" + testDefinition.getSearchRequest().getAttributes().stream().map(a -> a.getKey() + "=" + a.getValue( ) ).collect( Collectors.joining( ", " ) ) );
-        Thread.sleep( 1000 );
         final DuplicateSearchResponse response = SearchDuplicatesService.instance( ).findDuplicates( this.toIdentityDto(testDefinition.getSearchRequest()), Collections.singletonList(testDefinition.getDuplicateRule().getCode()) , Collections.emptyList() );
         System.out.println("\n[Duplicate search response status]\n " + response.getStatus().getHttpCode() + " - " + response.getStatus().getType().name() + " - " + response.getStatus().getMessage( ) );
         if( ResponseStatusType.OK == response.getStatus().getType() )
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.report;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Machine readable result of one test definition
+ */
+@JsonInclude( JsonInclude.Include.NON_NULL )
+public class DefinitionReport
+{
+    public static final String PHASE_SEEDING = "seeding";
+    public static final String PHASE_INDEX_WAIT = "indexWait";
+    public static final String PHASE_CALL = "call";
+    public static final String PHASE_COMPARISON = "comparison";
+    public static final String PHASE_CLEANUP = "cleanup";
+
+    private String name;
+    private String file;
+    private boolean success;
+    private String message;
+    private List<String> expected = new ArrayList<>( );
+    private List<String> returned = new ArrayList<>( );
+    private List<String> missing = new ArrayList<>( );
+    private List<String> extra = new ArrayList<>( );
+
+    /**
+     * Duration of each phase, in milliseconds
+     */
+    private Map<String, Long> durations = new LinkedHashMap<>( );
+
+    /**
+     * Elasticsearch searches issued by the call phase, only when the query capture is enabled
+     */
+    private List<QueryProfile> queries;
+
+    /**
+     * Top SQL statements of the seeding and call phases, only when the statements capture is enabled
+     */
+    private List<StatementStat> statements;
+
+    public String getName( )
+    {
+        return name;
+    }
+
+    public void setName( String name )
+    {
+        this.name = name;
+    }
+
+    public String getFile( )
+    {
+        return file;
+    }
+
+    public void setFile( String file )
+    {
+        this.file = file;
+    }
+
+    public boolean isSuccess( )
+    {
+        return success;
+    }
+
+    public void setSuccess( boolean success )
+    {
+        this.success = success;
+    }
+
+    public String getMessage( )
+    {
+        return message;
+    }
+
+    public void setMessage( String message )
+    {
+        this.message = message;
+    }
+
+    public List<String> getExpected( )
+    {
+        return expected;
+    }
+
+    public void setExpected( List<String> expected )
+    {
+        this.expected = expected;
+    }
+
+    public List<String> getReturned( )
+    {
+        return returned;
+    }
+
+    public void setReturned( List<String> returned )
+    {
+        this.returned = returned;
+    }
+
+    public List<String> getMissing( )
+    {
+        return missing;
+    }
+
+    public void setMissing( List<String> missing )
+    {
+        this.missing = missing;
+    }
+
+    public List<String> getExtra( )
+    {
+        return extra;
+    }
+
+    public void setExtra( List<String> extra )
+    {
+        this.extra = extra;
+    }
+
+    public List<QueryProfile> getQueries( )
+    {
+        return queries;
+    }
+
+    public void setQueries( List<QueryProfile> queries )
+    {
+        this.queries = queries;
+    }
+
+    public List<StatementStat> getStatements( )
+    {
+        return statements;
+    }
+
+    public void setStatements( List<StatementStat> statements )
+    {
+        this.statements = statements;
+    }
+
+    public Map<String, Long> getDurations( )
+    {
+        return durations;
+    }
+
+    public void setDurations( Map<String, Long> durations )
+    {
+        this.durations = durations;
+    }
+
+    /**
+     * Records the duration of a phase.
+     *
+     * @param phase
+     *            the phase name
+     * @param lNanos
+     *            the duration of the phase, in nanoseconds, as measured once by the runner for the report and the metrics
+     */
+    public void recordPhase( final String phase, final long lNanos )
+    {
+        this.durations.put( phase, TimeUnit.NANOSECONDS.toMillis( lNanos ) );
+    }
+
+    /**
+     * @return the sum of the phase durations, in milliseconds ; derived, so not serialized
+     */
+    @JsonIgnore
+    public long getTotalDuration( )
+    {
+        return this.durations.values( ).stream( ).mapToLong( Long::longValue ).sum( );
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.report;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+
+/**
+ * Timers, counters and value histograms of the phases of a JSON definition suite, exported as CSV and Prometheus text files at the end of the
+ * suite.<br/>
+ * Timers keep durations in microseconds and are exported in seconds ; histograms keep plain values, such as the number of identities seeded per
+ * definition.<br/>
+ * The parallel workers also save their raw metrics, which the coordinator merges into the metrics of the whole suite.
+ */
+public class PhaseMetrics
+{
+    public static final String TIMER_SEED_PER_IDENTITY = "seed_per_identity";
+    public static final String TIMER_INDEX_WAIT = "index_wait";
+    public static final String TIMER_CALL = "call";
+    public static final String TIMER_COMPARISON = "comparison";
+    public static final String TIMER_CLEAR_DATA = "clear_data";
+    public static final String TIMER_DEFINITIONS_LOOP = "definitions_loop";
+    public static final String COUNTER_DEFINITIONS = "definitions";
+    public static final String COUNTER_FAILED_DEFINITIONS = "failed_definitions";
+    public static final String COUNTER_SEEDED_IDENTITIES = "seeded_identities";
+    public static final String COUNTER_ALLOCATED_BYTES = "allocated_bytes";
+    public static final String HISTOGRAM_INPUTS = "inputs_per_definition";
+    public static final String HISTOGRAM_RESULTS = "results_per_definition";
+    private static final String PROMETHEUS_PREFIX = "identitystore_test_";
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros( 1 );
+    private static final double MICROS_PER_SECOND = 1e6;
+    private static final String KEY_TIMERS = "timers";
+    private static final String KEY_COUNTERS = "counters";
+    private static final String KEY_HISTOGRAMS = "histograms";
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+    private static final double [ ] QUANTILES = {
+            0.5, 0.95, 0.99
+    };
+
+    private final Map<String, Histogram> _timers = new TreeMap<>( );
+    private final Map<String, LongAdder> _counters = new TreeMap<>( );
+    private final Map<String, Histogram> _histograms = new TreeMap<>( );
+
+    /**
+     * Records a duration.
+     *
+     * @param strName
+     *            the timer name
+     * @param lNanos
+     *            the duration, in nanoseconds
+     */
+    public void recordTime( final String strName, final long lNanos )
+    {
+        this.recordTime( strName, lNanos, 1 );
+    }
+
+    /**
+     * Records the same duration several times, e.g. the mean seeding time of each identity of a batch.
+     */
+    public synchronized void recordTime( final String strName, final long lNanos, final long lCount )
+    {
+        if ( lCount > 0 )
+        {
+            _timers.computeIfAbsent( strName, name -> new Histogram( HIGHEST_TRACKABLE_MICROS, 3 ) )
+                    .recordValueWithCount( Math.min( HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros( lNanos ) ), lCount );
+        }
+    }
+
+    public synchronized void increment( final String strName, final long lDelta )
+    {
+        _counters.computeIfAbsent( strName, name -> new LongAdder( ) ).add( lDelta );
+    }
+
+    public synchronized void recordValue( final String strName, final long lValue )
+    {
+        _histograms.computeIfAbsent( strName, name -> new Histogram( 3 ) ).recordValue( Math.max( 0, lValue ) );
+    }
+
+    /**
+     * @return the number of durations recorded by the timer
+     */
+    public synchronized long getCount( final String strTimer )
+    {
+        final Histogram histogram = _timers.get( strTimer );
+        return histogram == null ? 0 : histogram.getTotalCount( );
+    }
+
+    /**
+     * @return the duration under which the given share of the durations recorded by the timer fall, in milliseconds with a microsecond precision
+     */
+    public synchronized double getPercentileMillis( final String strTimer, final double dPercentile )
+    {
+        final Histogram histogram = _timers.get( strTimer );
+        return histogram == null ? Double.NaN : histogram.getValueAtPercentile( dPercentile ) / 1000d;
+    }
+
+    /**
+     * @return the mean of the durations recorded by the timer, in milliseconds with a microsecond precision
+     */
+    public synchronized double getMeanMillis( final String strTimer )
+    {
+        final Histogram histogram = _timers.get( strTimer );
+        return histogram == null ? Double.NaN : histogram.getMean( ) / 1000d;
+    }
+
+    public synchronized long getCounter( final String strCounter )
+    {
+        final LongAdder counter = _counters.get( strCounter );
+        return counter == null ? 0 : counter.sum( );
+    }
+
+    public synchronized boolean isEmpty( )
+    {
+        return _timers.isEmpty( ) && _counters.isEmpty( ) && _histograms.isEmpty( );
+    }
+
+    /**
+     * Saves the raw metrics, histograms included, so that they can be merged by {@link #merge(Path)}.
+     *
+     * @param file
+     *            the destination file
+     */
+    public synchronized void save( final Path file ) throws IOException
+    {
+        final ObjectNode root = MAPPER.createObjectNode( );
+        final ObjectNode timers = root.putObject( KEY_TIMERS );
+        _timers.forEach( ( name, histogram ) -> timers.put( name, encode( histogram ) ) );
+        final ObjectNode counters = root.putObject( KEY_COUNTERS );
+        _counters.forEach( ( name, counter ) -> counters.put( name, counter.sum( ) ) );
+        final ObjectNode histograms = root.putObject( KEY_HISTOGRAMS );
+        _histograms.forEach( ( name, histogram ) -> histograms.put( name, encode( histogram ) ) );
+        Files.createDirectories( file.getParent( ) );
+        MAPPER.writeValue( file.toFile( ), root );
+    }
+
+    /**
+     * Adds the metrics saved by {@link #save(Path)} to these ones.
+     *
+     * @param file
+     *            the saved metrics
+     */
+    public synchronized void merge( final Path file ) throws IOException
+    {
+        final JsonNode root = MAPPER.readTree( file.toFile( ) );
+        final Iterator<Map.Entry<String, JsonNode>> timers = root.path( KEY_TIMERS ).fields( );
+        while ( timers.hasNext( ) )
+        {
+            final Map.Entry<String, JsonNode> timer = timers.next( );
+            _timers.computeIfAbsent( timer.getKey( ), name -> new Histogram( HIGHEST_TRACKABLE_MICROS, 3 ) ).add( decode( timer.getValue( ), file ) );
+        }
+        root.path( KEY_COUNTERS ).fields( ).forEachRemaining( counter -> this.increment( counter.getKey( ), counter.getValue( ).asLong( ) ) );
+        final Iterator<Map.Entry<String, JsonNode>> histograms = root.path( KEY_HISTOGRAMS ).fields( );
+        while ( histograms.hasNext( ) )
+        {
+            final Map.Entry<String, JsonNode> histogram = histograms.next( );
+            _histograms.computeIfAbsent( histogram.getKey( ), name -> new Histogram( 3 ) ).add( decode( histogram.getValue( ), file ) );
+        }
+    }
+
+    private static String encode( final Histogram histogram )
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate( histogram.getNeededByteBufferCapacity( ) );
+        final int nLength = histogram.encodeIntoCompressedByteBuffer( buffer );
+        return Base64.getEncoder( ).encodeToString( Arrays.copyOf( buffer.array( ), nLength ) );
+    }
+
+    private static Histogram decode( final JsonNode value, final Path file ) throws IOException
+    {
+        try
+        {
+            return Histogram.decodeFromCompressedByteBuffer( ByteBuffer.wrap( Base64.getDecoder( ).decode( value.asText( ) ) ), 0 );
+        }
+        catch( DataFormatException | IllegalArgumentException e )
+        {
+            throw new IOException( "Invalid histogram in " + file, e );
+        }
+    }
+
+    /**
+     * Writes <code>&lt;suite&gt;-metrics.csv</code> and <code>&lt;suite&gt;-metrics.prom</code> in the given directory.
+     *
+     * @param directory
+     *            the report directory
+     * @param strSuiteName
+     *            the suite name, used as file prefix and as <code>suite</code> label
+     */
+    public synchronized void export( final Path directory, final String strSuiteName ) throws IOException
+    {
+        Files.createDirectories( directory );
+        final List<String> csv = new ArrayList<>( );
+        final List<String> prometheus = new ArrayList<>( );
+        csv.add( "type,name,count,sum,mean,p50,p95,p99,max" );
+        final String strLabels = "suite=\"" + strSuiteName + "\"";
+
+        prometheus.add( "# TYPE " + PROMETHEUS_PREFIX + "phase_seconds summary" );
+        _timers.forEach( ( name, histogram ) -> {
+            final double dSum = histogram.getMean( ) * histogram.getTotalCount( ) / MICROS_PER_SECOND;
+            csv.add( String.format( Locale.ROOT, "timer_seconds,%s,%d,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f", name, histogram.getTotalCount( ), dSum,
+                    histogram.getMean( ) / MICROS_PER_SECOND, histogram.getValueAtPercentile( 50 ) / MICROS_PER_SECOND,
+                    histogram.getValueAtPercentile( 95 ) / MICROS_PER_SECOND, histogram.getValueAtPercentile( 99 ) / MICROS_PER_SECOND,
+                    histogram.getMaxValue( ) / MICROS_PER_SECOND ) );
+            final String strPhaseLabels = strLabels + ",phase=\"" + name + "\"";
+            for ( final double dQuantile : QUANTILES )
+            {
+                prometheus.add( String.format( Locale.ROOT, "%sphase_seconds{%s,quantile=\"%s\"} %.6f", PROMETHEUS_PREFIX, strPhaseLabels, dQuantile,
+                        histogram.getValueAtPercentile( dQuantile * 100 ) / MICROS_PER_SECOND ) );
+            }
+            prometheus.add( String.format( Locale.ROOT, "%sphase_seconds_sum{%s} %.6f", PROMETHEUS_PREFIX, strPhaseLabels, dSum ) );
+            prometheus.add( String.format( Locale.ROOT, "%sphase_seconds_count{%s} %d", PROMETHEUS_PREFIX, strPhaseLabels, histogram.getTotalCount( ) ) );
+        } );
+
+        _counters.forEach( ( name, counter ) -> {
+            csv.add( "counter," + name + ",," + counter.sum( ) + ",,,,," );
+            prometheus.add( "# TYPE " + PROMETHEUS_PREFIX + name + "_total counter" );
+            prometheus.add( PROMETHEUS_PREFIX + name + "_total{" + strLabels + "} " + counter.sum( ) );
+        } );
+
+        _histograms.forEach( ( name, histogram ) -> {
+            final long lSum = Math.round( histogram.getMean( ) * histogram.getTotalCount( ) );
+            csv.add( String.format( Locale.ROOT, "histogram,%s,%d,%d,%.2f,%d,%d,%d,%d", name, histogram.getTotalCount( ), lSum, histogram.getMean( ),
+                    histogram.getValueAtPercentile( 50 ), histogram.getValueAtPercentile( 95 ), histogram.getValueAtPercentile( 99 ),
+                    histogram.getMaxValue( ) ) );
+            prometheus.add( "# TYPE " + PROMETHEUS_PREFIX + name + " summary" );
+            for ( final double dQuantile : QUANTILES )
+            {
+                prometheus.add( String.format( Locale.ROOT, "%s%s{%s,quantile=\"%s\"} %d", PROMETHEUS_PREFIX, name, strLabels, dQuantile,
+                        histogram.getValueAtPercentile( dQuantile * 100 ) ) );
+            }
+            prometheus.add( PROMETHEUS_PREFIX + name + "_sum{" + strLabels + "} " + lSum );
+            prometheus.add( PROMETHEUS_PREFIX + name + "_count{" + strLabels + "} " + histogram.getTotalCount( ) );
+        } );
+
+        Files.write( directory.resolve( strSuiteName + "-metrics.csv" ), csv, StandardCharsets.UTF_8 );
+        Files.write( directory.resolve( strSuiteName + "-metrics.prom" ), prometheus, StandardCharsets.UTF_8 );
+    }
+}
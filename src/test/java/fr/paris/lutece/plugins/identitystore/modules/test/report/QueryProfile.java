@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.report;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Elasticsearch search issued while running a definition, with the result of its profiled replay
+ */
+@JsonInclude( JsonInclude.Include.NON_NULL )
+public class QueryProfile
+{
+    private String index;
+    private JsonNode query;
+
+    /**
+     * Duration reported by Elasticsearch for the profiled replay, in milliseconds
+     */
+    private long took;
+    private long hits;
+    private JsonNode profile;
+
+    public String getIndex( )
+    {
+        return index;
+    }
+
+    public void setIndex( String index )
+    {
+        this.index = index;
+    }
+
+    public JsonNode getQuery( )
+    {
+        return query;
+    }
+
+    public void setQuery( JsonNode query )
+    {
+        this.query = query;
+    }
+
+    public long getTook( )
+    {
+        return took;
+    }
+
+    public void setTook( long took )
+    {
+        this.took = took;
+    }
+
+    public long getHits( )
+    {
+        return hits;
+    }
+
+    public void setHits( long hits )
+    {
+        this.hits = hits;
+    }
+
+    public JsonNode getProfile( )
+    {
+        return profile;
+    }
+
+    public void setProfile( JsonNode profile )
+    {
+        this.profile = profile;
+    }
+}
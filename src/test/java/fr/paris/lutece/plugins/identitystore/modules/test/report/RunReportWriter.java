@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.report;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.text.StringEscapeUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes one JSON line per test definition, from a background thread so that the runner never waits on the disk, and a JUnit XML summary when
+ * closed.<br/>
+ * Reports are written in <code>target/identitystore-reports</code>, or in the directory given by <code>-Dreport.dir</code>.
+ */
+public class RunReportWriter implements AutoCloseable
+{
+    private static final String DEFAULT_REPORT_DIR = "target/identitystore-reports";
+
+    private final ObjectMapper _mapper = new ObjectMapper( );
+    private final ExecutorService _executor = Executors.newSingleThreadExecutor( runnable -> {
+        final Thread thread = new Thread( runnable, "identitystore-report-writer" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+    private final List<DefinitionReport> _reports = new ArrayList<>( );
+    private final AtomicReference<IOException> _writeError = new AtomicReference<>( );
+    private final String _strSuiteName;
+    private final Path _jsonLinesPath;
+    private final Path _junitXmlPath;
+    private final BufferedWriter _writer;
+
+    /**
+     * Constructor
+     *
+     * @param strSuiteName
+     *            the suite name, used as file name
+     */
+    public RunReportWriter( final String strSuiteName ) throws IOException
+    {
+        _strSuiteName = strSuiteName;
+        final Path dir = getReportDirectory( );
+        Files.createDirectories( dir );
+        _jsonLinesPath = dir.resolve( strSuiteName + ".jsonl" );
+        _junitXmlPath = dir.resolve( "TEST-" + strSuiteName + ".xml" );
+        _writer = Files.newBufferedWriter( _jsonLinesPath, StandardCharsets.UTF_8 );
+    }
+
+    public static Path getReportDirectory( )
+    {
+        return Paths.get( System.getProperty( "report.dir", DEFAULT_REPORT_DIR ) ).toAbsolutePath( );
+    }
+
+    /**
+     * Queues the report of a definition.
+     */
+    public void write( final DefinitionReport report )
+    {
+        synchronized( _reports )
+        {
+            _reports.add( report );
+        }
+        _executor.execute( ( ) -> {
+            try
+            {
+                _writer.write( _mapper.writeValueAsString( report ) );
+                _writer.newLine( );
+            }
+            catch( IOException e )
+            {
+                // Rethrown by close( ), the executor would only log it
+                _writeError.compareAndSet( null, e );
+            }
+        } );
+    }
+
+    /**
+     * Reads the reports written by another writer, for instance by a parallel worker.
+     */
+    public static List<DefinitionReport> read( final Path jsonLinesPath ) throws IOException
+    {
+        // Reports written by another version of the harness may carry fields unknown to this one
+        final ObjectMapper mapper = new ObjectMapper( ).disable( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES );
+        final List<DefinitionReport> reports = new ArrayList<>( );
+        try ( final BufferedReader reader = Files.newBufferedReader( jsonLinesPath, StandardCharsets.UTF_8 ) )
+        {
+            String line;
+            while ( ( line = reader.readLine( ) ) != null )
+            {
+                if ( !line.isEmpty( ) )
+                {
+                    reports.add( mapper.readValue( line, DefinitionReport.class ) );
+                }
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Flushes the pending JSON lines and writes the JUnit XML summary.
+     *
+     * @throws IOException
+     *             if the pending JSON lines are not written within a minute, or the first error met while writing them
+     */
+    @Override
+    public void close( ) throws IOException, InterruptedException
+    {
+        _executor.shutdown( );
+        try
+        {
+            if ( !_executor.awaitTermination( 1, TimeUnit.MINUTES ) )
+            {
+                _executor.shutdownNow( );
+                throw new IOException( "Timed out writing the reports to " + _jsonLinesPath );
+            }
+        }
+        finally
+        {
+            _writer.close( );
+        }
+        this.writeJUnitXml( );
+        System.out.println( "Reports: " + _jsonLinesPath + ", " + _junitXmlPath );
+        if ( _writeError.get( ) != null )
+        {
+            throw new IOException( "Cannot write the reports to " + _jsonLinesPath, _writeError.get( ) );
+        }
+    }
+
+    private void writeJUnitXml( ) throws IOException
+    {
+        final long nbFailures = _reports.stream( ).filter( report -> !report.isSuccess( ) ).count( );
+        final long totalDuration = _reports.stream( ).mapToLong( DefinitionReport::getTotalDuration ).sum( );
+        try ( final BufferedWriter xml = Files.newBufferedWriter( _junitXmlPath, StandardCharsets.UTF_8 ) )
+        {
+            xml.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+            xml.write( "<testsuite name=\"" + escape( _strSuiteName ) + "\" tests=\"" + _reports.size( ) + "\" failures=\"" + nbFailures
+                    + "\" errors=\"0\" time=\"" + toSeconds( totalDuration ) + "\">\n" );
+            for ( final DefinitionReport report : _reports )
+            {
+                xml.write( "  <testcase classname=\"" + escape( _strSuiteName ) + "\" name=\"" + escape( report.getName( ) ) + "\" time=\""
+                        + toSeconds( report.getTotalDuration( ) ) + "\"" );
+                if ( report.isSuccess( ) )
+                {
+                    xml.write( "/>\n" );
+                }
+                else
+                {
+                    xml.write( ">\n    <failure message=\"" + escape( "missing: " + report.getMissing( ) + ", extra: " + report.getExtra( ) ) + "\">"
+                            + escape( report.getMessage( ) ) + "</failure>\n  </testcase>\n" );
+                }
+            }
+            xml.write( "</testsuite>\n" );
+        }
+    }
+
+    private static String escape( final String value )
+    {
+        return value == null ? "" : StringEscapeUtils.escapeXml10( value );
+    }
+
+    private static String toSeconds( final long lMillis )
+    {
+        return String.format( Locale.ROOT, "%.3f", lMillis / 1000d );
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.report;
+
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads back the reports written by a {@link RunReportWriter}, as the parallel coordinator does with the reports of its workers.
+ */
+public class RunReportWriterTest extends TestCase
+{
+    public void testWriteThenRead( ) throws Exception
+    {
+        final Path dir = Files.createTempDirectory( "identitystore-reports" );
+        final String previousDir = System.getProperty( "report.dir" );
+        System.setProperty( "report.dir", dir.toString( ) );
+        try
+        {
+            final DefinitionReport report = new DefinitionReport( );
+            report.setName( "definition" );
+            report.setFile( "definition.json" );
+            report.setSuccess( false );
+            report.setMessage( "missing identity" );
+            report.setExpected( Arrays.asList( "A", "B" ) );
+            report.setReturned( Collections.singletonList( "A" ) );
+            report.setMissing( Collections.singletonList( "B" ) );
+            report.getDurations( ).put( DefinitionReport.PHASE_SEEDING, 12L );
+            report.getDurations( ).put( DefinitionReport.PHASE_CALL, 3L );
+            final StatementStat statement = new StatementStat( );
+            statement.setQuery( "SELECT 1" );
+            statement.setCalls( 2 );
+            report.setStatements( Collections.singletonList( statement ) );
+
+            try ( final RunReportWriter writer = new RunReportWriter( "RoundTrip" ) )
+            {
+                writer.write( report );
+            }
+
+            final List<DefinitionReport> reports = RunReportWriter.read( dir.resolve( "RoundTrip.jsonl" ) );
+            assertEquals( 1, reports.size( ) );
+            final DefinitionReport read = reports.get( 0 );
+            assertEquals( "definition", read.getName( ) );
+            assertEquals( "definition.json", read.getFile( ) );
+            assertFalse( read.isSuccess( ) );
+            assertEquals( "missing identity", read.getMessage( ) );
+            assertEquals( report.getExpected( ), read.getExpected( ) );
+            assertEquals( report.getReturned( ), read.getReturned( ) );
+            assertEquals( report.getMissing( ), read.getMissing( ) );
+            assertEquals( report.getDurations( ), read.getDurations( ) );
+            assertEquals( 15L, read.getTotalDuration( ) );
+            assertEquals( 1, read.getStatements( ).size( ) );
+            assertEquals( 2L, read.getStatements( ).get( 0 ).getCalls( ) );
+        }
+        finally
+        {
+            if ( previousDir == null )
+            {
+                System.clearProperty( "report.dir" );
+            }
+            else
+            {
+                System.setProperty( "report.dir", previousDir );
+            }
+        }
+    }
+}
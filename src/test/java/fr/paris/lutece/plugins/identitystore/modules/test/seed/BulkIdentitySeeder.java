@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.seed;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestAttribute;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.TestIdentity;
+import fr.paris.lutece.plugins.identitystore.service.indexer.elastic.index.task.MissingIndexTask;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeds identities without going through the identity service : identities, certificates and attributes are inserted with JDBC batches, then one
+ * index action per identity is queued and the missing index task pushes the documents to Elasticsearch in bulk.<br/>
+ * No duplicate check, history or contract validation is performed : use it for the corpus surrounding the identities under test.
+ */
+public class BulkIdentitySeeder
+{
+    private static final String SQL_SELECT_ATTRIBUTE_KEYS = "SELECT id_attribute, key_name FROM identitystore_ref_attribute";
+    private static final String SQL_INSERT_IDENTITY = "INSERT INTO identitystore_identity ( connection_id, customer_id, date_create, last_update_date, expiration_date ) VALUES ( ?, ?, ?, ?, ? )";
+    private static final String SQL_INSERT_CERTIFICATE = "INSERT INTO identitystore_identity_attribute_certificate ( certifier_code, certificate_date ) VALUES ( ?, ? )";
+    private static final String SQL_INSERT_ATTRIBUTE = "INSERT INTO identitystore_identity_attribute ( id_identity, id_attribute, attribute_value, id_certification, lastupdate_date, lastupdate_client ) VALUES ( ?, ?, ?, ?, ?, ? )";
+    private static final String SQL_INSERT_INDEX_ACTION = "INSERT INTO identitystore_index_action ( customer_id, action_type ) VALUES ( ?, ? )";
+    private static final String INDEX_ACTION_CREATE = "CREATE";
+    private static final String COLUMN_ID_IDENTITY = "id_identity";
+    private static final String COLUMN_ID_CERTIFICATE = "id_attribute_certificate";
+    private static final int DATA_RETENTION_PERIOD_IN_MONTHS = 24;
+    private static final int NO_CERTIFICATE = 0;
+
+    private final DataSource _dataSource;
+    private final String _strAppCode;
+    private final int _nBatchSize = Integer.getInteger( "seeding.batch.size", 1000 );
+    private Map<String, Integer> _attributeKeys;
+    private int _nbQueuedAttributes;
+
+    /**
+     * Constructor
+     *
+     * @param dataSource
+     *            the identitystore datasource
+     * @param strAppCode
+     *            the application code written as last update client of the attributes
+     */
+    public BulkIdentitySeeder( final DataSource dataSource, final String strAppCode )
+    {
+        _dataSource = dataSource;
+        _strAppCode = strAppCode;
+    }
+
+    /**
+     * Inserts the identities in database, in batches, and queues their indexation.
+     *
+     * @param identities
+     *            the identities to seed
+     * @return the customer ids of the seeded identities, in the same order
+     */
+    public List<String> seed( final List<TestIdentity> identities ) throws SQLException
+    {
+        final long start = System.nanoTime( );
+        final List<String> customerIds = this.queue( identities );
+        final long dbMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - start );
+
+        // The missing index task drains the queued index actions through bulk requests
+        new MissingIndexTask( ).run( );
+        System.out.println( "[Bulk seeding] " + customerIds.size( ) + " identities, " + _nbQueuedAttributes + " attributes : database " + dbMs
+                + " ms, index " + ( TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - start ) - dbMs ) + " ms" );
+        return customerIds;
+    }
+
+    /**
+     * Inserts the identities in database, in batches, with one pending index action each, leaving the indexation to the missing index task.
+     *
+     * @param identities
+     *            the identities to insert
+     * @return the customer ids of the inserted identities, in the same order
+     */
+    public List<String> queue( final List<TestIdentity> identities ) throws SQLException
+    {
+        final List<String> customerIds = new ArrayList<>( identities.size( ) );
+        int nbAttributes = 0;
+        try ( final Connection connection = _dataSource.getConnection( ) )
+        {
+            if ( _attributeKeys == null )
+            {
+                _attributeKeys = this.loadAttributeKeys( connection );
+            }
+            connection.setAutoCommit( false );
+            for ( int from = 0; from < identities.size( ); from += _nBatchSize )
+            {
+                final List<TestIdentity> batch = identities.subList( from, Math.min( from + _nBatchSize, identities.size( ) ) );
+                final List<String> batchCustomerIds = new ArrayList<>( batch.size( ) );
+                batch.forEach( identity -> batchCustomerIds.add( UUID.randomUUID( ).toString( ) ) );
+                final List<Integer> identityIds = this.insertIdentities( connection, batch, batchCustomerIds );
+                nbAttributes += this.insertAttributes( connection, batch, identityIds );
+                this.insertIndexActions( connection, batchCustomerIds );
+                connection.commit( );
+                customerIds.addAll( batchCustomerIds );
+            }
+        }
+        _nbQueuedAttributes = nbAttributes;
+        return customerIds;
+    }
+
+    private List<Integer> insertIdentities( final Connection connection, final List<TestIdentity> batch, final List<String> customerIds )
+            throws SQLException
+    {
+        final Timestamp now = new Timestamp( System.currentTimeMillis( ) );
+        final Calendar expiration = Calendar.getInstance( );
+        expiration.add( Calendar.MONTH, DATA_RETENTION_PERIOD_IN_MONTHS );
+        final Timestamp expirationDate = new Timestamp( expiration.getTimeInMillis( ) );
+
+        final List<Integer> ids = new ArrayList<>( batch.size( ) );
+        try ( final PreparedStatement statement = connection.prepareStatement( SQL_INSERT_IDENTITY, new String [ ] {
+                COLUMN_ID_IDENTITY
+        } ) )
+        {
+            for ( int i = 0; i < batch.size( ); i++ )
+            {
+                statement.setString( 1, batch.get( i ).getConnectionId( ) );
+                statement.setString( 2, customerIds.get( i ) );
+                statement.setTimestamp( 3, now );
+                statement.setTimestamp( 4, now );
+                statement.setTimestamp( 5, expirationDate );
+                statement.addBatch( );
+            }
+            statement.executeBatch( );
+            try ( final ResultSet keys = statement.getGeneratedKeys( ) )
+            {
+                while ( keys.next( ) )
+                {
+                    ids.add( keys.getInt( 1 ) );
+                }
+            }
+        }
+        return ids;
+    }
+
+    private int insertAttributes( final Connection connection, final List<TestIdentity> batch, final List<Integer> identityIds ) throws SQLException
+    {
+        final Map<TestAttribute, Integer> certificateIds = this.insertCertificates( connection, batch );
+        final Timestamp now = new Timestamp( System.currentTimeMillis( ) );
+        int nbAttributes = 0;
+        try ( final PreparedStatement statement = connection.prepareStatement( SQL_INSERT_ATTRIBUTE ) )
+        {
+            for ( int i = 0; i < batch.size( ); i++ )
+            {
+                for ( final TestAttribute attribute : batch.get( i ).getAttributes( ) )
+                {
+                    final Integer idAttribute = _attributeKeys.get( attribute.getKey( ) );
+                    if ( idAttribute == null )
+                    {
+                        throw new SQLException( "Unknown attribute key " + attribute.getKey( ) );
+                    }
+                    statement.setInt( 1, identityIds.get( i ) );
+                    statement.setInt( 2, idAttribute );
+                    statement.setString( 3, attribute.getValue( ) );
+                    statement.setInt( 4, certificateIds.getOrDefault( attribute, NO_CERTIFICATE ) );
+                    statement.setTimestamp( 5, now );
+                    statement.setString( 6, _strAppCode );
+                    statement.addBatch( );
+                    nbAttributes++;
+                }
+            }
+            statement.executeBatch( );
+        }
+        return nbAttributes;
+    }
+
+    private Map<TestAttribute, Integer> insertCertificates( final Connection connection, final List<TestIdentity> batch ) throws SQLException
+    {
+        final List<TestAttribute> certified = new ArrayList<>( );
+        batch.forEach( identity -> identity.getAttributes( ).stream( ).filter( attribute -> attribute.getCertifier( ) != null ).forEach( certified::add ) );
+
+        // Identity map : two attributes with the same content still get their own certificate
+        final Map<TestAttribute, Integer> certificateIds = new IdentityHashMap<>( );
+        if ( certified.isEmpty( ) )
+        {
+            return certificateIds;
+        }
+        try ( final PreparedStatement statement = connection.prepareStatement( SQL_INSERT_CERTIFICATE, new String [ ] {
+                COLUMN_ID_CERTIFICATE
+        } ) )
+        {
+            final Timestamp now = new Timestamp( System.currentTimeMillis( ) );
+            for ( final TestAttribute attribute : certified )
+            {
+                statement.setString( 1, attribute.getCertifier( ) );
+                if ( attribute.getCertificationDate( ) != null )
+                {
+                    statement.setTimestamp( 2, new Timestamp( attribute.getCertificationDate( ).getTime( ) ) );
+                }
+                else
+                {
+                    statement.setTimestamp( 2, now );
+                }
+                statement.addBatch( );
+            }
+            statement.executeBatch( );
+            try ( final ResultSet keys = statement.getGeneratedKeys( ) )
+            {
+                int i = 0;
+                while ( keys.next( ) )
+                {
+                    certificateIds.put( certified.get( i++ ), keys.getInt( 1 ) );
+                }
+            }
+        }
+        return certificateIds;
+    }
+
+    private void insertIndexActions( final Connection connection, final List<String> customerIds ) throws SQLException
+    {
+        try ( final PreparedStatement statement = connection.prepareStatement( SQL_INSERT_INDEX_ACTION ) )
+        {
+            for ( final String customerId : customerIds )
+            {
+                statement.setString( 1, customerId );
+                statement.setString( 2, INDEX_ACTION_CREATE );
+                statement.addBatch( );
+            }
+            statement.executeBatch( );
+        }
+    }
+
+    private Map<String, Integer> loadAttributeKeys( final Connection connection ) throws SQLException
+    {
+        final Map<String, Integer> keys = new HashMap<>( );
+        try ( final PreparedStatement statement = connection.prepareStatement( SQL_SELECT_ATTRIBUTE_KEYS );
+                final ResultSet resultSet = statement.executeQuery( ) )
+        {
+            while ( resultSet.next( ) )
+            {
+                keys.put( resultSet.getString( 2 ), resultSet.getInt( 1 ) );
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersion;
+import com.networknt.schema.ValidationMessage;
+import fr.paris.lutece.plugins.identitystore.modules.test.data.IdentityStoreTest;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Binary store of the test definitions of a suite, already validated against <code>schema/testDefinitionSchema.json</code>.<br/>
+ * The store is a Smile document holding, for each definition file, its modification time, its size, the hash of its content and its parsed tree.
+ * It is memory-mapped at load time : only the definitions whose modification time or size changed are hashed, and only the ones whose content
+ * changed are parsed and validated again. A change of the schema invalidates the whole store.<br/>
+ * The definitions are keyed by their path relative to the data directory, so that the parallel workers, which run on their own copy of the test
+ * resources, share the store of the suite : it is written under a file lock, after being read again, so that the entries of the definitions run
+ * by the other workers are kept.
+ */
+public class CompiledDefinitions
+{
+    private static final String SCHEMA_RESOURCE = "/schema/testDefinitionSchema.json";
+    private static final String DEFAULT_STORE_DIR = "target/compiled-definitions";
+    private static final String KEY_SCHEMA_HASH = "schemaHash";
+    private static final String KEY_DEFINITIONS = "definitions";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_HASH = "hash";
+    private static final String KEY_DEFINITION = "definition";
+
+    private final ObjectMapper _mapper;
+    private final Path _dataDirectory;
+    private final SmileMapper _smileMapper = new SmileMapper( );
+    private final Path _storeFile;
+    private final Map<String, JsonNode> _definitions = new HashMap<>( );
+
+    /**
+     * Constructor
+     *
+     * @param strSuiteName
+     *            the suite name, used as store file name
+     * @param dataDirectory
+     *            the directory of the test resources, the definitions being keyed by their path relative to it
+     * @param mapper
+     *            the mapper used to read the definition files and to bind the compiled trees
+     */
+    public CompiledDefinitions( final String strSuiteName, final Path dataDirectory, final ObjectMapper mapper )
+    {
+        _mapper = mapper;
+        _dataDirectory = dataDirectory.toAbsolutePath( );
+        _storeFile = Paths.get( System.getProperty( "definitions.compiled.dir", DEFAULT_STORE_DIR ), strSuiteName + ".smile" ).toAbsolutePath( );
+    }
+
+    /**
+     * Loads the store and brings it up to date with the given definitions.
+     *
+     * @param definitionFiles
+     *            the definition files of the suite
+     * @throws IOException
+     *             if a file cannot be read, or if some definitions do not match the schema
+     */
+    public void compile( final Collection<File> definitionFiles ) throws IOException
+    {
+        final long start = System.nanoTime( );
+        final byte [ ] schemaContent = readSchema( );
+        final String strSchemaHash = hash( schemaContent );
+        final ObjectNode store = this.load( );
+        final ObjectNode previous = strSchemaHash.equals( store.path( KEY_SCHEMA_HASH ).asText( ) ) ? (ObjectNode) store.get( KEY_DEFINITIONS )
+                : _smileMapper.createObjectNode( );
+
+        final ObjectNode compiled = _smileMapper.createObjectNode( );
+        final List<String> errors = new ArrayList<>( );
+        JsonSchema schema = null;
+        boolean bChanged = false;
+        int nbCompiled = 0;
+        for ( final File file : definitionFiles )
+        {
+            final String strKey = this.getKey( file );
+            final long lLastModified = file.lastModified( );
+            final long lSize = file.length( );
+            ObjectNode entry = (ObjectNode) previous.get( strKey );
+            if ( entry != null && ( entry.path( KEY_LAST_MODIFIED ).asLong( ) != lLastModified || entry.path( KEY_SIZE ).asLong( ) != lSize ) )
+            {
+                // A copied or touched file keeps its compiled form as long as its content is the same
+                final byte [ ] content = Files.readAllBytes( file.toPath( ) );
+                entry = hash( content ).equals( entry.path( KEY_HASH ).asText( ) ) ? entry.put( KEY_LAST_MODIFIED, lLastModified ) : null;
+                bChanged = true;
+            }
+            if ( entry == null )
+            {
+                if ( schema == null )
+                {
+                    schema = JsonSchemaFactory.getInstance( SpecVersion.VersionFlag.V202012 ).getSchema( _mapper.readTree( schemaContent ) );
+                }
+                final byte [ ] content = Files.readAllBytes( file.toPath( ) );
+                final JsonNode definition = _mapper.readTree( content );
+                final Set<ValidationMessage> violations = schema.validate( definition );
+                if ( !violations.isEmpty( ) )
+                {
+                    errors.add( file.getName( ) + " : " + violations.stream( ).map( ValidationMessage::getMessage ).collect( Collectors.joining( ", " ) ) );
+                    continue;
+                }
+                entry = _smileMapper.createObjectNode( );
+                entry.put( KEY_LAST_MODIFIED, lLastModified ).put( KEY_SIZE, lSize ).put( KEY_HASH, hash( content ) ).set( KEY_DEFINITION, definition );
+                bChanged = true;
+                nbCompiled++;
+            }
+            compiled.set( strKey, entry );
+            _definitions.put( strKey, entry.get( KEY_DEFINITION ) );
+        }
+        // The definitions of the other workers are kept by save(), the ones whose file was removed are dropped
+        final Iterator<String> previousKeys = previous.fieldNames( );
+        while ( previousKeys.hasNext( ) && !bChanged )
+        {
+            final String strPreviousKey = previousKeys.next( );
+            bChanged = !compiled.has( strPreviousKey ) && !Files.exists( _dataDirectory.resolve( strPreviousKey ) );
+        }
+        if ( !errors.isEmpty( ) )
+        {
+            throw new IOException( "ERROR " + errors.size( ) + " definition(s) do not match the schema :\n" + String.join( "\n", errors ) );
+        }
+        if ( bChanged )
+        {
+            this.save( strSchemaHash, compiled );
+        }
+        System.out.println( "----- Compiled definitions: " + definitionFiles.size( ) + " loaded, " + nbCompiled + " validated and compiled in "
+                + ( System.nanoTime( ) - start ) / 1_000_000 + " ms -----" );
+    }
+
+    /**
+     * @return the definition compiled from the given file, <code>null</code> if the file was not part of the compilation
+     */
+    public IdentityStoreTest get( final File definitionFile ) throws IOException
+    {
+        final JsonNode definition = _definitions.get( this.getKey( definitionFile ) );
+        return definition != null ? _mapper.treeToValue( definition, IdentityStoreTest.class ) : null;
+    }
+
+    /**
+     * @return the path of the definition file relative to the data directory, with <code>/</code> separators
+     */
+    private String getKey( final File definitionFile )
+    {
+        return _dataDirectory.relativize( definitionFile.toPath( ).toAbsolutePath( ) ).toString( ).replace( File.separatorChar, '/' );
+    }
+
+    private ObjectNode load( ) throws IOException
+    {
+        if ( !Files.exists( _storeFile ) )
+        {
+            return _smileMapper.createObjectNode( );
+        }
+        try ( final FileChannel channel = FileChannel.open( _storeFile, StandardOpenOption.READ ) )
+        {
+            final MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size( ) );
+            final JsonNode store = _smileMapper.readTree( new ByteBufferBackedInputStream( buffer ) );
+            return store instanceof ObjectNode && store.get( KEY_DEFINITIONS ) instanceof ObjectNode ? (ObjectNode) store
+                    : _smileMapper.createObjectNode( );
+        }
+        catch( IOException e )
+        {
+            System.out.println( "Ignoring unreadable compiled definitions " + _storeFile + " : " + e.getMessage( ) );
+            return _smileMapper.createObjectNode( );
+        }
+    }
+
+    /**
+     * Writes the store under a lock shared by the workers : the store is read again under the lock, so that the definitions saved by the other
+     * workers since it was loaded are kept.
+     *
+     * @param strSchemaHash
+     *            the hash of the schema the definitions were validated against
+     * @param compiled
+     *            the definitions compiled by this run, keyed by their path
+     */
+    private void save( final String strSchemaHash, final ObjectNode compiled ) throws IOException
+    {
+        Files.createDirectories( _storeFile.getParent( ) );
+        final Path lockFile = _storeFile.resolveSibling( _storeFile.getFileName( ) + ".lock" );
+        try ( final FileChannel channel = FileChannel.open( lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+                final FileLock lock = channel.lock( ) )
+        {
+            final ObjectNode current = this.load( );
+            if ( strSchemaHash.equals( current.path( KEY_SCHEMA_HASH ).asText( ) ) )
+            {
+                final Iterator<Map.Entry<String, JsonNode>> currentEntries = current.get( KEY_DEFINITIONS ).fields( );
+                while ( currentEntries.hasNext( ) )
+                {
+                    final Map.Entry<String, JsonNode> currentEntry = currentEntries.next( );
+                    if ( !compiled.has( currentEntry.getKey( ) ) && Files.exists( _dataDirectory.resolve( currentEntry.getKey( ) ) ) )
+                    {
+                        compiled.set( currentEntry.getKey( ), currentEntry.getValue( ) );
+                    }
+                }
+            }
+            final ObjectNode store = _smileMapper.createObjectNode( );
+            store.put( KEY_SCHEMA_HASH, strSchemaHash ).set( KEY_DEFINITIONS, compiled );
+            final Path tmpFile = Files.createTempFile( _storeFile.getParent( ), _storeFile.getFileName( ).toString( ), ".tmp" );
+            _smileMapper.writeValue( tmpFile.toFile( ), store );
+            Files.move( tmpFile, _storeFile, StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    private static byte [ ] readSchema( ) throws IOException
+    {
+        try ( final InputStream schema = CompiledDefinitions.class.getResourceAsStream( SCHEMA_RESOURCE ) )
+        {
+            if ( schema == null )
+            {
+                throw new IOException( "Cannot find the definition schema " + SCHEMA_RESOURCE );
+            }
+            return IOUtils.toByteArray( schema );
+        }
+    }
+
+    private static String hash( final byte [ ] content )
+    {
+        final MessageDigest digest = DefinitionCache.newDigest( );
+        return DefinitionCache.toHex( digest.digest( content ) );
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fr.paris.lutece.plugins.identitystore.modules.test.report.DefinitionReport;
+import fr.paris.lutece.plugins.identitystore.service.identity.IdentityService;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps, for each definition file, a hash of its content and of the test environment together with its last result, so that unchanged definitions
+ * can be skipped by the next runs.<br/>
+ * The environment hash covers the identitystore configuration, the context template, the overridden properties and the identitystore library
+ * version : any change of one of them invalidates every definition of the suite.
+ */
+public class DefinitionCache
+{
+    private static final String DEFAULT_CACHE_DIR = ".identitystore-test-cache";
+    private static final String KEY_HASH = "hash";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_SUCCESS = "success";
+    private static final String KEY_MESSAGE = "message";
+
+    private final ObjectMapper _mapper = new ObjectMapper( ).enable( SerializationFeature.INDENT_OUTPUT );
+    private final Path _cacheFile;
+    private final String _strEnvironmentHash;
+    private final ObjectNode _entries;
+
+    /**
+     * Constructor
+     *
+     * @param strSuiteName
+     *            the suite name, used as cache file name
+     * @param environmentFiles
+     *            the configuration files the results depend on
+     * @param propertyOverrides
+     *            the properties overriding the configuration files
+     */
+    public DefinitionCache( final String strSuiteName, final List<Path> environmentFiles, final Map<String, String> propertyOverrides ) throws IOException
+    {
+        _cacheFile = Paths.get( System.getProperty( "incremental.cache", DEFAULT_CACHE_DIR ), strSuiteName + ".json" ).toAbsolutePath( );
+        final MessageDigest digest = newDigest( );
+        for ( final Path file : environmentFiles )
+        {
+            digest.update( Files.readAllBytes( file ) );
+        }
+        for ( final Map.Entry<String, String> override : new TreeMap<>( propertyOverrides ).entrySet( ) )
+        {
+            digest.update( ( override.getKey( ) + '=' + override.getValue( ) + '\n' ).getBytes( StandardCharsets.UTF_8 ) );
+        }
+        digest.update( getLibraryVersion( ).getBytes( StandardCharsets.UTF_8 ) );
+        _strEnvironmentHash = toHex( digest.digest( ) );
+        _entries = Files.exists( _cacheFile ) ? (ObjectNode) _mapper.readTree( _cacheFile.toFile( ) ) : _mapper.createObjectNode( );
+    }
+
+    /**
+     * @return the last result of the definition if it succeeded and neither the definition nor the environment changed since, <code>null</code>
+     *         otherwise
+     */
+    public Pair<String, Pair<Boolean, String>> getUpToDateResult( final File definition ) throws IOException
+    {
+        final ObjectNode entry = (ObjectNode) _entries.get( definition.getName( ) );
+        if ( entry == null || !entry.path( KEY_SUCCESS ).asBoolean( ) || !this.hash( definition ).equals( entry.path( KEY_HASH ).asText( ) ) )
+        {
+            return null;
+        }
+        return new ImmutablePair<>( entry.path( KEY_NAME ).asText( ),
+                new ImmutablePair<>( entry.path( KEY_SUCCESS ).asBoolean( ), entry.path( KEY_MESSAGE ).asText( ) ) );
+    }
+
+    /**
+     * Stores the result of a definition that has just been run.
+     */
+    public synchronized void record( final File definition, final DefinitionReport report ) throws IOException
+    {
+        _entries.putObject( definition.getName( ) ).put( KEY_HASH, this.hash( definition ) ).put( KEY_NAME, report.getName( ) )
+                .put( KEY_SUCCESS, report.isSuccess( ) ).put( KEY_MESSAGE, report.getMessage( ) );
+    }
+
+    public synchronized void save( ) throws IOException
+    {
+        Files.createDirectories( _cacheFile.getParent( ) );
+        _mapper.writeValue( _cacheFile.toFile( ), _entries );
+    }
+
+    private String hash( final File definition ) throws IOException
+    {
+        final MessageDigest digest = newDigest( );
+        digest.update( Files.readAllBytes( definition.toPath( ) ) );
+        digest.update( _strEnvironmentHash.getBytes( StandardCharsets.UTF_8 ) );
+        return toHex( digest.digest( ) );
+    }
+
+    /**
+     * The implementation version when the jar provides it, completed by the jar size and date so that a new snapshot build is detected.
+     */
+    private static String getLibraryVersion( ) throws IOException
+    {
+        final StringBuilder version = new StringBuilder( String.valueOf( IdentityService.class.getPackage( ).getImplementationVersion( ) ) );
+        try
+        {
+            final Path jar = Paths.get( IdentityService.class.getProtectionDomain( ).getCodeSource( ).getLocation( ).toURI( ) );
+            version.append( '|' ).append( jar.getFileName( ) ).append( '|' ).append( Files.size( jar ) ).append( '|' )
+                    .append( Files.getLastModifiedTime( jar ).toMillis( ) );
+        }
+        catch( URISyntaxException | SecurityException e )
+        {
+            throw new IOException( "Cannot resolve the identitystore library location", e );
+        }
+        return version.toString( );
+    }
+
+    static MessageDigest newDigest( )
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    static String toHex( final byte [ ] bytes )
+    {
+        final StringBuilder hex = new StringBuilder( bytes.length * 2 );
+        for ( final byte b : bytes )
+        {
+            hex.append( String.format( "%02x", b ) );
+        }
+        return hex.toString( );
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.paris.lutece.plugins.identitystore.modules.test.report.QueryProfile;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Recording proxy in front of Elasticsearch : the Lutece services are pointed at it, every request is forwarded unchanged, and the
+ * <code>_search</code> requests issued while the capture is active are kept with their target index. They are then replayed directly on
+ * Elasticsearch with <code>"profile": true</code>, so that the report shows the exact query DSL sent by the searcher and where its time is spent.
+ */
+public class ElasticsearchQueryCapture
+{
+    /**
+     * System property enabling the capture in the JSON test suites
+     */
+    public static final String PROPERTY_ENABLED = "es.profile";
+    private static final String SEARCH_ENDPOINT = "/_search";
+    private static final List<String> FORWARDED_HEADERS = Arrays.asList( "Content-Type", "Authorization" );
+
+    private final String _strTargetUrl;
+    private final ElasticsearchTestClient _client;
+    private final List<String [ ]> _capturedQueries = new ArrayList<>( );
+    private HttpServer _server;
+    private ExecutorService _executor;
+    private volatile boolean _bCapturing;
+
+    /**
+     * Constructor
+     *
+     * @param strTargetUrl
+     *            the Elasticsearch url, with or without protocol
+     */
+    public ElasticsearchQueryCapture( final String strTargetUrl )
+    {
+        _strTargetUrl = strTargetUrl.startsWith( "http" ) ? strTargetUrl : "http://" + strTargetUrl;
+        _client = new ElasticsearchTestClient( _strTargetUrl );
+    }
+
+    public static boolean isEnabled( )
+    {
+        return Boolean.getBoolean( PROPERTY_ENABLED );
+    }
+
+    /**
+     * Starts the proxy on a free local port.
+     *
+     * @return the proxy address, as <code>host:port</code>
+     */
+    public String start( ) throws IOException
+    {
+        _server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress( ), 0 ), 0 );
+        _server.createContext( "/", this::forward );
+        _executor = Executors.newCachedThreadPool( );
+        _server.setExecutor( _executor );
+        _server.start( );
+        return _server.getAddress( ).getHostString( ) + ":" + _server.getAddress( ).getPort( );
+    }
+
+    public void stop( )
+    {
+        if ( _server != null )
+        {
+            _server.stop( 0 );
+            _server = null;
+        }
+        if ( _executor != null )
+        {
+            // The server does not shut down the executor it was given
+            _executor.shutdown( );
+            _executor = null;
+        }
+    }
+
+    /**
+     * Starts recording the search requests, forgetting the previous ones.
+     */
+    public synchronized void beginCapture( )
+    {
+        _capturedQueries.clear( );
+        _bCapturing = true;
+    }
+
+    /**
+     * Stops recording and replays each recorded search with profiling enabled.
+     *
+     * @return one profile per recorded search, in the order they were issued
+     */
+    public List<QueryProfile> endCapture( ) throws IOException
+    {
+        final List<String [ ]> queries;
+        synchronized( this )
+        {
+            _bCapturing = false;
+            queries = new ArrayList<>( _capturedQueries );
+        }
+        final List<QueryProfile> profiles = new ArrayList<>( );
+        for ( final String [ ] query : queries )
+        {
+            profiles.add( this.profile( query [0], query [1] ) );
+        }
+        return profiles;
+    }
+
+    private QueryProfile profile( final String strIndex, final String strBody ) throws IOException
+    {
+        final QueryProfile profile = new QueryProfile( );
+        profile.setIndex( strIndex );
+        final JsonNode query = _client.readTree( strBody.isEmpty( ) ? "{}" : strBody );
+        profile.setQuery( query );
+        if ( query.isObject( ) )
+        {
+            final ObjectNode profiledQuery = ( (ObjectNode) query ).deepCopy( );
+            profiledQuery.put( "profile", true );
+            final JsonNode response = _client.readTree( _client.post( "/" + strIndex + SEARCH_ENDPOINT, profiledQuery.toString( ) ) );
+            profile.setTook( response.path( "took" ).asLong( ) );
+            // hits.total is an object since Elasticsearch 7, a number before
+            final JsonNode total = response.path( "hits" ).path( "total" );
+            profile.setHits( total.isObject( ) ? total.path( "value" ).asLong( ) : total.asLong( ) );
+            profile.setProfile( response.path( "profile" ) );
+        }
+        return profile;
+    }
+
+    private void forward( final HttpExchange exchange ) throws IOException
+    {
+        try
+        {
+            final String strPathAndQuery = exchange.getRequestURI( ).getRawPath( )
+                    + ( exchange.getRequestURI( ).getRawQuery( ) != null ? "?" + exchange.getRequestURI( ).getRawQuery( ) : "" );
+            final byte [ ] body;
+            try ( final InputStream in = exchange.getRequestBody( ) )
+            {
+                body = IOUtils.toByteArray( in );
+            }
+            this.record( exchange.getRequestURI( ).getRawPath( ), body );
+
+            final HttpURLConnection connection = (HttpURLConnection) new URL( _strTargetUrl + strPathAndQuery ).openConnection( );
+            connection.setRequestMethod( exchange.getRequestMethod( ) );
+            for ( final String strHeader : FORWARDED_HEADERS )
+            {
+                final String strValue = exchange.getRequestHeaders( ).getFirst( strHeader );
+                if ( strValue != null )
+                {
+                    connection.setRequestProperty( strHeader, strValue );
+                }
+            }
+            if ( body.length > 0 )
+            {
+                connection.setDoOutput( true );
+                try ( final OutputStream out = connection.getOutputStream( ) )
+                {
+                    out.write( body );
+                }
+            }
+            final int status = connection.getResponseCode( );
+            final InputStream in = status >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream( ) : connection.getInputStream( );
+            final byte [ ] response = in == null ? new byte [ 0 ] : IOUtils.toByteArray( in );
+            final String strContentType = connection.getContentType( );
+            if ( strContentType != null )
+            {
+                exchange.getResponseHeaders( ).set( "Content-Type", strContentType );
+            }
+            exchange.sendResponseHeaders( status, response.length == 0 ? -1 : response.length );
+            if ( response.length > 0 )
+            {
+                try ( final OutputStream out = exchange.getResponseBody( ) )
+                {
+                    out.write( response );
+                }
+            }
+            connection.disconnect( );
+        }
+        finally
+        {
+            exchange.close( );
+        }
+    }
+
+    private synchronized void record( final String strPath, final byte [ ] body )
+    {
+        if ( _bCapturing && strPath.endsWith( SEARCH_ENDPOINT ) )
+        {
+            final String strIndex = strPath.substring( 1, strPath.length( ) - SEARCH_ENDPOINT.length( ) );
+            _capturedQueries.add( new String [ ] {
+                    strIndex.isEmpty( ) ? "_all" : strIndex, new String( body, StandardCharsets.UTF_8 )
+            } );
+        }
+    }
+}
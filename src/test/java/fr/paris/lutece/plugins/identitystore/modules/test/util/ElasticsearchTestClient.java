@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Minimal HTTP client on the Elasticsearch REST API, for the test harness needs that the identitystore ElasticClient does not cover (refresh, count,
+ * snapshots...).
+ */
+public class ElasticsearchTestClient
+{
+    private static final String PROTOCOL = "http://";
+    private static final String CONTENT_TYPE_JSON = "application/json";
+    private static final String CONTENT_TYPE_NDJSON = "application/x-ndjson";
+
+    private final String _strServerUrl;
+    private final ObjectMapper _mapper = new ObjectMapper( );
+
+    /**
+     * Constructor
+     *
+     * @param strServerUrl
+     *            the Elasticsearch url, with or without protocol
+     */
+    public ElasticsearchTestClient( final String strServerUrl )
+    {
+        _strServerUrl = strServerUrl.startsWith( "http" ) ? strServerUrl : PROTOCOL + strServerUrl;
+    }
+
+    public String get( final String strPath ) throws IOException
+    {
+        return this.execute( "GET", strPath, null, CONTENT_TYPE_JSON );
+    }
+
+    public String post( final String strPath, final String strBody ) throws IOException
+    {
+        return this.execute( "POST", strPath, strBody, CONTENT_TYPE_JSON );
+    }
+
+    public String put( final String strPath, final String strBody ) throws IOException
+    {
+        return this.execute( "PUT", strPath, strBody, CONTENT_TYPE_JSON );
+    }
+
+    public String delete( final String strPath ) throws IOException
+    {
+        return this.execute( "DELETE", strPath, null, CONTENT_TYPE_JSON );
+    }
+
+    /**
+     * Sends a newline delimited body, as expected by the <code>_bulk</code> API.
+     */
+    public String postNdJson( final String strPath, final String strBody ) throws IOException
+    {
+        return this.execute( "POST", strPath, strBody, CONTENT_TYPE_NDJSON );
+    }
+
+    public boolean exists( final String strPath ) throws IOException
+    {
+        final HttpURLConnection connection = (HttpURLConnection) new URL( _strServerUrl + strPath ).openConnection( );
+        connection.setRequestMethod( "HEAD" );
+        try
+        {
+            return connection.getResponseCode( ) == HttpURLConnection.HTTP_OK;
+        }
+        finally
+        {
+            connection.disconnect( );
+        }
+    }
+
+    /**
+     * Makes all the operations performed on the index visible to search.
+     */
+    public void refresh( final String strIndex ) throws IOException
+    {
+        this.post( "/" + strIndex + "/_refresh", null );
+    }
+
+    /**
+     * Counts the documents of the index whose id belongs to the given collection.
+     */
+    public long countByIds( final String strIndex, final Collection<String> ids ) throws IOException
+    {
+        final String query = "{\"query\":{\"ids\":{\"values\":" + _mapper.writeValueAsString( ids ) + "}}}";
+        return this.readTree( this.post( "/" + strIndex + "/_count", query ) ).path( "count" ).asLong( );
+    }
+
+    public long count( final String strIndex ) throws IOException
+    {
+        return this.readTree( this.get( "/" + strIndex + "/_count" ) ).path( "count" ).asLong( );
+    }
+
+    /**
+     * Lists the indices the alias points to.
+     *
+     * @return the index names, empty if the alias does not exist
+     */
+    public Set<String> getIndicesBehindAlias( final String strAlias ) throws IOException
+    {
+        final Set<String> indices = new HashSet<>( );
+        if ( this.exists( "/_alias/" + strAlias ) )
+        {
+            this.readTree( this.get( "/_alias/" + strAlias ) ).fieldNames( ).forEachRemaining( indices::add );
+        }
+        return indices;
+    }
+
+    public void deleteIndexIfExists( final String strIndex ) throws IOException
+    {
+        if ( this.exists( "/" + strIndex ) )
+        {
+            this.delete( "/" + strIndex );
+        }
+    }
+
+    public JsonNode readTree( final String strJson ) throws IOException
+    {
+        return _mapper.readTree( strJson );
+    }
+
+    private String execute( final String strMethod, final String strPath, final String strBody, final String strContentType ) throws IOException
+    {
+        final HttpURLConnection connection = (HttpURLConnection) new URL( _strServerUrl + strPath ).openConnection( );
+        connection.setRequestMethod( strMethod );
+        try
+        {
+            if ( strBody != null )
+            {
+                connection.setDoOutput( true );
+                connection.setRequestProperty( "Content-Type", strContentType );
+                try ( final OutputStream out = connection.getOutputStream( ) )
+                {
+                    out.write( strBody.getBytes( StandardCharsets.UTF_8 ) );
+                }
+            }
+            final int status = connection.getResponseCode( );
+            final InputStream in = status >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream( ) : connection.getInputStream( );
+            final String response = in == null ? "" : IOUtils.toString( in, StandardCharsets.UTF_8 );
+            if ( status >= HttpURLConnection.HTTP_BAD_REQUEST )
+            {
+                throw new IOException( strMethod + " " + strPath + " returned " + status + " : " + response );
+            }
+            return response;
+        }
+        finally
+        {
+            connection.disconnect( );
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.util;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java Flight Recorder session around a test method, enabled by <code>-Djfr=true</code>.<br/>
+ * The recording uses the <code>jfr.settings</code> configuration (<code>profile</code> by default) and is saved as
+ * <code>target/jfr/&lt;suite&gt;.jfr</code> (<code>jfr.dir</code>). When it stops, a summary is printed and saved next to it : top CPU methods
+ * (execution samples by top frame), top allocation sites, monitors with the longest contention and GC pauses, for the whole suite and for each
+ * {@link DefinitionEvent}.
+ */
+public final class FlightRecording
+{
+    public static final String PROPERTY_ENABLED = "jfr";
+    private static final String DEFAULT_SETTINGS = "profile";
+    private static final String DEFAULT_DIRECTORY = "target/jfr";
+    private static final int DEFAULT_TOP = 10;
+    private static final String EVENT_EXECUTION_SAMPLE = "jdk.ExecutionSample";
+    private static final String EVENT_ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+    private static final String EVENT_ALLOCATION_IN_TLAB = "jdk.ObjectAllocationInNewTLAB";
+    private static final String EVENT_ALLOCATION_OUTSIDE_TLAB = "jdk.ObjectAllocationOutsideTLAB";
+    private static final String EVENT_MONITOR_ENTER = "jdk.JavaMonitorEnter";
+    private static final String EVENT_GARBAGE_COLLECTION = "jdk.GarbageCollection";
+    private static final String SUITE = "(suite)";
+
+    private final Recording _recording;
+    private final Path _path;
+    private final int _nTop = Integer.getInteger( "jfr.top", DEFAULT_TOP );
+
+    private FlightRecording( final Recording recording, final Path path )
+    {
+        _recording = recording;
+        _path = path;
+    }
+
+    public static boolean isEnabled( )
+    {
+        return Boolean.getBoolean( PROPERTY_ENABLED );
+    }
+
+    /**
+     * Starts a recording.
+     *
+     * @param strSuiteName
+     *            the name of the recording file
+     * @return the running recording
+     */
+    public static FlightRecording start( final String strSuiteName ) throws IOException, ParseException
+    {
+        final Path directory = Paths.get( System.getProperty( "jfr.dir", DEFAULT_DIRECTORY ) );
+        Files.createDirectories( directory );
+        final Recording recording = new Recording( Configuration.getConfiguration( System.getProperty( "jfr.settings", DEFAULT_SETTINGS ) ) );
+        recording.setName( strSuiteName );
+        recording.setToDisk( true );
+        final Path path = directory.resolve( strSuiteName + ".jfr" ).toAbsolutePath( );
+        recording.setDestination( path );
+        recording.start( );
+        return new FlightRecording( recording, path );
+    }
+
+    /**
+     * Stops the recording, writes it and prints its summary.
+     */
+    public void stop( ) throws IOException
+    {
+        _recording.stop( );
+        _recording.close( );
+        final List<String> summary = this.summarize( );
+        summary.forEach( System.out::println );
+        final String strFileName = _path.getFileName( ).toString( );
+        Files.write( _path.resolveSibling( strFileName.substring( 0, strFileName.length( ) - ".jfr".length( ) ) + "-summary.txt" ), summary,
+                StandardCharsets.UTF_8 );
+    }
+
+    private List<String> summarize( ) throws IOException
+    {
+        final List<RecordedEvent> events = RecordingFile.readAllEvents( _path );
+        final TreeMap<Instant, RecordedEvent> definitions = new TreeMap<>( );
+        events.stream( ).filter( event -> DefinitionEvent.NAME.equals( event.getEventType( ).getName( ) ) )
+                .forEach( event -> definitions.put( event.getStartTime( ), event ) );
+
+        final Map<String, Totals> totalsBySection = new TreeMap<>( );
+        final Totals suite = new Totals( );
+        for ( final RecordedEvent event : events )
+        {
+            final Totals definition = this.getDefinitionTotals( definitions, totalsBySection, event );
+            suite.add( event );
+            if ( definition != null )
+            {
+                definition.add( event );
+            }
+        }
+
+        final List<String> lines = new ArrayList<>( );
+        lines.add( "----- Flight recording " + _path + " -----" );
+        this.print( lines, SUITE, suite, _nTop );
+        totalsBySection.forEach( ( name, totals ) -> this.print( lines, name, totals, Math.min( 3, _nTop ) ) );
+        return lines;
+    }
+
+    /**
+     * @return the totals of the definition running when the event started, null outside of any definition
+     */
+    private Totals getDefinitionTotals( final TreeMap<Instant, RecordedEvent> definitions, final Map<String, Totals> totalsBySection,
+            final RecordedEvent event )
+    {
+        final Map.Entry<Instant, RecordedEvent> definition = definitions.floorEntry( event.getStartTime( ) );
+        if ( definition == null || event.getStartTime( ).isAfter( definition.getValue( ).getEndTime( ) )
+                || DefinitionEvent.NAME.equals( event.getEventType( ).getName( ) ) )
+        {
+            return null;
+        }
+        return totalsBySection.computeIfAbsent( definition.getValue( ).getString( DefinitionEvent.FIELD_NAME ), name -> new Totals( ) );
+    }
+
+    private void print( final List<String> lines, final String strSection, final Totals totals, final int nTop )
+    {
+        lines.add( "" );
+        lines.add( "== " + strSection + " : " + totals._lSamples + " CPU samples, " + totals._lAllocatedBytes / 1024 + " KB sampled allocations, "
+                + totals._lGcCount + " GC (" + TimeUnit.NANOSECONDS.toMillis( totals._lGcPauseNanos ) + " ms paused, longest "
+                + TimeUnit.NANOSECONDS.toMillis( totals._lGcLongestPauseNanos ) + " ms)" );
+        lines.add( "Top CPU methods (samples) :" );
+        this.printTop( lines, totals._samplesByMethod, nTop );
+        lines.add( "Top allocation sites (KB) :" );
+        final Map<String, Long> kilobytesBySite = new HashMap<>( );
+        totals._bytesBySite.forEach( ( site, bytes ) -> kilobytesBySite.put( site, bytes / 1024 ) );
+        this.printTop( lines, kilobytesBySite, nTop );
+        lines.add( "Lock contention (ms) :" );
+        final Map<String, Long> millisByMonitor = new HashMap<>( );
+        totals._nanosByMonitor.forEach( ( monitor, nanos ) -> millisByMonitor.put( monitor, TimeUnit.NANOSECONDS.toMillis( nanos ) ) );
+        this.printTop( lines, millisByMonitor, nTop );
+    }
+
+    private void printTop( final List<String> lines, final Map<String, Long> values, final int nTop )
+    {
+        values.entrySet( ).stream( ).sorted( Map.Entry.<String, Long> comparingByValue( ).reversed( ) ).limit( nTop )
+                .forEach( entry -> lines.add( String.format( "  %10d  %s", entry.getValue( ), entry.getKey( ) ) ) );
+    }
+
+    private static String getTopFrame( final RecordedEvent event )
+    {
+        final RecordedStackTrace stackTrace = event.getStackTrace( );
+        if ( stackTrace == null || stackTrace.getFrames( ).isEmpty( ) )
+        {
+            return "(unknown)";
+        }
+        final RecordedFrame frame = stackTrace.getFrames( ).get( 0 );
+        return frame.getMethod( ).getType( ).getName( ) + "." + frame.getMethod( ).getName( );
+    }
+
+    /**
+     * Numbers of one section of the summary
+     */
+    private static final class Totals
+    {
+        private final Map<String, Long> _samplesByMethod = new HashMap<>( );
+        private final Map<String, Long> _bytesBySite = new HashMap<>( );
+        private final Map<String, Long> _nanosByMonitor = new HashMap<>( );
+        private long _lSamples;
+        private long _lAllocatedBytes;
+        private long _lGcCount;
+        private long _lGcPauseNanos;
+        private long _lGcLongestPauseNanos;
+
+        private void add( final RecordedEvent event )
+        {
+            switch( event.getEventType( ).getName( ) )
+            {
+                case EVENT_EXECUTION_SAMPLE:
+                    _lSamples++;
+                    _samplesByMethod.merge( getTopFrame( event ), 1L, Long::sum );
+                    break;
+                case EVENT_ALLOCATION_SAMPLE:
+                    this.addAllocation( event, event.getLong( "weight" ) );
+                    break;
+                case EVENT_ALLOCATION_IN_TLAB:
+                    this.addAllocation( event, event.getLong( "tlabSize" ) );
+                    break;
+                case EVENT_ALLOCATION_OUTSIDE_TLAB:
+                    this.addAllocation( event, event.getLong( "allocationSize" ) );
+                    break;
+                case EVENT_MONITOR_ENTER:
+                    final String strMonitor = event.getClass( "monitorClass" ) != null ? event.getClass( "monitorClass" ).getName( ) : "(unknown)";
+                    _nanosByMonitor.merge( strMonitor + " at " + getTopFrame( event ), event.getDuration( ).toNanos( ), Long::sum );
+                    break;
+                case EVENT_GARBAGE_COLLECTION:
+                    final Duration pauses = event.getDuration( "sumOfPauses" );
+                    _lGcCount++;
+                    _lGcPauseNanos += pauses.toNanos( );
+                    _lGcLongestPauseNanos = Math.max( _lGcLongestPauseNanos, event.getDuration( "longestPause" ).toNanos( ) );
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void addAllocation( final RecordedEvent event, final long lBytes )
+        {
+            _lAllocatedBytes += lBytes;
+            _bytesBySite.merge( getTopFrame( event ), lBytes, Long::sum );
+        }
+    }
+}
@@ -70,6 +70,39 @@ public class IdentitystoreTestUtils
         }
     }
 
+    /**
+     * Replaces the value of the given properties in a generated properties file, appending the properties it does not define.
+     *
+     * @param basePath
+     *            the base path of the application
+     * @param filePath
+     *            the properties file, relative to the base path
+     * @param overrides
+     *            the values by property name
+     */
+    public static void overrideProperties( final String basePath, final String filePath, final Map<String, String> overrides ) throws Exception
+    {
+        final Path path = Paths.get( basePath, filePath );
+        final Set<String> remaining = new LinkedHashSet<>( overrides.keySet( ) );
+        final List<String> lines = new ArrayList<>( );
+        for ( final String line : Files.readAllLines( path, StandardCharsets.UTF_8 ) )
+        {
+            final int separator = line.indexOf( '=' );
+            final String key = separator > 0 && !line.trim( ).startsWith( "#" ) ? line.substring( 0, separator ).trim( ) : null;
+            if ( key != null && overrides.containsKey( key ) )
+            {
+                lines.add( key + "=" + overrides.get( key ) );
+                remaining.remove( key );
+            }
+            else
+            {
+                lines.add( line );
+            }
+        }
+        remaining.forEach( key -> lines.add( key + "=" + overrides.get( key ) ) );
+        Files.write( path, String.join( "\n", lines ).getBytes( StandardCharsets.UTF_8 ) );
+    }
+
     public static Identity createIdentityInDatabase( )
     {
         Identity identity = createIdentity( );
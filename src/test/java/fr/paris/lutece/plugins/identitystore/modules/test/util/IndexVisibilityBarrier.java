@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.util;
+
+import junit.framework.AssertionFailedError;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits until the identities pushed by the asynchronous <code>IdentityIndexListener</code> are visible to search.<br/>
+ * The barrier refreshes the index and counts the documents of the seeded customer ids until all of them are found, instead of sleeping for a fixed
+ * delay. Indexing failures end up in the <code>identitystore_index_action</code> queue, which is reported in the failure when the barrier times
+ * out.
+ */
+public class IndexVisibilityBarrier
+{
+    private static final String SQL_COUNT_INDEX_ACTIONS = "SELECT count(*) FROM identitystore_index_action";
+    private static final long DEFAULT_TIMEOUT_MS = 30000;
+    private static final long DEFAULT_POLL_INTERVAL_MS = 50;
+    // Keeps the ids query of large corpora under the Elasticsearch request limits
+    private static final int COUNT_BATCH_SIZE = 10000;
+
+    private final ElasticsearchTestClient _client;
+    private final DataSource _dataSource;
+    private final String _strAlias;
+    private final long _lTimeoutMs = Long.getLong( "index.wait.timeout", DEFAULT_TIMEOUT_MS );
+    private final long _lPollIntervalMs = Long.getLong( "index.wait.poll", DEFAULT_POLL_INTERVAL_MS );
+
+    /**
+     * Constructor
+     *
+     * @param client
+     *            the Elasticsearch client
+     * @param dataSource
+     *            the identitystore datasource
+     * @param strAlias
+     *            the alias searched by the identitystore
+     */
+    public IndexVisibilityBarrier( final ElasticsearchTestClient client, final DataSource dataSource, final String strAlias )
+    {
+        _client = client;
+        _dataSource = dataSource;
+        _strAlias = strAlias;
+    }
+
+    /**
+     * Blocks until every given customer id is indexed and searchable.
+     *
+     * @param customerIds
+     *            the customer ids of the seeded identities
+     * @return the time spent waiting, in milliseconds
+     * @throws AssertionFailedError
+     *             when the identities are still not all searchable after <code>index.wait.timeout</code> milliseconds
+     */
+    public long await( final Collection<String> customerIds ) throws Exception
+    {
+        final long start = System.nanoTime( );
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos( _lTimeoutMs );
+        final List<String> ids = new ArrayList<>( customerIds );
+        while ( true )
+        {
+            long nbVisible = 0;
+            if ( !customerIds.isEmpty( ) )
+            {
+                _client.refresh( _strAlias );
+                for ( int i = 0; i < ids.size( ); i += COUNT_BATCH_SIZE )
+                {
+                    nbVisible += _client.countByIds( _strAlias, ids.subList( i, Math.min( i + COUNT_BATCH_SIZE, ids.size( ) ) ) );
+                }
+            }
+            final long elapsedMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - start );
+            if ( nbVisible >= customerIds.size( ) )
+            {
+                System.out.println( "[Index barrier] " + nbVisible + "/" + customerIds.size( ) + " identities searchable after " + elapsedMs + " ms" );
+                return elapsedMs;
+            }
+            if ( System.nanoTime( ) > deadline )
+            {
+                // Running the definition on a partial index would report missing identities as search failures
+                throw new AssertionFailedError( "[Index barrier] timed out after " + elapsedMs + " ms : " + nbVisible + "/" + customerIds.size( )
+                        + " identities searchable, " + this.countPendingIndexActions( ) + " pending index action(s)" );
+            }
+            Thread.sleep( _lPollIntervalMs );
+        }
+    }
+
+    private long countPendingIndexActions( ) throws SQLException
+    {
+        try ( final Connection connection = _dataSource.getConnection( );
+                final PreparedStatement statement = connection.prepareStatement( SQL_COUNT_INDEX_ACTIONS );
+                final ResultSet resultSet = statement.executeQuery( ) )
+        {
+            return resultSet.next( ) ? resultSet.getLong( 1 ) : 0;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.management.ThreadMXBean;
+import junit.framework.AssertionFailedError;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the numbers of a benchmark or a timed suite with a baseline kept in the module, and fails the run when one of them drifts beyond the
+ * tolerance.<br/>
+ * The gate is enabled by <code>-Dperf.gate=true</code>. The baselines are JSON files of <code>perf.baseline.dir</code>
+ * (<code>src/test/resources/perf/baselines</code> by default), one per benchmark or suite, written by a run with
+ * <code>-Dperf.baseline.update=true</code>, which updates the measured cases and keeps the others, and committed ; a gated run without baseline
+ * fails. The tolerance is a ratio, <code>perf.tolerance</code> (0.1 by default), which can be set per metric with
+ * <code>perf.tolerance.&lt;metric&gt;</code>.<br/>
+ * A lower throughput is a regression, as is a higher p95 or allocation. The cases of the baseline missing from the run are reported.
+ */
+public class RegressionGate
+{
+    public static final String METRIC_THROUGHPUT = "throughput";
+    public static final String METRIC_P95 = "p95";
+    public static final String METRIC_ALLOCATION = "allocation";
+    private static final String DEFAULT_BASELINE_DIR = "src/test/resources/perf/baselines";
+    private static final String DEFAULT_TOLERANCE = "0.1";
+
+    private final ObjectMapper _mapper = new ObjectMapper( ).enable( SerializationFeature.INDENT_OUTPUT );
+    private final String _strName;
+    private final Map<String, Map<String, Double>> _measures = new TreeMap<>( );
+
+    /**
+     * Constructor
+     *
+     * @param strName
+     *            the benchmark or suite name, used as baseline file name
+     */
+    public RegressionGate( final String strName )
+    {
+        _strName = strName;
+    }
+
+    /**
+     * @return true if the numbers must be compared with, or written to, the baselines
+     */
+    public static boolean isEnabled( )
+    {
+        return Boolean.getBoolean( "perf.gate" ) || isUpdate( );
+    }
+
+    /**
+     * Records a measure of the run.
+     *
+     * @param strKey
+     *            the measured case, e.g. a benchmark with its parameters
+     * @param strMetric
+     *            one of the <code>METRIC_*</code> names
+     * @param dValue
+     *            the value, in the unit of the baseline
+     */
+    public void record( final String strKey, final String strMetric, final double dValue )
+    {
+        if ( !Double.isNaN( dValue ) )
+        {
+            _measures.computeIfAbsent( strKey, key -> new TreeMap<>( ) ).put( strMetric, dValue );
+        }
+    }
+
+    /**
+     * Records the median of the values measured by repeated runs of a case.
+     */
+    public void recordMedian( final String strKey, final String strMetric, final List<Double> values )
+    {
+        if ( !values.isEmpty( ) )
+        {
+            final List<Double> sorted = new ArrayList<>( values );
+            Collections.sort( sorted );
+            this.record( strKey, strMetric, sorted.get( sorted.size( ) / 2 ) );
+        }
+    }
+
+    /**
+     * Compares the recorded measures with the baseline and prints the differences, or writes the baseline.
+     *
+     * @throws AssertionFailedError
+     *             if a measure drifted beyond the tolerance, or if there is no baseline to compare with
+     */
+    public void check( ) throws IOException
+    {
+        final Path baselineFile = getBaselineDirectory( ).resolve( _strName + ".json" );
+        if ( !isUpdate( ) && !Files.exists( baselineFile ) )
+        {
+            throw new AssertionFailedError( "No baseline for " + _strName + " in " + baselineFile
+                    + " : run once with -Dperf.baseline.update=true and commit the file" );
+        }
+        if ( isUpdate( ) )
+        {
+            // A run restricted with perf.param.* only replaces the cases it measured
+            final Map<String, Map<String, Double>> merged = new TreeMap<>( );
+            if ( Files.exists( baselineFile ) )
+            {
+                _mapper.readTree( baselineFile.toFile( ) ).fields( ).forEachRemaining( reference -> reference.getValue( ).fields( )
+                        .forEachRemaining( metric -> merged.computeIfAbsent( reference.getKey( ), key -> new TreeMap<>( ) ).put( metric.getKey( ),
+                                metric.getValue( ).asDouble( ) ) ) );
+            }
+            _measures.forEach( ( key, metrics ) -> merged.computeIfAbsent( key, k -> new TreeMap<>( ) ).putAll( metrics ) );
+            Files.createDirectories( baselineFile.getParent( ) );
+            _mapper.writeValue( baselineFile.toFile( ), merged );
+            System.out.println( "[Regression gate] baseline of " + _strName + " written to " + baselineFile );
+            return;
+        }
+
+        final JsonNode baseline = _mapper.readTree( baselineFile.toFile( ) );
+        final List<String> regressions = new ArrayList<>( );
+        System.out.println( );
+        System.out.println( "[Regression gate] " + _strName + " compared with " + baselineFile );
+        System.out.println( String.format( "%-70s %-11s %14s %14s %9s  %s", "Case", "Metric", "Baseline", "Current", "Delta", "Status" ) );
+        for ( final Map.Entry<String, Map<String, Double>> measure : _measures.entrySet( ) )
+        {
+            for ( final Map.Entry<String, Double> metric : measure.getValue( ).entrySet( ) )
+            {
+                final JsonNode reference = baseline.path( measure.getKey( ) ).path( metric.getKey( ) );
+                final String strStatus;
+                double dDelta = 0;
+                if ( !reference.isNumber( ) )
+                {
+                    strStatus = "new";
+                }
+                else
+                {
+                    dDelta = getDelta( reference.asDouble( ), metric.getValue( ) );
+                    // A drop of throughput is a regression, a rise of latency or allocation too
+                    final double dWorsening = METRIC_THROUGHPUT.equals( metric.getKey( ) ) ? -dDelta : dDelta;
+                    if ( dWorsening > getTolerance( metric.getKey( ) ) )
+                    {
+                        strStatus = "REGRESSION";
+                        regressions.add( measure.getKey( ) + " " + metric.getKey( ) + " " + format( reference.asDouble( ) ) + " -> "
+                                + format( metric.getValue( ) ) );
+                    }
+                    else
+                    {
+                        strStatus = dWorsening < -getTolerance( metric.getKey( ) ) ? "improved" : "ok";
+                    }
+                }
+                System.out.println( String.format( Locale.ROOT, "%-70s %-11s %14s %14s %+8.1f%%  %s", measure.getKey( ), metric.getKey( ),
+                        reference.isNumber( ) ? format( reference.asDouble( ) ) : "-", format( metric.getValue( ) ), dDelta * 100, strStatus ) );
+            }
+        }
+        final List<String> missing = new ArrayList<>( );
+        baseline.fields( ).forEachRemaining( reference -> reference.getValue( ).fieldNames( ).forEachRemaining( metric -> {
+            if ( !_measures.containsKey( reference.getKey( ) ) || !_measures.get( reference.getKey( ) ).containsKey( metric ) )
+            {
+                missing.add( reference.getKey( ) + " " + metric );
+                System.out.println( String.format( Locale.ROOT, "%-70s %-11s %14s %14s %9s  %s", reference.getKey( ), metric,
+                        format( reference.getValue( ).path( metric ).asDouble( ) ), "-", "", "MISSING" ) );
+            }
+        } ) );
+        System.out.println( );
+        if ( !missing.isEmpty( ) )
+        {
+            // Runs restricted with perf.param.* legitimately skip cases : reported, not failed
+            System.out.println( "[Regression gate] WARNING : " + missing.size( ) + " measure(s) of the baseline of " + _strName
+                    + " not measured by this run" );
+        }
+        if ( !regressions.isEmpty( ) )
+        {
+            throw new AssertionFailedError( regressions.size( ) + " performance regression(s) in " + _strName + " :\n" + String.join( "\n", regressions ) );
+        }
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread
+     */
+    public static long getAllocatedBytes( )
+    {
+        return ( (ThreadMXBean) ManagementFactory.getThreadMXBean( ) ).getThreadAllocatedBytes( Thread.currentThread( ).getId( ) );
+    }
+
+    /**
+     * @return the relative change from the baseline ; any change from a baseline of 0 is infinite, so that it cannot go unnoticed
+     */
+    private static double getDelta( final double dReference, final double dValue )
+    {
+        if ( dReference == 0 )
+        {
+            return dValue == 0 ? 0 : Math.copySign( Double.POSITIVE_INFINITY, dValue );
+        }
+        return ( dValue - dReference ) / Math.abs( dReference );
+    }
+
+    private static boolean isUpdate( )
+    {
+        return Boolean.getBoolean( "perf.baseline.update" );
+    }
+
+    private static Path getBaselineDirectory( )
+    {
+        return Paths.get( System.getProperty( "perf.baseline.dir", DEFAULT_BASELINE_DIR ) ).toAbsolutePath( );
+    }
+
+    private static double getTolerance( final String strMetric )
+    {
+        return Double.parseDouble( System.getProperty( "perf.tolerance." + strMetric, System.getProperty( "perf.tolerance", DEFAULT_TOLERANCE ) ) );
+    }
+
+    private static String format( final double dValue )
+    {
+        return String.format( Locale.ROOT, "%.3f", dValue );
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2002-2024, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.identitystore.modules.test.util;
+
+import fr.paris.lutece.plugins.identitystore.modules.test.report.StatementStat;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the <code>pg_stat_statements</code> view of the Postgres container, where the module is preloaded, to attach the SQL run by the identitystore
+ * DAOs to each definition report.<br/>
+ * Enabled by <code>-Dpg.statements=true</code>. The view is instance wide and the container may be shared : instead of resetting it, the counters of
+ * the test database are read before each definition and subtracted afterwards. Of these differences, the <code>pg.statements.top</code> (20 by
+ * default) first statements by total time, by calls and by rows are kept, so that a query called once per attribute or per certificate stands out
+ * by its number of calls even when each call is fast.
+ */
+public class StatementStatsCapture
+{
+    public static final String PROPERTY_ENABLED = "pg.statements";
+    private static final int DEFAULT_TOP = 20;
+    // Postgres 13 renamed total_time to total_exec_time
+    private static final String SQL_TOTAL_TIME_COLUMN = "SELECT CASE WHEN current_setting('server_version_num')::int >= 130000"
+            + " THEN 'total_exec_time' ELSE 'total_time' END";
+    // Summed by query text : a statement has an entry per user, and per nesting level since Postgres 14
+    private static final String SQL_STATEMENTS = "SELECT query, sum(calls) AS calls, sum(%s) AS total_time, sum(rows) AS rows FROM pg_stat_statements"
+            + " WHERE dbid = (SELECT oid FROM pg_database WHERE datname = current_database()) AND query NOT LIKE '%%pg_stat_statements%%'"
+            + " GROUP BY query";
+
+    private final DataSource _dataSource;
+    private final int _nTop = Integer.getInteger( "pg.statements.top", DEFAULT_TOP );
+    private final String _strTotalTimeColumn;
+    private Map<String, StatementStat> _snapshot = new HashMap<>( );
+
+    /**
+     * Constructor : creates the extension in the test database if needed.
+     *
+     * @param dataSource
+     *            the data source of the test database
+     */
+    public StatementStatsCapture( final DataSource dataSource ) throws SQLException
+    {
+        _dataSource = dataSource;
+        try ( final Connection connection = dataSource.getConnection( ); final Statement statement = connection.createStatement( ) )
+        {
+            statement.execute( "CREATE EXTENSION IF NOT EXISTS pg_stat_statements" );
+            try ( final ResultSet resultSet = statement.executeQuery( SQL_TOTAL_TIME_COLUMN ) )
+            {
+                resultSet.next( );
+                _strTotalTimeColumn = resultSet.getString( 1 );
+            }
+        }
+    }
+
+    public static boolean isEnabled( )
+    {
+        return Boolean.getBoolean( PROPERTY_ENABLED );
+    }
+
+    /**
+     * Records the current counters of the test database, the origin of the next {@link #getTopStatements()}.
+     */
+    public void snapshot( ) throws SQLException
+    {
+        _snapshot = this.readStatements( );
+    }
+
+    /**
+     * @return the top statements by total time, calls and rows since the last {@link #snapshot()}, without duplicates, by decreasing total time
+     */
+    public List<StatementStat> getTopStatements( ) throws SQLException
+    {
+        final List<StatementStat> statements = new ArrayList<>( );
+        for ( final StatementStat current : this.readStatements( ).values( ) )
+        {
+            final StatementStat origin = _snapshot.get( current.getQuery( ) );
+            // An entry evicted from the view since the snapshot starts again from zero
+            if ( origin != null && origin.getCalls( ) <= current.getCalls( ) )
+            {
+                current.setCalls( current.getCalls( ) - origin.getCalls( ) );
+                current.setTotalTime( current.getTotalTime( ) - origin.getTotalTime( ) );
+                current.setRows( current.getRows( ) - origin.getRows( ) );
+            }
+            if ( current.getCalls( ) > 0 )
+            {
+                statements.add( current );
+            }
+        }
+        final Map<String, StatementStat> top = new LinkedHashMap<>( );
+        this.addTop( top, statements, Comparator.comparingDouble( StatementStat::getTotalTime ) );
+        this.addTop( top, statements, Comparator.comparingLong( StatementStat::getCalls ) );
+        this.addTop( top, statements, Comparator.comparingLong( StatementStat::getRows ) );
+        final List<StatementStat> result = new ArrayList<>( top.values( ) );
+        result.sort( Comparator.comparingDouble( StatementStat::getTotalTime ).reversed( ) );
+        return result;
+    }
+
+    private Map<String, StatementStat> readStatements( ) throws SQLException
+    {
+        final Map<String, StatementStat> statements = new HashMap<>( );
+        try ( final Connection connection = _dataSource.getConnection( );
+                final Statement statement = connection.createStatement( );
+                final ResultSet resultSet = statement.executeQuery( String.format( SQL_STATEMENTS, _strTotalTimeColumn ) ) )
+        {
+            while ( resultSet.next( ) )
+            {
+                final StatementStat stat = new StatementStat( );
+                stat.setQuery( resultSet.getString( "query" ) );
+                stat.setCalls( resultSet.getLong( "calls" ) );
+                stat.setTotalTime( resultSet.getDouble( "total_time" ) );
+                stat.setRows( resultSet.getLong( "rows" ) );
+                statements.put( stat.getQuery( ), stat );
+            }
+        }
+        return statements;
+    }
+
+    private void addTop( final Map<String, StatementStat> top, final List<StatementStat> statements, final Comparator<StatementStat> comparator )
+    {
+        statements.stream( ).sorted( comparator.reversed( ) ).limit( _nTop ).forEach( stat -> top.putIfAbsent( stat.getQuery( ), stat ) );
+    }
+}